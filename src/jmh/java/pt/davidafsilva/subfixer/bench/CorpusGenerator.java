@@ -0,0 +1,247 @@
+package pt.davidafsilva.subfixer.bench;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Generates deterministic, synthetic, subtitle corpora for the benchmarks and
+ * the scaling harness: the same seed, charset and cue length always yield the
+ * very same files.
+ *
+ * @author david
+ */
+final class CorpusGenerator {
+
+  // the default seed of the generated content
+  static final long DEFAULT_SEED = 0x5EED;
+  // the words used to build the entries text (encodable with ISO-8859-1)
+  private static final String[] WORDS = {
+      "Se", "me", "dás", "licença", "sobrinho", "deparei-me", "com", "uma", "situação",
+      "um", "dos", "meus", "tenentes", "no", "Moinho", "de", "Pedra", "que", "pode", "ter",
+      "relação", "Cala-te", "sobre", "o", "maldito", "[MUSIC]", "- What?"
+  };
+  // the number of milliseconds within a day
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+  // the size of the output buffer
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The length of the generated cues
+   */
+  enum CueLength {
+
+    /**
+     * A single line of up to four words
+     */
+    SHORT(1, 1, 4),
+
+    /**
+     * One or two lines of two to nine words, the typical movie subtitle
+     */
+    STANDARD(2, 2, 9),
+
+    /**
+     * Up to four lines of eight to twenty four words, such as the ones of
+     * lyrics or captions for the hearing impaired
+     */
+    LONG(4, 8, 24);
+
+    // the maximum number of lines and the bounds of the words per line
+    private final int maxLines;
+    private final int minWords;
+    private final int maxWords;
+
+    /**
+     * Creates the cue length with the specified bounds
+     *
+     * @param maxLines the maximum number of lines per cue
+     * @param minWords the minimum number of words per line
+     * @param maxWords the maximum number of words per line
+     */
+    CueLength(final int maxLines, final int minWords, final int maxWords) {
+      this.maxLines = maxLines;
+      this.minWords = minWords;
+      this.maxWords = maxWords;
+    }
+  }
+
+  // the generator settings
+  private final long seed;
+  private final Charset charset;
+  private final CueLength cueLength;
+
+  /**
+   * Creates the generator with the specified seed, charset and cue length
+   *
+   * @param seed      the seed of the generated content
+   * @param charset   the charset of the generated files
+   * @param cueLength the length of the generated cues
+   */
+  CorpusGenerator(final long seed, final Charset charset, final CueLength cueLength) {
+    this.seed = seed;
+    this.charset = Objects.requireNonNull(charset, "charset");
+    this.cueLength = Objects.requireNonNull(cueLength, "cueLength");
+  }
+
+  /**
+   * Writes a subtitle file with the specified number of entries of standard
+   * length, generated with the default seed
+   *
+   * @param file    the target file
+   * @param entries the number of entries
+   * @param charset the file charset
+   * @throws IOException if an error occurs while writing the file
+   */
+  static void write(final Path file, final int entries, final Charset charset)
+      throws IOException {
+    new CorpusGenerator(DEFAULT_SEED, charset, CueLength.STANDARD).write(file, entries);
+  }
+
+  /**
+   * Writes a subtitle file with the specified number of entries
+   *
+   * @param file    the target file
+   * @param entries the number of entries
+   * @throws IOException if an error occurs while writing the file
+   */
+  void write(final Path file, final long entries) throws IOException {
+    write(file, entries, seed);
+  }
+
+  /**
+   * Writes the specified number of entries spread across files of, at most,
+   * the given number of entries each. Each file is generated with its own seed,
+   * derived from the generator one, thus the files differ from each other.
+   *
+   * @param directory      the target directory
+   * @param entries        the total number of entries
+   * @param entriesPerFile the maximum number of entries per file
+   * @return the written files
+   * @throws IOException if an error occurs while writing the files
+   */
+  List<Path> write(final Path directory, final long entries, final int entriesPerFile)
+      throws IOException {
+    Files.createDirectories(directory);
+    final List<Path> files = new ArrayList<>();
+    for (long written = 0; written < entries; written += entriesPerFile) {
+      final Path file = directory.resolve(String.format("%08d.srt", files.size() + 1));
+      write(file, Math.min(entriesPerFile, entries - written), seed + files.size());
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * Writes a subtitle file with the specified number of entries, generated
+   * with the given seed
+   *
+   * @param file    the target file
+   * @param entries the number of entries
+   * @param seed    the seed of the generated content
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void write(final Path file, final long entries, final long seed) throws IOException {
+    final Random random = new Random(seed);
+    final char[] time = new char[12];
+    try (final BufferedWriter writer = new BufferedWriter(
+        Files.newBufferedWriter(file, charset), BUFFER_SIZE)) {
+      long start = 0;
+      for (long i = 1; i <= entries; i++) {
+        start += 500 + random.nextInt(4000);
+        final long end = start + 800 + random.nextInt(5000);
+        writer.write(Long.toString(i));
+        writer.newLine();
+        writeTime(writer, time, start);
+        writer.write(" --> ");
+        writeTime(writer, time, end);
+        writer.newLine();
+        final int lines = 1 + random.nextInt(cueLength.maxLines);
+        for (int l = 0; l < lines; l++) {
+          final int words = cueLength.minWords +
+              random.nextInt(cueLength.maxWords - cueLength.minWords + 1);
+          for (int w = 0; w < words; w++) {
+            if (w > 0) {
+              writer.write(' ');
+            }
+            writer.write(WORDS[random.nextInt(WORDS.length)]);
+          }
+          writer.newLine();
+        }
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Writes the specified time, with the {@code HH:mm:ss,SSS} layout, wrapping
+   * around at midnight
+   *
+   * @param writer the target writer
+   * @param time   the buffer of the formatted time
+   * @param millis the time in milliseconds
+   * @throws IOException if an error occurs while writing the time
+   */
+  private static void writeTime(final Writer writer, final char[] time, final long millis)
+      throws IOException {
+    final long dayMillis = millis % MILLIS_PER_DAY;
+    digits(time, 0, 2, dayMillis / 3600000);
+    time[2] = ':';
+    digits(time, 3, 2, dayMillis / 60000 % 60);
+    time[5] = ':';
+    digits(time, 6, 2, dayMillis / 1000 % 60);
+    time[8] = ',';
+    digits(time, 9, 3, dayMillis % 1000);
+    writer.write(time);
+  }
+
+  /**
+   * Formats the specified value, zero padded, into the buffer
+   *
+   * @param buffer the target buffer
+   * @param offset the offset of the value within the buffer
+   * @param length the number of digits
+   * @param value  the value
+   */
+  private static void digits(final char[] buffer, final int offset, final int length,
+      final long value) {
+    long remaining = value;
+    for (int i = offset + length - 1; i >= offset; i--) {
+      buffer[i] = (char) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+  }
+}
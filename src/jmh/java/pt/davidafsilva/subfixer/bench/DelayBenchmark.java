@@ -0,0 +1,84 @@
+package pt.davidafsilva.subfixer.bench;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.davidafsilva.subfixer.command.DelaySubtitleCommand;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+
+/**
+ * The delay command benchmark, over a subtitle track and over a plain list of
+ * entries.
+ *
+ * @author david
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DelayBenchmark extends SubtitleFileState {
+
+  // the delay command
+  private final DelaySubtitleCommand delay = new DelaySubtitleCommand("PT1M3.5S");
+
+  // the loaded entries
+  private List<SubtitleEntry> track;
+  private List<SubtitleEntry> list;
+
+  @Override
+  protected void prepare() throws IOException {
+    track = SubtitleLoader.load(file.toString());
+    list = new ArrayList<>(track);
+  }
+
+  @Benchmark
+  public List<SubtitleEntry> track() {
+    return delay.apply(track);
+  }
+
+  @Benchmark
+  public List<SubtitleEntry> list() {
+    return delay.apply(list);
+  }
+}
@@ -0,0 +1,109 @@
+package pt.davidafsilva.subfixer.bench;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.davidafsilva.subfixer.command.PrintSubtitleEntriesCommand;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+
+/**
+ * The print command benchmark, over a subtitle track and over a plain list of
+ * entries, writing to an output stream that discards the data.
+ *
+ * @author david
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrintBenchmark extends SubtitleFileState {
+
+  // the loaded entries
+  private List<SubtitleEntry> track;
+  private List<SubtitleEntry> list;
+
+  @Override
+  protected void prepare() throws IOException {
+    track = SubtitleLoader.load(file.toString());
+    list = new ArrayList<>(track);
+  }
+
+  @Benchmark
+  public List<SubtitleEntry> track(final Blackhole blackhole) {
+    return new PrintSubtitleEntriesCommand(new DiscardingOutputStream(blackhole)).apply(track);
+  }
+
+  @Benchmark
+  public List<SubtitleEntry> list(final Blackhole blackhole) {
+    return new PrintSubtitleEntriesCommand(new DiscardingOutputStream(blackhole)).apply(list);
+  }
+
+  // an output stream which hands the data over to the black hole
+  private static final class DiscardingOutputStream extends OutputStream {
+
+    // the black hole
+    private final Blackhole blackhole;
+
+    /**
+     * Creates the output stream
+     *
+     * @param blackhole the black hole
+     */
+    private DiscardingOutputStream(final Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(final int b) {
+      blackhole.consume(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      blackhole.consume(b);
+    }
+  }
+}
@@ -0,0 +1,430 @@
+package pt.davidafsilva.subfixer.bench;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import pt.davidafsilva.subfixer.Application;
+import pt.davidafsilva.subfixer.bench.CorpusGenerator.CueLength;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+
+/**
+ * The end-to-end scaling harness, which runs the application, in batch mode,
+ * over synthetic corpora of increasing sizes, either as one giant file or
+ * spread across many files, and reports the wall time, the peak resident set
+ * size, the peak heap usage and the GC pauses of each run.
+ * <p>
+ * Each run is made on its own JVM, launched with the harness JVM arguments, so
+ * that the runs don't affect each other. The corpora are generated once and
+ * kept within the corpus directory, thus the subsequent runs over the same
+ * corpus skip its generation. The options, all of them optional, are:
+ * <ul>
+ * <li>{@code --tiers}: the number of cues of each tier, {@code 1000,1000000}
+ * by default (e.g. {@code 1000,1000000,50000000})</li>
+ * <li>{@code --shapes}: {@code single} file and/or {@code many} files</li>
+ * <li>{@code --cues}: the {@code short}, {@code standard} and/or {@code long}
+ * cue lengths</li>
+ * <li>{@code --charset}: the charset of the corpora, {@code UTF-8} by default</li>
+ * <li>{@code --seed}: the seed of the corpora</li>
+ * <li>{@code --cues-per-file}: the cues of each file of the {@code many}
+ * shape, {@code 1000} by default</li>
+ * <li>{@code --corpus}: the directory of the generated corpora</li>
+ * <li>{@code --jvm-args}: the arguments of the JVM of each run, such as
+ * {@code "-Xmx2g -Dpipeline=shift"}</li>
+ * <li>{@code --csv}: the file where the results are also written to</li>
+ * </ul>
+ * The peak resident set size is only reported on Linux. The GC pauses are the
+ * ones notified by the collectors, which for concurrent collectors are their
+ * cycles rather than actual pauses.
+ *
+ * @author david
+ */
+public final class ScalingHarness {
+
+  // the option which runs the application on the current JVM and records its usage
+  private static final String PROBE_OPTION = "--probe";
+  // the delay applied to the corpora
+  private static final String DELAY = "PT1.5S";
+  // the default options
+  private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+  static {
+    DEFAULTS.put("tiers", "1000,1000000");
+    DEFAULTS.put("shapes", "single,many");
+    DEFAULTS.put("cues", "standard");
+    DEFAULTS.put("charset", "UTF-8");
+    DEFAULTS.put("seed", Long.toString(CorpusGenerator.DEFAULT_SEED));
+    DEFAULTS.put("cues-per-file", "1000");
+    DEFAULTS.put("corpus", Paths.get(System.getProperty("java.io.tmpdir"), "subfixer-corpus")
+        .toString());
+    DEFAULTS.put("jvm-args", "");
+    DEFAULTS.put("csv", "");
+  }
+
+  // the result header and row layouts
+  private static final String HEADER = String.format(
+      "%-10s %-6s %-8s %7s %9s %10s %12s %9s %9s %6s %9s %9s%n", "cues", "shape", "length",
+      "files", "input MB", "wall ms", "cues/s", "RSS MB", "heap MB", "GCs", "GC ms",
+      "max GC ms");
+  private static final String ROW =
+      "%-10d %-6s %-8s %7d %9.1f %10d %12.0f %9s %9.1f %6d %9d %9d%s%n";
+  private static final String CSV_HEADER = "cues,shape,length,files,inputBytes,wallMillis," +
+      "peakRssBytes,peakHeapBytes,gcCount,gcMillis,gcMaxMillis,errors";
+
+  // the number of bytes within a megabyte
+  private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+  // private constructor
+  private ScalingHarness() {}
+
+  /**
+   * Runs the harness with the specified options or, on the JVM of a run, the
+   * application with the specified arguments
+   *
+   * @param args the harness options
+   * @throws Exception if an error occurs while running the harness
+   */
+  public static void main(final String[] args) throws Exception {
+    if (args.length > 0 && PROBE_OPTION.equals(args[0])) {
+      probe(Paths.get(args[1]), Arrays.copyOfRange(args, 2, args.length));
+      return;
+    }
+
+    final Map<String, String> options = options(args);
+    final Charset charset = Charset.forName(options.get("charset"));
+    final long seed = Long.parseLong(options.get("seed"));
+    final int cuesPerFile = Integer.parseInt(options.get("cues-per-file"));
+    final Path corpus = Paths.get(options.get("corpus"));
+    final List<String> csv = new ArrayList<>();
+    csv.add(CSV_HEADER);
+
+    System.out.print(HEADER);
+    for (final String tier : options.get("tiers").split(",")) {
+      final long cues = Long.parseLong(tier.trim());
+      for (final String length : options.get("cues").split(",")) {
+        final CueLength cueLength = CueLength.valueOf(length.trim().toUpperCase(Locale.ROOT));
+        final CorpusGenerator generator = new CorpusGenerator(seed, charset, cueLength);
+        for (final String shape : options.get("shapes").split(",")) {
+          final boolean single = "single".equals(shape.trim());
+          final Path input = generate(generator, corpus.resolve(String.format("%s-%s-%d-%d-%s",
+              charset.name(), cueLength, seed, cues, single ? "single" : "many" + cuesPerFile)),
+              cues, single ? 0 : cuesPerFile);
+          final long[] size = size(input);
+          final Properties result = run(input, charset, options.get("jvm-args"));
+
+          // report the run
+          final long rss = Long.parseLong(result.getProperty("peakRssBytes"));
+          final long wall = Long.parseLong(result.getProperty("wallMillis"));
+          final long errors = Long.parseLong(result.getProperty("errors"));
+          System.out.printf(ROW, cues, single ? "single" : "many", cueLength.name()
+                  .toLowerCase(Locale.ROOT), size[0], size[1] / BYTES_PER_MEGABYTE, wall,
+              cues * 1000.0 / Math.max(1, wall),
+              rss < 0 ? "n/a" : String.format("%.1f", rss / BYTES_PER_MEGABYTE),
+              Long.parseLong(result.getProperty("peakHeapBytes")) / BYTES_PER_MEGABYTE,
+              Long.parseLong(result.getProperty("gcCount")),
+              Long.parseLong(result.getProperty("gcMillis")),
+              Long.parseLong(result.getProperty("gcMaxMillis")),
+              errors == 0 ? "" : " (" + errors + " errors)");
+          csv.add(String.join(",", Long.toString(cues), single ? "single" : "many",
+              cueLength.name().toLowerCase(Locale.ROOT), Long.toString(size[0]),
+              Long.toString(size[1]), Long.toString(wall), Long.toString(rss),
+              result.getProperty("peakHeapBytes"), result.getProperty("gcCount"),
+              result.getProperty("gcMillis"), result.getProperty("gcMaxMillis"),
+              Long.toString(errors)));
+        }
+      }
+    }
+
+    if (!options.get("csv").isEmpty()) {
+      Files.write(Paths.get(options.get("csv")), csv, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Parses the specified harness options, with their defaults
+   *
+   * @param args the harness options
+   * @return the options by name
+   */
+  private static Map<String, String> options(final String[] args) {
+    final Map<String, String> options = new HashMap<>(DEFAULTS);
+    for (int i = 0; i < args.length; i += 2) {
+      final String name = args[i].startsWith("--") ? args[i].substring(2) : args[i];
+      if (!DEFAULTS.containsKey(name) || i + 1 == args.length) {
+        throw new IllegalArgumentException("invalid option: " + args[i] + ", expected one of " +
+            DEFAULTS.keySet() + " followed by its value");
+      }
+      options.put(name, args[i + 1]);
+    }
+    return options;
+  }
+
+  /**
+   * Generates the corpus with the specified number of cues, unless it was
+   * already generated by a previous run
+   *
+   * @param generator   the corpus generator
+   * @param target      the corpus file or directory
+   * @param cues        the number of cues
+   * @param cuesPerFile the number of cues per file, or {@code 0} for a single file
+   * @return the corpus file or directory
+   * @throws IOException if an error occurs while generating the corpus
+   */
+  private static Path generate(final CorpusGenerator generator, final Path target,
+      final long cues, final int cuesPerFile) throws IOException {
+    // the marker of a fully generated corpus, since the generation might be interrupted
+    final Path marker = target.resolveSibling(target.getFileName() + ".complete");
+    if (Files.exists(marker)) {
+      return target;
+    }
+    delete(target);
+    System.err.printf("generating %s..%n", target);
+    if (cuesPerFile == 0) {
+      Files.createDirectories(target.getParent());
+      generator.write(target, cues);
+    } else {
+      generator.write(target, cues, cuesPerFile);
+    }
+    Files.createFile(marker);
+    return target;
+  }
+
+  /**
+   * Returns the number of files and the total size of the corpus
+   *
+   * @param input the corpus file or directory
+   * @return the number of files and their total size, in bytes
+   * @throws IOException if an error occurs while reading the corpus
+   */
+  private static long[] size(final Path input) throws IOException {
+    try (final Stream<Path> files = Files.walk(input)) {
+      final long[] size = new long[2];
+      files.filter(Files::isRegularFile).forEach(file -> {
+        size[0]++;
+        size[1] += file.toFile().length();
+      });
+      return size;
+    }
+  }
+
+  /**
+   * Runs the application over the specified corpus, on a new JVM, writing the
+   * fixed files to a temporary directory which is deleted afterwards
+   *
+   * @param input   the corpus file or directory
+   * @param charset the charset of the corpus
+   * @param jvmArgs the arguments of the JVM
+   * @return the recorded usage of the run
+   * @throws IOException          if an error occurs while running the application
+   * @throws InterruptedException if interrupted while waiting for the run
+   */
+  private static Properties run(final Path input, final Charset charset, final String jvmArgs)
+      throws IOException, InterruptedException {
+    final Path output = Files.createTempDirectory("subfixer-scaling-");
+    final Path result = Files.createTempFile("subfixer-scaling-", ".properties");
+    try {
+      final List<String> command = new ArrayList<>();
+      command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+      for (final String arg : jvmArgs.trim().split("\\s+")) {
+        if (!arg.isEmpty()) {
+          command.add(arg);
+        }
+      }
+      command.add("-Dencoding=" + charset.name());
+      command.add("-classpath");
+      command.add(System.getProperty("java.class.path"));
+      command.add(ScalingHarness.class.getName());
+      command.addAll(Arrays.asList(PROBE_OPTION, result.toString(), "--batch", DELAY,
+          output.toString(), input.toString()));
+      final Process process = new ProcessBuilder(command)
+          .redirectOutput(ProcessBuilder.Redirect.to(new File(nullDevice())))
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start();
+      if (process.waitFor() != 0) {
+        throw new IllegalStateException("the run over " + input + " has failed");
+      }
+
+      final Properties properties = new Properties();
+      try (final InputStream in = Files.newInputStream(result)) {
+        properties.load(in);
+      }
+      return properties;
+    } finally {
+      delete(output);
+      Files.deleteIfExists(result);
+    }
+  }
+
+  /**
+   * Runs the application with the specified arguments on the current JVM,
+   * recording its wall time, peak memory usage and GC pauses into the given
+   * result file
+   *
+   * @param result the result file
+   * @param args   the application arguments
+   * @throws IOException if an error occurs while writing the result file
+   */
+  private static void probe(final Path result, final String[] args) throws IOException {
+    final GcRecorder gc = new GcRecorder();
+    final long start = System.nanoTime();
+    Application.main(args);
+    final long wall = System.nanoTime() - start;
+
+    long peakHeap = 0;
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+    final long errors = Metrics.getInstance().getErrors().values().stream()
+        .mapToLong(Long::longValue).sum();
+
+    final Properties properties = new Properties();
+    properties.setProperty("wallMillis", Long.toString(TimeUnit.NANOSECONDS.toMillis(wall)));
+    properties.setProperty("peakRssBytes", Long.toString(peakRss()));
+    properties.setProperty("peakHeapBytes", Long.toString(peakHeap));
+    properties.setProperty("gcCount", Long.toString(gc.count.get()));
+    properties.setProperty("gcMillis", Long.toString(gc.totalMillis.get()));
+    properties.setProperty("gcMaxMillis", Long.toString(gc.maxMillis.get()));
+    properties.setProperty("errors", Long.toString(errors));
+    try (final OutputStream out = Files.newOutputStream(result)) {
+      properties.store(out, null);
+    }
+  }
+
+  /**
+   * Returns the peak resident set size of the current process, as reported by
+   * the {@code VmHWM} field of its status on Linux
+   *
+   * @return the peak resident set size, in bytes, or {@code -1} if unknown
+   */
+  private static long peakRss() {
+    final Path status = Paths.get("/proc/self/status");
+    if (!Files.isReadable(status)) {
+      return -1;
+    }
+    try {
+      for (final String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+        if (line.startsWith("VmHWM:")) {
+          // e.g. VmHWM:	  123456 kB
+          return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+        }
+      }
+    } catch (final IOException | NumberFormatException e) {
+      // unknown
+    }
+    return -1;
+  }
+
+  /**
+   * Deletes the specified file or directory, along with its content
+   *
+   * @param path the file or directory
+   * @throws IOException if an error occurs while deleting the files
+   */
+  private static void delete(final Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (final Stream<Path> files = Files.walk(path)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  /**
+   * Returns the path of the null device
+   *
+   * @return the null device path
+   */
+  private static String nullDevice() {
+    return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+  }
+
+  // the recorder of the GC pauses, as notified by the collectors
+  private static final class GcRecorder implements NotificationListener {
+
+    // the number of pauses, their total and maximum duration
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    /**
+     * Creates the recorder, listening to the notifications of every collector
+     */
+    private GcRecorder() {
+      for (final GarbageCollectorMXBean collector :
+          ManagementFactory.getGarbageCollectorMXBeans()) {
+        if (collector instanceof NotificationEmitter) {
+          ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+        }
+      }
+    }
+
+    @Override
+    public void handleNotification(final Notification notification, final Object handback) {
+      if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+          notification.getType())) {
+        return;
+      }
+      final long duration = GarbageCollectionNotificationInfo.from(
+          (CompositeData) notification.getUserData()).getGcInfo().getDuration();
+      count.incrementAndGet();
+      totalMillis.addAndGet(duration);
+      maxMillis.accumulateAndGet(duration, Math::max);
+    }
+  }
+}
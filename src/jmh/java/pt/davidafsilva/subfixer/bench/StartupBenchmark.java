@@ -0,0 +1,179 @@
+package pt.davidafsilva.subfixer.bench;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The startup benchmark, which launches the packaged application on a new JVM
+ * for a small subtitle file and measures the time until its first output and
+ * until it exits, with and without an AppCDS archive.
+ * <p>
+ * The jar is expected at the {@code subfixer.jar} system property, which the
+ * {@code benchmark} profile points to the packaged jar.
+ *
+ * @author david
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+  // the number of entries of the subtitle file, a typical ~50KB file
+  private static final int ENTRIES = 600;
+
+  // without and with the AppCDS archive
+  @Param({"none", "cds"})
+  String archive;
+
+  // the generated subtitle file and the archive
+  private Path file;
+  private Path archiveFile;
+  // the application command line
+  private List<String> command;
+  // the running application
+  private Process process;
+
+  @Setup
+  public void prepare() throws IOException, InterruptedException {
+    final Path jar = Paths.get(System.getProperty("subfixer.jar", "target/subtitle-fixer.jar"));
+    if (!Files.isRegularFile(jar)) {
+      throw new IllegalStateException(jar + " not found, package the application first");
+    }
+    file = Files.createTempFile("subfixer-startup-", ".srt");
+    CorpusGenerator.write(file, ENTRIES, StandardCharsets.UTF_8);
+
+    final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    command = new ArrayList<>();
+    command.add(java);
+    if ("cds".equals(archive)) {
+      // create the archive with a training run
+      archiveFile = Files.createTempFile("subfixer-startup-", ".jsa");
+      Files.delete(archiveFile);
+      final List<String> training = new ArrayList<>();
+      training.add(java);
+      training.add("-XX:ArchiveClassesAtExit=" + archiveFile);
+      training.addAll(arguments(jar));
+      final Process run = new ProcessBuilder(training)
+          .redirectOutput(ProcessBuilder.Redirect.to(new File(nullDevice())))
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start();
+      if (run.waitFor() != 0 || !Files.exists(archiveFile)) {
+        throw new IllegalStateException("unable to create the AppCDS archive");
+      }
+      command.add("-XX:SharedArchiveFile=" + archiveFile);
+    }
+    command.addAll(arguments(jar));
+  }
+
+  @Benchmark
+  public int timeToFirstOutput() throws IOException {
+    process = new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    return process.getInputStream().read();
+  }
+
+  @Benchmark
+  public int timeToExit() throws IOException, InterruptedException {
+    process = new ProcessBuilder(command)
+        .redirectOutput(ProcessBuilder.Redirect.to(new File(nullDevice())))
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    return process.waitFor();
+  }
+
+  @TearDown(Level.Invocation)
+  public void awaitExit() throws IOException, InterruptedException {
+    // drain whatever is left of the output, so the application can exit
+    try (final InputStream out = process.getInputStream()) {
+      final byte[] buffer = new byte[8192];
+      while (out.read(buffer) >= 0) {
+        // discard
+      }
+    }
+    process.waitFor();
+  }
+
+  @TearDown
+  public void deleteFiles() throws IOException {
+    Files.deleteIfExists(file);
+    if (archiveFile != null) {
+      Files.deleteIfExists(archiveFile);
+    }
+  }
+
+  /**
+   * Returns the application arguments
+   *
+   * @param jar the application jar
+   * @return the arguments
+   */
+  private List<String> arguments(final Path jar) {
+    final List<String> arguments = new ArrayList<>();
+    arguments.add("-jar");
+    arguments.add(jar.toString());
+    arguments.add("PT1M3.5S");
+    arguments.add(file.toString());
+    return arguments;
+  }
+
+  /**
+   * Returns the path of the null device
+   *
+   * @return the null device path
+   */
+  private static String nullDevice() {
+    return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+  }
+}
@@ -0,0 +1,89 @@
+package pt.davidafsilva.subfixer.bench;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+
+/**
+ * The base benchmark state, which generates a synthetic subtitle file with the
+ * parameterized number of entries and charset.
+ * <p>
+ * The charset is configured through the {@code encoding} system property before
+ * the {@link Configuration} is initialized, which works because JMH runs each
+ * parameter combination on its own forked JVM.
+ *
+ * @author david
+ */
+@State(Scope.Benchmark)
+public abstract class SubtitleFileState {
+
+  // small, medium and very large inputs
+  @Param({"1000", "100000", "1000000"})
+  int entries;
+
+  // the file charset
+  @Param({"UTF-8", "ISO-8859-1", "UTF-16"})
+  String charset;
+
+  // the generated subtitle file
+  Path file;
+
+  @Setup
+  public void generateFile() throws IOException {
+    System.setProperty("encoding", charset);
+    if (!Configuration.CHARSET.equals(Charset.forName(charset))) {
+      throw new IllegalStateException("configuration already initialized with " +
+          Configuration.CHARSET);
+    }
+    file = Files.createTempFile("subfixer-bench-", ".srt");
+    CorpusGenerator.write(file, entries, Configuration.CHARSET);
+    prepare();
+  }
+
+  /**
+   * Prepares the benchmark state, after the subtitle file is generated
+   *
+   * @throws IOException if an error occurs while preparing the state
+   */
+  protected void prepare() throws IOException {}
+
+  @TearDown
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+}
@@ -26,16 +26,28 @@ package pt.davidafsilva.subfixer;
  * #L%
  */
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import pt.davidafsilva.subfixer.batch.BatchProcessor;
+import pt.davidafsilva.subfixer.batch.BatchResult;
 import pt.davidafsilva.subfixer.command.CommandExecutionException;
 import pt.davidafsilva.subfixer.command.CommandExecutor;
-import pt.davidafsilva.subfixer.command.DelaySubtitleCommand;
-import pt.davidafsilva.subfixer.command.LoadSubtitleEntriesCommand;
-import pt.davidafsilva.subfixer.command.PrintSubtitleEntriesCommand;
+import pt.davidafsilva.subfixer.command.FixSubtitleCommand;
+import pt.davidafsilva.subfixer.command.FollowSubtitleCommand;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.server.SubtitleServer;
 
+import static pt.davidafsilva.subfixer.config.Configuration.FOLLOW_POLL;
 import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+import static pt.davidafsilva.subfixer.config.Configuration.METRICS;
+import static pt.davidafsilva.subfixer.config.Configuration.SERVER_QUEUE;
+import static pt.davidafsilva.subfixer.config.Configuration.THREADS;
 
 /**
  * The entry point for the subtitle-fixer utility
@@ -50,6 +62,10 @@ public final class Application {
   // the usage help message
   static final String USAGE =
       "incorrect usage - required arguments are: <delay pattern> <input file>%n" +
+          " or, for batch mode: --batch <delay pattern> <output dir> <input>...%n" +
+          " where each <input> is a file, a directory or a glob pattern.%n" +
+          " or, for server mode: --server <port>%n" +
+          " or, for follow mode: --follow <delay pattern> <input file>%n" +
           " Examples of valid delay patterns are:%n" +
           "  1. PT20.345S = 20.345 seconds%n" +
           "  2. PT15M     = 15 minutes%n" +
@@ -61,9 +77,34 @@ public final class Application {
   // the command error message
   static final String COMMAND_ERROR = "error while executing command: %s%n";
 
+  // the batch summary messages
+  static final String BATCH_SUCCESS = "OK   %s -> %s (%d entries, %d ms)%n";
+  static final String BATCH_FAILURE = "FAIL %s: %s%n";
+  static final String BATCH_SUMMARY = "processed %d files: %d succeeded, %d failed%n";
+
+  // the server started message
+  static final String SERVER_STARTED = "listening on http://%s:%d%n";
+
+  // the batch mode option
+  private static final String BATCH_OPTION = "--batch";
+  // the server mode option
+  private static final String SERVER_OPTION = "--server";
+  // the time to wait for the requests being handled when the server stops, in seconds
+  private static final int SERVER_STOP_DELAY = 5;
+  // the follow mode option
+  private static final String FOLLOW_OPTION = "--follow";
+  // the time to wait for the followed entries to be printed when stopping, in milliseconds
+  private static final long FOLLOW_STOP_DELAY = 5000;
+
   // input indices
   private static final int DELAY_INDEX = 0;
   private static final int INPUT_FILE_INDEX = 1;
+  private static final int BATCH_DELAY_INDEX = 1;
+  private static final int BATCH_OUTPUT_DIR_INDEX = 2;
+  private static final int BATCH_FIRST_INPUT_INDEX = 3;
+  private static final int SERVER_PORT_INDEX = 1;
+  private static final int FOLLOW_DELAY_INDEX = 1;
+  private static final int FOLLOW_INPUT_FILE_INDEX = 2;
 
   /**
    * The main method, called from the command line
@@ -71,6 +112,42 @@ public final class Application {
    * @param args The command line arguments
    */
   public static void main(final String[] args) {
+    if (METRICS.isJmx()) {
+      Metrics.getInstance().register();
+    }
+
+    // server mode, which keeps running until the JVM is terminated
+    if (args.length > 0 && SERVER_OPTION.equals(args[0])) {
+      server(args);
+      return;
+    }
+    try {
+      run(args);
+    } finally {
+      if (METRICS.isReport()) {
+        System.err.print(Metrics.getInstance().report());
+      }
+    }
+  }
+
+  /**
+   * Runs the utility with the specified command line arguments
+   *
+   * @param args The command line arguments
+   */
+  private static void run(final String[] args) {
+    // batch mode
+    if (args.length > 0 && BATCH_OPTION.equals(args[0])) {
+      batch(args);
+      return;
+    }
+
+    // follow mode
+    if (args.length > 0 && FOLLOW_OPTION.equals(args[0])) {
+      follow(args);
+      return;
+    }
+
     // input validation
     if (args.length != 2) {
       System.err.printf(USAGE);
@@ -82,19 +159,146 @@ public final class Application {
     final String inputFile = args[INPUT_FILE_INDEX];
 
     try {
-      // chain and execute the commands
-      CommandExecutor.getInstance().execute(
-          new LoadSubtitleEntriesCommand().andThen(
-              new DelaySubtitleCommand(delay).andThen(
-                  new PrintSubtitleEntriesCommand(System.out)
-              )
-          ), inputFile);
+      // fix the subtitle file
+      CommandExecutor.getInstance().execute(new FixSubtitleCommand(delay, System.out), inputFile);
+    } catch (final CommandExecutionException e) {
+      Metrics.getInstance().error(e);
+      System.err.printf(COMMAND_ERROR, e.getLocalizedMessage());
+    } catch (final Exception e) {
+      reportUnexpected(e);
+    }
+  }
+
+  /**
+   * Follows, in follow mode, a growing subtitle file until the JVM is terminated
+   *
+   * @param args The command line arguments
+   */
+  private static void follow(final String[] args) {
+    // input validation
+    if (args.length != 3) {
+      System.err.printf(USAGE);
+      return;
+    }
+
+    // extract the input from args
+    final String delay = args[FOLLOW_DELAY_INDEX];
+    final String inputFile = args[FOLLOW_INPUT_FILE_INDEX];
+
+    // on termination, stop following and wait for the printed entries to be flushed
+    final FollowSubtitleCommand command = new FollowSubtitleCommand(delay, System.out,
+        FOLLOW_POLL);
+    final Thread follower = Thread.currentThread();
+    final Thread hook = new Thread(() -> {
+      command.stop();
+      try {
+        follower.join(FOLLOW_STOP_DELAY);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "subfixer-follow-shutdown");
+    Runtime.getRuntime().addShutdownHook(hook);
+
+    try {
+      CommandExecutor.getInstance().execute(command, inputFile);
     } catch (final CommandExecutionException e) {
+      Metrics.getInstance().error(e);
       System.err.printf(COMMAND_ERROR, e.getLocalizedMessage());
     } catch (final Exception e) {
-      System.err.printf("an unexpected error has landed:%n\tcause: %s%n\tmessage: %s%n",
-          e.getClass().getSimpleName(), e.getLocalizedMessage());
-      LOGGER.log(Level.SEVERE, "an unexpected error has landed", e);
+      reportUnexpected(e);
+    } finally {
+      try {
+        Runtime.getRuntime().removeShutdownHook(hook);
+      } catch (final IllegalStateException e) {
+        // already shutting down
+      }
     }
   }
+
+  /**
+   * Starts, in server mode, the subtitle fixing server
+   *
+   * @param args The command line arguments
+   */
+  private static void server(final String[] args) {
+    // input validation
+    final int port;
+    try {
+      port = args.length == 2 ? Integer.parseInt(args[SERVER_PORT_INDEX]) : -1;
+    } catch (final NumberFormatException e) {
+      System.err.printf(USAGE);
+      return;
+    }
+    if (port < 0 || port > 0xFFFF) {
+      System.err.printf(USAGE);
+      return;
+    }
+
+    try {
+      final SubtitleServer server = new SubtitleServer(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), THREADS, SERVER_QUEUE);
+      server.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server.stop(SERVER_STOP_DELAY);
+        if (METRICS.isReport()) {
+          System.err.print(server.report());
+        }
+      }, "subfixer-server-shutdown"));
+      System.out.printf(SERVER_STARTED, server.getAddress().getHostString(),
+          server.getAddress().getPort());
+    } catch (final Exception e) {
+      reportUnexpected(e);
+    }
+  }
+
+  /**
+   * Fixes, in batch mode, all of the subtitle files specified by the command
+   * line arguments
+   *
+   * @param args The command line arguments
+   */
+  private static void batch(final String[] args) {
+    // input validation
+    if (args.length <= BATCH_FIRST_INPUT_INDEX) {
+      System.err.printf(USAGE);
+      return;
+    }
+
+    // extract the input from args
+    final String delay = args[BATCH_DELAY_INDEX];
+    final String outputDir = args[BATCH_OUTPUT_DIR_INDEX];
+    final List<String> inputs = Arrays.asList(args).subList(BATCH_FIRST_INPUT_INDEX, args.length);
+
+    try {
+      // fix all of the files and print the summary
+      final List<BatchResult> results = new BatchProcessor(delay, Paths.get(outputDir), THREADS)
+          .process(inputs);
+      long failed = 0;
+      for (final BatchResult result : results) {
+        if (result.isSuccess()) {
+          System.out.printf(BATCH_SUCCESS, result.getFile(), result.getOutput(),
+              result.getEntries(), result.getElapsedMillis());
+        } else {
+          failed++;
+          System.out.printf(BATCH_FAILURE, result.getFile(), result.getError().orElse(""));
+        }
+      }
+      System.out.printf(BATCH_SUMMARY, results.size(), results.size() - failed, failed);
+    } catch (final Exception e) {
+      reportUnexpected(e);
+    }
+  }
+
+  /**
+   * Reports an unexpected error, recording it in the metrics, printing it and
+   * logging its stack trace
+   *
+   * @param e the unexpected error
+   */
+  private static void reportUnexpected(final Exception e) {
+    Metrics.getInstance().error(e);
+    System.err.printf("an unexpected error has landed:%n\tcause: %s%n\tmessage: %s%n",
+        e.getClass().getSimpleName(), e.getLocalizedMessage());
+    LOGGER.log(Level.SEVERE, "an unexpected error has landed", e);
+  }
 }
@@ -0,0 +1,78 @@
+package pt.davidafsilva.subfixer.batch;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * An individual subtitle file to be processed by a batch, along with the path,
+ * relative to the output directory, where the fixed subtitle is written to.
+ *
+ * @author david
+ */
+final class BatchInput {
+
+  // properties
+  private final Path file;
+  private final Path output;
+  private final long size;
+
+  /**
+   * Creates the batch input
+   *
+   * @param file   the subtitle file
+   * @param output the relative output path
+   * @param size   the subtitle file size, in bytes
+   */
+  BatchInput(final Path file, final Path output, final long size) {
+    this.file = Objects.requireNonNull(file, "file");
+    this.output = Objects.requireNonNull(output, "output");
+    this.size = size;
+  }
+
+  /**
+   * Returns the subtitle file
+   *
+   * @return the subtitle file
+   */
+  Path getFile() { return file; }
+
+  /**
+   * Returns the output path, relative to the output directory
+   *
+   * @return the relative output path
+   */
+  Path getOutput() { return output; }
+
+  /**
+   * Returns the subtitle file size
+   *
+   * @return the size in bytes
+   */
+  long getSize() { return size; }
+}
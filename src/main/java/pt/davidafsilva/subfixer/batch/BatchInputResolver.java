@@ -0,0 +1,175 @@
+package pt.davidafsilva.subfixer.batch;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the batch inputs, which might be subtitle files, directories or glob
+ * patterns, into the individual subtitle files to be processed.
+ * <ul>
+ * <li>files are processed as is and written with the same name</li>
+ * <li>directories are searched (recursively) for subtitle files, which are
+ * written with the same path relative to the directory</li>
+ * <li>glob patterns, such as {@code shows/**}{@code /*.srt}, are matched against
+ * the files under the directory that precedes the first glob character, and
+ * written with the same path relative to that directory</li>
+ * </ul>
+ *
+ * @author david
+ */
+final class BatchInputResolver {
+
+  // the extensions of the (plain and compressed) subtitle files searched within directories
+  private static final String SUBTITLE_EXTENSION = ".srt";
+  private static final String COMPRESSED_SUBTITLE_EXTENSION = ".srt.gz";
+  // the characters with special meaning within glob patterns
+  private static final String GLOB_CHARACTERS = "*?[{";
+
+  // private constructor
+  private BatchInputResolver() {}
+
+  /**
+   * Resolves the specified inputs
+   *
+   * @param inputs the files, directories or glob patterns
+   * @return the subtitle files to be processed
+   * @throws IOException if an error occurs while searching for the files
+   */
+  static List<BatchInput> resolve(final List<String> inputs) throws IOException {
+    final List<BatchInput> resolved = new ArrayList<>();
+    for (final String input : inputs) {
+      final Path path = globIndex(input) < 0 ? Paths.get(input) : null;
+      if (path != null && Files.isDirectory(path)) {
+        resolved.addAll(search(path, BatchInputResolver::isSubtitleFile));
+      } else if (path != null) {
+        resolved.add(new BatchInput(path, path.getFileName(), Files.size(path)));
+      } else {
+        resolved.addAll(glob(input));
+      }
+    }
+    return Collections.unmodifiableList(resolved);
+  }
+
+  /**
+   * Checks whether the specified file is named as a (plain or compressed)
+   * subtitle file
+   *
+   * @param file the file
+   * @return {@code true} if it's a subtitle file, {@code false} otherwise
+   */
+  private static boolean isSubtitleFile(final Path file) {
+    final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(SUBTITLE_EXTENSION) || name.endsWith(COMPRESSED_SUBTITLE_EXTENSION);
+  }
+
+  /**
+   * Resolves the files matching the specified glob pattern
+   *
+   * @param pattern the glob pattern
+   * @return the matching files
+   * @throws IOException if an error occurs while searching for the files
+   */
+  private static List<BatchInput> glob(final String pattern) throws IOException {
+    // split the pattern into its base directory and the actual glob, whose platform
+    // separators are made portable, as they might be the glob escape character
+    final FileSystem fileSystem = FileSystems.getDefault();
+    final int separator = baseLength(pattern, fileSystem.getSeparator());
+    final Path base = fileSystem.getPath(separator == 0 ? "." : pattern.substring(0, separator));
+    final PathMatcher matcher = fileSystem.getPathMatcher("glob:" +
+        pattern.substring(separator).replace(fileSystem.getSeparator(), "/"));
+    return search(base, matcher);
+  }
+
+  /**
+   * Returns the length of the base directory of the specified glob pattern,
+   * which is delimited by the last separator (either {@code /} or the platform
+   * one) that precedes the first glob character
+   *
+   * @param pattern   the glob pattern
+   * @param separator the platform separator
+   * @return the length of the base directory, including its trailing separator,
+   * or {@code 0} if there's none
+   */
+  static int baseLength(final String pattern, final String separator) {
+    final int globIndex = globIndex(pattern);
+    return Math.max(pattern.lastIndexOf('/', globIndex),
+        pattern.lastIndexOf(separator, globIndex)) + 1;
+  }
+
+  /**
+   * Searches the directory for the files accepted by the specified matcher, which
+   * is given the file path relative to the directory.
+   *
+   * @param directory the directory to search
+   * @param matcher   the file matcher
+   * @return the matching files
+   * @throws IOException if an error occurs while searching for the files
+   */
+  private static List<BatchInput> search(final Path directory, final PathMatcher matcher)
+      throws IOException {
+    try (final Stream<Path> files = Files.walk(directory)) {
+      final List<Path> matches = files
+          .filter(Files::isRegularFile)
+          .filter(file -> matcher.matches(directory.relativize(file)))
+          .sorted()
+          .collect(Collectors.toList());
+      final List<BatchInput> inputs = new ArrayList<>(matches.size());
+      for (final Path file : matches) {
+        inputs.add(new BatchInput(file, directory.relativize(file), Files.size(file)));
+      }
+      return inputs;
+    }
+  }
+
+  /**
+   * Returns the index of the first glob character of the input
+   *
+   * @param input the input
+   * @return the index of the first glob character or {@code -1} if none exists
+   */
+  private static int globIndex(final String input) {
+    for (int i = 0; i < input.length(); i++) {
+      if (GLOB_CHARACTERS.indexOf(input.charAt(i)) >= 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
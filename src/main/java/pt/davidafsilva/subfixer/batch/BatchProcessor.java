@@ -0,0 +1,186 @@
+package pt.davidafsilva.subfixer.batch;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.command.CommandExecutor;
+import pt.davidafsilva.subfixer.command.FixSubtitleCommand;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * The batch processor, which fixes many subtitle files at once, with the same
+ * delay, on a bounded pool of worker threads.
+ * <p>
+ * The biggest files are scheduled first, so that no big file is left behind to
+ * be processed alone at the end of the batch. Each file is fixed independently
+ * of the others, thus an error on a file does not affect the remaining ones.
+ *
+ * @author david
+ */
+public final class BatchProcessor {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // properties
+  private final String delay;
+  private final Path outputDirectory;
+  private final int threads;
+
+  /**
+   * Creates the batch processor
+   *
+   * @param delay           the delay pattern to be applied to every file
+   * @param outputDirectory the directory where the fixed files are written to
+   * @param threads         the maximum number of files processed concurrently
+   */
+  public BatchProcessor(final String delay, final Path outputDirectory, final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("at least one thread is required, got " + threads);
+    }
+    this.delay = Objects.requireNonNull(delay, "delay");
+    this.outputDirectory = Objects.requireNonNull(outputDirectory, "outputDirectory");
+    this.threads = threads;
+  }
+
+  /**
+   * Fixes all of the subtitle files resolved from the specified inputs, which
+   * might be files, directories or glob patterns.
+   *
+   * @param inputs the inputs
+   * @return the result of each subtitle file, ordered by file
+   * @throws IOException if an error occurs while resolving the inputs
+   */
+  public List<BatchResult> process(final List<String> inputs) throws IOException {
+    final List<BatchInput> files = new ArrayList<>(BatchInputResolver.resolve(inputs));
+    if (files.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // biggest files first
+    files.sort(Comparator.comparingLong(BatchInput::getSize).reversed());
+
+    // schedule every file
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(threads, files.size()), new WorkerThreadFactory());
+    try {
+      final Set<Path> outputs = new HashSet<>();
+      final List<Callable<BatchResult>> tasks = new ArrayList<>(files.size());
+      for (final BatchInput file : files) {
+        final Path output = outputDirectory.resolve(file.getOutput()).normalize();
+        final boolean duplicated = !outputs.add(output);
+        tasks.add(() -> duplicated ?
+            new BatchResult(file.getFile(), output, 0, 0, "duplicated output " + output) :
+            fix(file.getFile(), output));
+      }
+
+      // wait for them
+      final List<BatchResult> results = new ArrayList<>(files.size());
+      for (final Future<BatchResult> result : executor.invokeAll(tasks)) {
+        results.add(result.get());
+      }
+      results.sort(Comparator.comparing(BatchResult::getFile));
+      return Collections.unmodifiableList(results);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while processing the batch", e);
+    } catch (final ExecutionException e) {
+      // fix() handles all of the errors
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fixes the specified subtitle file
+   *
+   * @param file   the subtitle file
+   * @param output the output file
+   * @return the result
+   */
+  private BatchResult fix(final Path file, final Path output) {
+    final long start = System.nanoTime();
+    try {
+      // the output file is atomically replaced once fully written
+      final long entries = CommandExecutor.getInstance().execute(
+          new FixSubtitleCommand(delay, output), file.toString());
+      return new BatchResult(file, output, entries, elapsedMillis(start), null);
+    } catch (final Exception e) {
+      LOGGER.log(Level.SEVERE, "unable to fix " + file, e);
+      Metrics.getInstance().error(e);
+      return new BatchResult(file, output, 0, elapsedMillis(start),
+          e.getLocalizedMessage() == null ? e.getClass().getSimpleName() : e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Returns the elapsed milliseconds since the specified instant
+   *
+   * @param start the start instant, in nanoseconds
+   * @return the elapsed milliseconds
+   */
+  private static long elapsedMillis(final long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  // the factory of the worker threads
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    // the worker counter
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "subfixer-batch-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package pt.davidafsilva.subfixer.batch;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The result of fixing an individual subtitle file within a batch.
+ *
+ * @author david
+ */
+public final class BatchResult {
+
+  // properties
+  private final Path file;
+  private final Path output;
+  private final long entries;
+  private final long elapsedMillis;
+  private final String error;
+
+  /**
+   * Creates the batch result
+   *
+   * @param file          the subtitle file
+   * @param output        the output file
+   * @param entries       the number of fixed entries
+   * @param elapsedMillis the time spent fixing the file
+   * @param error         the error message, if the file could not be fixed
+   */
+  BatchResult(final Path file, final Path output, final long entries,
+      final long elapsedMillis, final String error) {
+    this.file = Objects.requireNonNull(file, "file");
+    this.output = Objects.requireNonNull(output, "output");
+    this.entries = entries;
+    this.elapsedMillis = elapsedMillis;
+    this.error = error;
+  }
+
+  /**
+   * Returns the subtitle file
+   *
+   * @return the subtitle file
+   */
+  public Path getFile() { return file; }
+
+  /**
+   * Returns the output file
+   *
+   * @return the output file
+   */
+  public Path getOutput() { return output; }
+
+  /**
+   * Returns the number of fixed entries
+   *
+   * @return the number of entries
+   */
+  public long getEntries() { return entries; }
+
+  /**
+   * Returns the time spent fixing the subtitle file
+   *
+   * @return the elapsed time, in milliseconds
+   */
+  public long getElapsedMillis() { return elapsedMillis; }
+
+  /**
+   * Returns the error message, if the subtitle file could not be fixed
+   *
+   * @return the error message
+   */
+  public Optional<String> getError() { return Optional.ofNullable(error); }
+
+  /**
+   * Checks whether or not the subtitle file was fixed
+   *
+   * @return {@code true} if the file was fixed, {@code false} otherwise
+   */
+  public boolean isSuccess() { return error == null; }
+}
@@ -0,0 +1,203 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+import static pt.davidafsilva.subfixer.config.Configuration.THREADS;
+import static pt.davidafsilva.subfixer.config.Configuration.VIRTUAL_THREADS;
+
+/**
+ * Runs commands asynchronously on an executor, with at most a given number of
+ * them in flight. The commands beyond that limit are queued, without blocking
+ * the submitter, and started as the running ones complete.
+ * <p>
+ * A command whose future is cancelled before it's started is never run,
+ * whereas the thread of a running one is interrupted.
+ *
+ * @author david
+ */
+final class AsyncCommandRunner {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the executor of the commands
+  private final Executor executor;
+  // the permits of the in-flight commands
+  private final Semaphore permits;
+  // the commands waiting for a permit
+  private final Queue<Task<?, ?>> pending = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Creates the runner with the specified executor and in-flight limit
+   *
+   * @param executor the executor of the commands
+   * @param limit    the maximum number of commands in flight
+   */
+  AsyncCommandRunner(final Executor executor, final int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("invalid in-flight limit: " + limit);
+    }
+    this.executor = executor;
+    this.permits = new Semaphore(limit);
+  }
+
+  /**
+   * Creates the default executor of the commands: a virtual thread per command
+   * whenever the runtime supports them and they're {@link
+   * pt.davidafsilva.subfixer.config.Configuration#VIRTUAL_THREADS enabled},
+   * otherwise a fixed pool of daemon threads
+   *
+   * @return the default executor
+   */
+  static Executor defaultExecutor() {
+    if (VIRTUAL_THREADS) {
+      try {
+        // looked up reflectively, as the virtual threads aren't available on every runtime
+        return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+            .invoke(null);
+      } catch (final ReflectiveOperationException e) {
+        LOGGER.info("virtual threads are not supported, falling back to platform threads");
+      }
+    }
+    final AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(THREADS, runnable -> {
+      final Thread thread = new Thread(runnable, "subfixer-async-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Submits the specified command to be run with the given input
+   *
+   * @param <I>     the type of the input value
+   * @param <R>     the type of the command result
+   * @param command the command to be run
+   * @param input   the command input
+   * @return the future of the command result
+   */
+  <I, R> CompletableFuture<R> submit(final Function<I, R> command, final I input) {
+    final Task<I, R> task = new Task<>(command, input);
+    pending.add(task);
+    drain();
+    return task.future;
+  }
+
+  /**
+   * Starts the pending commands, while there are permits for them. Both the
+   * submitters and the completed commands drain the queue, thus a queued
+   * command is always started by either one of them.
+   */
+  private void drain() {
+    while (!pending.isEmpty() && permits.tryAcquire()) {
+      final Task<?, ?> task = pending.poll();
+      if (task == null) {
+        permits.release();
+        continue;
+      }
+      try {
+        executor.execute(task);
+      } catch (final RejectedExecutionException e) {
+        permits.release();
+        task.future.completeExceptionally(e);
+      }
+    }
+  }
+
+  // a command to be run, along with its input and future
+  private final class Task<I, R> implements Runnable {
+
+    // the command and its input
+    private final Function<I, R> command;
+    private final I input;
+    // the future of the command result
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+    // the thread running the command, if running, guarded by this task
+    private Thread runner;
+
+    /**
+     * Creates the task for the specified command and input
+     *
+     * @param command the command to be run
+     * @param input   the command input
+     */
+    private Task(final Function<I, R> command, final I input) {
+      this.command = command;
+      this.input = input;
+      // interrupt the command on cancellation, if it's running
+      future.whenComplete((result, error) -> {
+        if (future.isCancelled()) {
+          synchronized (this) {
+            if (runner != null) {
+              runner.interrupt();
+            }
+          }
+        }
+      });
+    }
+
+    @Override
+    public void run() {
+      try {
+        // cancelled before being started, checked along with setting the runner
+        // so any later cancellation sees the runner and interrupts it
+        synchronized (this) {
+          if (future.isDone()) {
+            return;
+          }
+          runner = Thread.currentThread();
+        }
+        try {
+          future.complete(CommandExecutor.getInstance().execute(command, input));
+        } catch (final Throwable e) {
+          future.completeExceptionally(e);
+        } finally {
+          synchronized (this) {
+            runner = null;
+          }
+          // clear the interruption of a cancelled command, as the thread might be reused
+          Thread.interrupted();
+        }
+      } finally {
+        permits.release();
+        drain();
+      }
+    }
+  }
+}
@@ -26,15 +26,26 @@ package pt.davidafsilva.subfixer.command;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 
+import pt.davidafsilva.subfixer.config.Configuration;
+
 /**
- * This command applies a specified delay to the subtitle entries
+ * The executor of the commands, either synchronously, on the calling thread, or
+ * asynchronously, with a bounded number of commands in flight.
  *
  * @author david
  */
 public final class CommandExecutor {
 
+  // the command listeners
+  private final List<CommandListener> listeners = new CopyOnWriteArrayList<>();
+
   // private constructor
   private CommandExecutor() {}
 
@@ -58,7 +69,110 @@ public final class CommandExecutor {
    */
   public <I, R> R execute(final Function<I, R> command, final I input)
       throws CommandExecutionException {
-    return command.apply(input);
+    if (listeners.isEmpty()) {
+      return command.apply(input);
+    }
+
+    // notify the listeners, timing the command
+    for (final CommandListener listener : listeners) {
+      listener.started(command, input);
+    }
+    final long start = System.nanoTime();
+    Throwable failure = null;
+    try {
+      return command.apply(input);
+    } catch (final RuntimeException | Error e) {
+      failure = e;
+      throw e;
+    } finally {
+      final long elapsed = System.nanoTime() - start;
+      for (final CommandListener listener : listeners) {
+        listener.completed(command, input, elapsed, failure);
+      }
+    }
+  }
+
+  /**
+   * Executes the command asynchronously, on the executor of the asynchronous
+   * commands: a virtual thread per command whenever available or, otherwise,
+   * a pool of {@link Configuration#THREADS threads}. At most {@link
+   * Configuration#ASYNC_LIMIT} commands are in flight at once, the remaining
+   * ones are queued without blocking the caller.
+   * <p>
+   * Cancelling the returned future before the command is started prevents it
+   * from being run, whereas a running command has its thread interrupted. A
+   * failed command completes the future exceptionally.
+   *
+   * @param <I>     the type of the input value
+   * @param <R>     the type of the command result
+   * @param command the command to be executed
+   * @param input   the command input
+   * @return the future of the command result
+   */
+  public <I, R> CompletableFuture<R> executeAsync(final Function<I, R> command, final I input) {
+    return AsyncHolder.RUNNER.submit(command, input);
+  }
+
+  /**
+   * Executes the command asynchronously for each one of the specified inputs
+   *
+   * @param <I>     the type of the input values
+   * @param <R>     the type of the command results
+   * @param command the command to be executed
+   * @param inputs  the command inputs
+   * @return the futures of the command results, in the order of the inputs
+   * @see #executeAsync(Function, Object)
+   */
+  public <I, R> List<CompletableFuture<R>> executeAllAsync(final Function<I, R> command,
+      final Collection<? extends I> inputs) {
+    final List<CompletableFuture<R>> futures = new ArrayList<>(inputs.size());
+    for (final I input : inputs) {
+      futures.add(executeAsync(command, input));
+    }
+    return futures;
+  }
+
+  /**
+   * Adds a listener of the executed commands, which is notified from then on
+   *
+   * @param listener the command listener
+   */
+  public void addListener(final CommandListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes the specified listener of the executed commands
+   *
+   * @param listener the command listener
+   */
+  public void removeListener(final CommandListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Executes the specified stages in a pipeline, each on its own thread,
+   * handing the items of each stage over to the next one in batches, through
+   * bounded lock-free ring buffers. The stages thus overlap, e.g. the input is
+   * read while the previous lines are parsed and the previous entries written.
+   * <p>
+   * The writer runs on the calling thread. The first failure of any stage
+   * stops the other ones and is rethrown, although the output of the writer
+   * preceding it might already have been written.
+   *
+   * @param <I>         the type of the input value
+   * @param <A>         the type of the read items
+   * @param <B>         the type of the transformed items
+   * @param reader      the reader stage, which is given the input value
+   * @param transformer the transformer stage
+   * @param writer      the writer stage
+   * @param input       the input value
+   * @return the number of items consumed by the writer
+   */
+  public <I, A, B> long executePipelined(final PipelineStage<I, A> reader,
+      final PipelineStage<A, B> transformer, final PipelineStage<B, ?> writer, final I input)
+      throws CommandExecutionException {
+    return new StagedPipeline().run(reader, transformer, writer, input);
   }
 
   // the singleton holder entity
@@ -67,4 +181,12 @@ public final class CommandExecutor {
     // the instance of the executor
     private static final CommandExecutor INSTANCE = new CommandExecutor();
   }
+
+  // the asynchronous runner holder entity, which is only initialized when first used
+  private static final class AsyncHolder {
+
+    // the runner of the asynchronous commands
+    private static final AsyncCommandRunner RUNNER = new AsyncCommandRunner(
+        AsyncCommandRunner.defaultExecutor(), Configuration.ASYNC_LIMIT);
+  }
 }
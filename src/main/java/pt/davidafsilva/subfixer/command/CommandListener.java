@@ -0,0 +1,58 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.function.Function;
+
+/**
+ * The listener of the commands run by the {@link CommandExecutor}, which is
+ * notified whenever a command is started and completed, either synchronously or
+ * asynchronously, on the thread running the command.
+ *
+ * @author david
+ */
+public interface CommandListener {
+
+  /**
+   * Notifies that the specified command has been started
+   *
+   * @param command the command
+   * @param input   the command input
+   */
+  default void started(final Function<?, ?> command, final Object input) {}
+
+  /**
+   * Notifies that the specified command has been completed
+   *
+   * @param command      the command
+   * @param input        the command input
+   * @param elapsedNanos the time taken by the command, in nanoseconds
+   * @param failure      the command failure, or {@code null} if it succeeded
+   */
+  default void completed(final Function<?, ?> command, final Object input,
+      final long elapsedNanos, final Throwable failure) {}
+}
@@ -30,15 +30,14 @@ package pt.davidafsilva.subfixer.command;
 
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
-import java.util.Collections;
 import java.util.List;
-import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.TimeTransform;
 
 import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
 
@@ -53,10 +52,6 @@ public final class DelaySubtitleCommand
   // the logger
   private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
-  // the entry transformation function
-  private static final BiFunction<SubtitleEntry, Duration, SubtitleEntry> ENTRY_TRANSFORMATION =
-      (e, d) -> e.setTimeFrame(e.getStartTime().plus(d), e.getEndTime().plus(d));
-
   // "raw" properties
   private final String delay;
 
@@ -71,13 +66,36 @@ public final class DelaySubtitleCommand
 
   @Override
   public List<SubtitleEntry> apply(final List<SubtitleEntry> entries) {
-    // create the duration with the delay
-    final Duration duration = convertDelay(delay);
+    // apply the delay, as a timing transformation
+    return new TransformSubtitleCommand(transform(delay)).apply(entries);
+  }
+
+  /**
+   * Converts the specified delay pattern into the timing transformation which
+   * applies it, so it can be fused with other timing transformations. The delay
+   * is kept unbounded, so the times are only wrapped around midnight once all
+   * of the fused operations are applied.
+   *
+   * @param delay the raw user specified delay pattern
+   * @return the timing transformation
+   * @throws CommandExecutionException if the specified delay is invalid
+   */
+  public static TimeTransform transform(final String delay) {
+    return TimeTransform.identity().delay(convertDelay(delay));
+  }
 
-    // apply the delay
-    return Collections.unmodifiableList(entries.stream()
-        .map(entry -> ENTRY_TRANSFORMATION.apply(entry, duration))
-        .collect(Collectors.toList()));
+  /**
+   * Applies the specified delay, as {@link #transform(String) transformed}, to
+   * the time frame of the given entry
+   *
+   * @param entry the entry
+   * @param delay the delay transformation, which maps a time in milliseconds
+   *              of the day into the delayed one
+   * @return the delayed entry
+   */
+  static SubtitleEntry delay(final SubtitleEntry entry, final IntUnaryOperator delay) {
+    return entry.setTimeFrame(delay.applyAsInt(entry.getStartMillis()),
+        delay.applyAsInt(entry.getEndMillis()));
   }
 
   /**
@@ -87,7 +105,7 @@ public final class DelaySubtitleCommand
    * @return the duration
    * @throws CommandExecutionException if the specified delay is invalid
    */
-  private Duration convertDelay(final String delay) {
+  static Duration convertDelay(final String delay) {
     try {
       return Duration.parse(delay);
     } catch (final DateTimeParseException e) {
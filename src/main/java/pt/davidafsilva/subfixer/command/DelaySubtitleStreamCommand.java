@@ -0,0 +1,76 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+/**
+ * This command lazily applies a specified delay to a stream of subtitle
+ * entries, one entry at a time.
+ *
+ * @author david
+ */
+public final class DelaySubtitleStreamCommand
+    implements Function<Stream<SubtitleEntry>, Stream<SubtitleEntry>> {
+
+  // "raw" properties
+  private final String delay;
+
+  /**
+   * Constructs the delay command with the specified delay pattern
+   *
+   * @param delay the delay pattern to be applied.
+   */
+  public DelaySubtitleStreamCommand(final String delay) {
+    this.delay = delay;
+  }
+
+  @Override
+  public Stream<SubtitleEntry> apply(final Stream<SubtitleEntry> entries) {
+    // create the timing transformation with the delay
+    final IntUnaryOperator transform;
+    try {
+      transform = DelaySubtitleCommand.transform(delay);
+    } catch (final CommandExecutionException e) {
+      entries.close();
+      throw e;
+    }
+
+    // apply the delay, as the entries flow, recording them once the stream is closed
+    final long[] shifted = new long[1];
+    return entries.map(entry -> {
+      shifted[0]++;
+      return DelaySubtitleCommand.delay(entry, transform);
+    }).onClose(() -> Metrics.getInstance().add(Counter.ENTRIES_SHIFTED, shifted[0]));
+  }
+}
@@ -0,0 +1,519 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import pt.davidafsilva.subfixer.config.Charsets;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+/**
+ * The encoder of the subtitle entries, shared by the different print commands.
+ * <p>
+ * The entries are encoded, with the specified charset, into a reusable byte
+ * buffer which is only written to the target once full. The indices and time
+ * frames are formatted directly into the buffer, and the text goes through a
+ * single charset encoder, without any intermediate strings.
+ * The encoder shall be {@link #finish() finished} after the last entry.
+ *
+ * @author david
+ */
+final class EntryEncoder {
+
+  // the default size of the output buffer
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  // the maximum length of the index/time frame header (and of the trailer)
+  private static final int MAX_HEADER_LENGTH = 64;
+  // the initial capacity of the text buffer
+  private static final int INITIAL_TEXT_CAPACITY = 256;
+  // the time frame separator and the length of each time
+  private static final String TIME_FRAME_SEPARATOR = " --> ";
+  private static final int TIME_LENGTH = 12;
+  // the line separator
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  // the output buffer and its drain
+  private final ByteBuffer buffer;
+  private final Drain drain;
+  private final Flushable flushable;
+
+  // the number of bytes written to the output
+  private long written;
+
+  // the charset encoder, and the charset which continues the output once started
+  private CharsetEncoder encoder;
+  private final Charset continuation;
+  private final boolean asciiCompatible;
+
+  // the entry header (and trailer) characters
+  private final char[] header = new char[MAX_HEADER_LENGTH];
+  private final CharBuffer headerBuffer = CharBuffer.wrap(header);
+  // the entry text characters
+  private char[] text = new char[INITIAL_TEXT_CAPACITY];
+  private CharBuffer textBuffer = CharBuffer.wrap(text);
+
+  /**
+   * Creates an encoder which writes to the specified output stream
+   *
+   * @param out     the output stream
+   * @param charset the output charset
+   */
+  EntryEncoder(final OutputStream out, final Charset charset) {
+    this(ByteBuffer.allocate(DEFAULT_BUFFER_SIZE),
+        b -> out.write(b.array(), b.arrayOffset() + b.position(), b.remaining()),
+        out, charset);
+  }
+
+  /**
+   * Creates an encoder which writes to the specified channel, through the
+   * given buffer
+   *
+   * @param channel the output channel
+   * @param buffer  the output buffer
+   * @param charset the output charset
+   */
+  EntryEncoder(final WritableByteChannel channel, final ByteBuffer buffer,
+      final Charset charset) {
+    this(buffer, b -> {
+      while (b.hasRemaining()) {
+        channel.write(b);
+      }
+    }, null, charset);
+  }
+
+  /**
+   * Creates an encoder
+   *
+   * @param buffer    the output buffer
+   * @param drain     the drain of the output buffer
+   * @param flushable the output to flush when finished, if any
+   * @param charset   the output charset
+   */
+  private EntryEncoder(final ByteBuffer buffer, final Drain drain, final Flushable flushable,
+      final Charset charset) {
+    this.buffer = buffer;
+    this.drain = drain;
+    this.flushable = flushable;
+    this.encoder = newEncoder(charset);
+    this.continuation = continuation(charset);
+    this.asciiCompatible = Charsets.isAsciiCompatible(charset);
+  }
+
+  /**
+   * Creates a replacing encoder for the specified charset
+   *
+   * @param charset the charset
+   * @return the encoder
+   */
+  private static CharsetEncoder newEncoder(final Charset charset) {
+    return charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Returns the charset which continues an output started with the specified
+   * charset, which is the same charset unless it starts with a byte order mark
+   *
+   * @param charset the charset
+   * @return the charset without the byte order mark
+   */
+  private static Charset continuation(final Charset charset) {
+    switch (charset.name()) {
+      case "UTF-16":
+        return StandardCharsets.UTF_16BE;
+      case "x-UTF-16LE-BOM":
+        return StandardCharsets.UTF_16LE;
+      case "X-UTF-32BE-BOM":
+        return Charset.forName("UTF-32BE");
+      case "X-UTF-32LE-BOM":
+        return Charset.forName("UTF-32LE");
+      default:
+        return charset;
+    }
+  }
+
+  /**
+   * Computes the length of the specified entries once encoded with the given
+   * charset, without actually encoding them. The length is exact for UTF-8 and
+   * for single byte charsets, and estimated from the average bytes per
+   * character of the charset otherwise.
+   *
+   * @param entries the entries
+   * @param charset the output charset
+   * @return the encoded length, in bytes
+   */
+  static long encodedLength(final List<SubtitleEntry> entries, final Charset charset) {
+    final CharsetEncoder encoder = charset.newEncoder();
+    final boolean utf8 = StandardCharsets.UTF_8.equals(encoder.charset());
+    final boolean singleByte = encoder.maxBytesPerChar() == 1;
+
+    // <index><line break><start> --> <end><line break><text><line break><line break>
+    final long headerLength = 2 * TIME_LENGTH + TIME_FRAME_SEPARATOR.length() +
+        4 * LINE_SEPARATOR.length();
+    long headerChars = 0;
+    long textChars = 0;
+    long textBytes = 0;
+    char[] text = new char[INITIAL_TEXT_CAPACITY];
+    final SubtitleTrack track = entries instanceof SubtitleTrack ? (SubtitleTrack) entries : null;
+    for (int i = 0; i < entries.size(); i++) {
+      headerChars += headerLength + digits(i + 1);
+      final int length;
+      if (track != null) {
+        length = track.getTextLength(i);
+        if (utf8) {
+          // only UTF-8 requires the actual characters
+          if (text.length < length) {
+            text = new char[Math.max(length, text.length * 2)];
+          }
+          track.getTextChars(i, text, 0);
+        }
+      } else {
+        final String entryText = entries.get(i).getText();
+        length = entryText.length();
+        if (utf8) {
+          if (text.length < length) {
+            text = new char[Math.max(length, text.length * 2)];
+          }
+          entryText.getChars(0, length, text, 0);
+        }
+      }
+      textChars += length;
+      if (utf8) {
+        textBytes += utf8Length(text, length);
+      }
+    }
+
+    if (utf8) {
+      return headerChars + textBytes;
+    } else if (singleByte) {
+      return headerChars + textChars;
+    }
+    return (long) Math.ceil((headerChars + textChars) * encoder.averageBytesPerChar());
+  }
+
+  /**
+   * Returns the number of decimal digits of the specified index
+   *
+   * @param index the index
+   * @return the number of digits
+   */
+  private static int digits(final long index) {
+    int digits = 1;
+    for (long value = index / 10; value > 0; value /= 10) {
+      digits++;
+    }
+    return digits;
+  }
+
+  /**
+   * Returns the UTF-8 length of the specified characters, with dangling
+   * surrogates being replaced by a single byte
+   *
+   * @param chars  the characters
+   * @param length the number of characters
+   * @return the UTF-8 length, in bytes
+   */
+  private static long utf8Length(final char[] chars, final int length) {
+    long bytes = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = chars[i];
+      if (c < 0x80) {
+        bytes++;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+          Character.isLowSurrogate(chars[i + 1])) {
+        bytes += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        bytes++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Encodes the specified entry
+   *
+   * @param index the entry index (1..N)
+   * @param entry the entry
+   */
+  void encode(final long index, final SubtitleEntry entry) {
+    final String entryText = entry.getText();
+    final int length = entryText.length();
+    entryText.getChars(0, length, textCapacity(length), 0);
+    encode(index, entry.getStartMillis(), entry.getEndMillis(), length);
+  }
+
+  /**
+   * Encodes the entry at the specified position of the track
+   *
+   * @param index    the entry index (1..N)
+   * @param track    the track
+   * @param position the entry position within the track
+   */
+  void encode(final long index, final SubtitleTrack track, final int position) {
+    final int length = track.getTextLength(position);
+    track.getTextChars(position, textCapacity(length), 0);
+    encode(index, track.getStartMillis(position), track.getEndMillis(position), length);
+  }
+
+  /**
+   * Finishes the encoding, writing any buffered data to the output. More
+   * entries may still be encoded afterwards, with the byte order mark of the
+   * charset, if any, being written only once.
+   */
+  void finish() {
+    final CharBuffer empty = CharBuffer.wrap(header, 0, 0);
+    while (encoder.encode(empty, buffer, true).isOverflow()) {
+      drain();
+    }
+    while (encoder.flush(buffer).isOverflow()) {
+      drain();
+    }
+    drain();
+    try {
+      if (flushable != null) {
+        flushable.flush();
+      }
+    } catch (final IOException e) {
+      throw writeError(e);
+    }
+    if (written > 0 && !continuation.equals(encoder.charset())) {
+      // the byte order mark is only written at the start of the output
+      encoder = newEncoder(continuation);
+    } else {
+      encoder.reset();
+    }
+    Metrics.getInstance().add(Counter.BYTES_WRITTEN, written);
+    written = 0;
+  }
+
+  /**
+   * Encodes an entry, whose text is already within the text buffer
+   *
+   * @param index       the entry index
+   * @param startMillis the start time, in milliseconds of the day
+   * @param endMillis   the end time, in milliseconds of the day
+   * @param textLength  the text length
+   */
+  private void encode(final long index, final int startMillis, final int endMillis,
+      final int textLength) {
+    // <index><line break><start> --> <end><line break>
+    int length = appendIndex(index, 0);
+    length = appendText(LINE_SEPARATOR, length);
+    length = appendTime(startMillis, length);
+    length = appendText(TIME_FRAME_SEPARATOR, length);
+    length = appendTime(endMillis, length);
+    length = appendText(LINE_SEPARATOR, length);
+    writeHeader(length);
+
+    // <text>
+    textBuffer.clear().limit(textLength);
+    encodeChars(textBuffer);
+
+    // <line break><line break>
+    writeHeader(appendText(LINE_SEPARATOR, appendText(LINE_SEPARATOR, 0)));
+  }
+
+  /**
+   * Writes the specified length of the header characters
+   *
+   * @param length the header length
+   */
+  private void writeHeader(final int length) {
+    if (asciiCompatible) {
+      // plain ASCII characters, there's no need for the encoder
+      if (buffer.remaining() < length) {
+        drain();
+      }
+      for (int i = 0; i < length; i++) {
+        if (!buffer.hasRemaining()) {
+          // a buffer smaller than the header
+          drain();
+        }
+        buffer.put((byte) header[i]);
+      }
+    } else {
+      headerBuffer.clear().limit(length);
+      encodeChars(headerBuffer);
+    }
+  }
+
+  /**
+   * Encodes the specified characters into the output buffer
+   *
+   * @param chars the characters
+   */
+  private void encodeChars(final CharBuffer chars) {
+    CoderResult result;
+    while ((result = encoder.encode(chars, buffer, false)).isOverflow()) {
+      drain();
+    }
+    if (result.isUnderflow() && chars.hasRemaining()) {
+      // a dangling surrogate character
+      final byte[] replacement = encoder.replacement();
+      if (buffer.remaining() < replacement.length) {
+        drain();
+      }
+      buffer.put(replacement);
+      chars.position(chars.limit());
+    }
+  }
+
+  /**
+   * Appends the index digits to the header
+   *
+   * @param index  the index
+   * @param offset the header offset
+   * @return the new header length
+   */
+  private int appendIndex(final long index, final int offset) {
+    final int digits = digits(index);
+    long value = index;
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      header[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return offset + digits;
+  }
+
+  /**
+   * Appends the time, with the {@code HH:mm:ss,SSS} format, to the header
+   *
+   * @param millis the time in milliseconds of the day
+   * @param offset the header offset
+   * @return the new header length
+   */
+  private int appendTime(final int millis, final int offset) {
+    appendDigits(millis / 3_600_000, 2, offset);
+    header[offset + 2] = ':';
+    appendDigits(millis / 60_000 % 60, 2, offset + 3);
+    header[offset + 5] = ':';
+    appendDigits(millis / 1000 % 60, 2, offset + 6);
+    header[offset + 8] = ',';
+    appendDigits(millis % 1000, 3, offset + 9);
+    return offset + TIME_LENGTH;
+  }
+
+  /**
+   * Appends a zero padded number to the header
+   *
+   * @param value  the value
+   * @param digits the number of digits
+   * @param offset the header offset
+   */
+  private void appendDigits(final int value, final int digits, final int offset) {
+    int remaining = value;
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      header[i] = (char) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+  }
+
+  /**
+   * Appends the specified (ASCII) text to the header
+   *
+   * @param text   the text
+   * @param offset the header offset
+   * @return the new header length
+   */
+  private int appendText(final String text, final int offset) {
+    text.getChars(0, text.length(), header, offset);
+    return offset + text.length();
+  }
+
+  /**
+   * Returns the text buffer, with at least the specified capacity
+   *
+   * @param length the required capacity
+   * @return the text buffer
+   */
+  private char[] textCapacity(final int length) {
+    if (text.length < length) {
+      text = new char[Math.max(length, text.length * 2)];
+      textBuffer = CharBuffer.wrap(text);
+    }
+    return text;
+  }
+
+  /**
+   * Writes the buffered data to the output
+   */
+  private void drain() {
+    buffer.flip();
+    written += buffer.remaining();
+    try {
+      drain.drain(buffer);
+    } catch (final IOException e) {
+      throw writeError(e);
+    } finally {
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Creates the error for a failed write
+   *
+   * @param cause the error cause
+   * @return the error
+   */
+  private static CommandExecutionException writeError(final IOException cause) {
+    return new CommandExecutionException("unable to write entry data to output stream.", cause);
+  }
+
+  // the drain of the output buffer
+  @FunctionalInterface
+  private interface Drain {
+
+    /**
+     * Writes the remaining bytes of the buffer to the output
+     *
+     * @param buffer the buffer
+     * @throws IOException if an error occurs while writing the data
+     */
+    void drain(ByteBuffer buffer) throws IOException;
+  }
+}
@@ -0,0 +1,82 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+
+/**
+ * This command fixes a zip archive of subtitle files in a single pass: each
+ * entry is loaded, delayed and printed to an entry of the same name within the
+ * output archive, without being extracted to the disk.
+ *
+ * @author david
+ */
+public final class FixSubtitleArchiveCommand implements Function<String, Long> {
+
+  // the delay pattern
+  private final String delay;
+  // the output stream
+  private final OutputStream out;
+
+  /**
+   * Creates the fix command with the specified delay pattern and output stream
+   *
+   * @param delay the delay pattern to be applied
+   * @param out   the output stream for the fixed archive
+   */
+  public FixSubtitleArchiveCommand(final String delay, final OutputStream out) {
+    this.delay = delay;
+    this.out = out;
+  }
+
+  @Override
+  public Long apply(final String inputFile) {
+    final DelaySubtitleCommand delayCommand = new DelaySubtitleCommand(delay);
+    // the output stream is finished, rather than closed, as it's not owned by the command
+    final ZipOutputStream zip = new ZipOutputStream(out);
+    final PrintSubtitleEntriesCommand printCommand = new PrintSubtitleEntriesCommand(zip);
+    final long[] entries = new long[1];
+    try {
+      SubtitleLoader.loadArchive(inputFile, (name, track) -> {
+        zip.putNextEntry(new ZipEntry(name));
+        entries[0] += delayCommand.andThen(printCommand).apply(track).size();
+        zip.closeEntry();
+      });
+      zip.finish();
+      out.flush();
+      return entries[0];
+    } catch (final IOException | IllegalStateException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.config.Configuration.Pipeline;
+import pt.davidafsilva.subfixer.load.Compression;
+import pt.davidafsilva.subfixer.load.MappedSubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleReader;
+
+/**
+ * This command fixes a subtitle file, by chaining the load, delay and print
+ * commands of the configured {@link Configuration#PIPELINE pipeline}. Gzip
+ * compressed files are fixed into gzip compressed output, and zip archives
+ * into archives of the fixed entries.
+ *
+ * @author david
+ */
+public final class FixSubtitleCommand implements Function<String, Long> {
+
+  // the delay pattern
+  private final String delay;
+  // the output stream or, alternatively, the output file
+  private final OutputStream out;
+  private final Path output;
+
+  /**
+   * Creates the fix command with the specified delay pattern and output stream
+   *
+   * @param delay the delay pattern to be applied
+   * @param out   the output stream for the fixed entries
+   */
+  public FixSubtitleCommand(final String delay, final OutputStream out) {
+    this.delay = delay;
+    this.out = out;
+    this.output = null;
+  }
+
+  /**
+   * Creates the fix command with the specified delay pattern and output file,
+   * which is atomically replaced once fully written
+   *
+   * @param delay  the delay pattern to be applied
+   * @param output the output file for the fixed entries
+   */
+  public FixSubtitleCommand(final String delay, final Path output) {
+    this.delay = delay;
+    this.out = null;
+    this.output = output;
+  }
+
+  @Override
+  public Long apply(final String inputFile) {
+    // the output has the same compression of the input
+    final Compression compression = compression(inputFile);
+    if (output == null) {
+      return fix(inputFile, compression, out);
+    }
+
+    // write the output file through a temporary one
+    if (compression == Compression.NONE && Configuration.PIPELINE == Pipeline.BUFFERED) {
+      return fixBuffered(inputFile, new WriteSubtitleFileCommand(output));
+    }
+    // the output is expected to be about the size of the input
+    return WriteSubtitleFileCommand.write(output, new File(inputFile).length(),
+        channel -> compression == Compression.NONE && isShiftable(inputFile) ?
+            shift(inputFile, channel) :
+            fix(inputFile, compression, Channels.newOutputStream(channel)));
+  }
+
+  /**
+   * Fixes the subtitle file, writing the fixed entries to the specified output
+   * stream with the given compression
+   *
+   * @param inputFile   the subtitle file
+   * @param compression the compression of the subtitle file
+   * @param out         the output stream
+   * @return the number of fixed entries
+   */
+  private Long fix(final String inputFile, final Compression compression,
+      final OutputStream out) {
+    switch (compression) {
+      case ZIP:
+        return CommandExecutor.getInstance().execute(
+            new FixSubtitleArchiveCommand(delay, out), inputFile);
+      case GZIP:
+        try {
+          // the output stream is finished, rather than closed, as it's not owned by the command
+          final GZIPOutputStream gzip = new GZIPOutputStream(out, Compression.BUFFER_SIZE);
+          final Long entries = fix(inputFile, gzip, false);
+          gzip.finish();
+          out.flush();
+          return entries;
+        } catch (final IOException e) {
+          throw new CommandExecutionException(e.getMessage(), e);
+        }
+      default:
+        return fix(inputFile, out, true);
+    }
+  }
+
+  /**
+   * Fixes the subtitle file, writing the fixed entries to the specified output
+   * stream
+   *
+   * @param inputFile the subtitle file
+   * @param out       the output stream
+   * @param raw       whether the raw bytes of the file can be shifted
+   * @return the number of fixed entries
+   */
+  private Long fix(final String inputFile, final OutputStream out, final boolean raw) {
+    // chain and execute the commands
+    switch (Configuration.PIPELINE) {
+      case SHIFT:
+        if (raw && isShiftable(inputFile)) {
+          final Long entries = shift(inputFile, Channels.newChannel(out));
+          try {
+            out.flush();
+          } catch (final IOException e) {
+            throw new CommandExecutionException(e.getMessage(), e);
+          }
+          return entries;
+        }
+        // the raw bytes can't be shifted (nor repaired), fall back to the buffered pipeline
+        return fixBuffered(inputFile, new PrintSubtitleEntriesCommand(out));
+      case PIPELINED:
+        return CommandExecutor.getInstance().execute(
+            new FixSubtitlePipelineCommand(delay, out), inputFile);
+      case STREAMING:
+        // the file is opened upfront, so the entries are printed with its charset
+        final SubtitleReader reader = open(inputFile);
+        return CommandExecutor.getInstance().execute(
+            new LoadSubtitleEntriesStreamCommand().andThen(
+                new DelaySubtitleStreamCommand(delay).andThen(
+                    new PrintSubtitleEntriesStreamCommand(out,
+                        reader.getCharset().orElse(Configuration.CHARSET))
+                )
+            ), reader);
+      default:
+        return fixBuffered(inputFile, new PrintSubtitleEntriesCommand(out));
+    }
+  }
+
+  /**
+   * Checks whether or not the time frames of the specified subtitle file can be
+   * shifted straight on its raw bytes, with the configured pipeline
+   *
+   * @param inputFile the (uncompressed) subtitle file
+   * @return {@code true} if the file can be shifted, {@code false} otherwise
+   */
+  private static boolean isShiftable(final String inputFile) {
+    return Configuration.PIPELINE == Pipeline.SHIFT && !Configuration.LENIENT &&
+        MappedSubtitleLoader.supports(charset(inputFile));
+  }
+
+  /**
+   * Shifts the time frames of the subtitle file, writing the shifted file to
+   * the specified output channel
+   *
+   * @param inputFile the subtitle file
+   * @param channel   the output channel
+   * @return the number of shifted entries
+   */
+  private Long shift(final String inputFile, final WritableByteChannel channel) {
+    return CommandExecutor.getInstance().execute(
+        new ShiftSubtitleFileCommand(delay, channel), inputFile);
+  }
+
+  /**
+   * Returns the compression of the specified subtitle file
+   *
+   * @param inputFile the subtitle file
+   * @return the compression of the file
+   */
+  private static Compression compression(final String inputFile) {
+    try {
+      return Compression.of(inputFile);
+    } catch (final IOException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Opens the reader of the specified subtitle file
+   *
+   * @param inputFile the subtitle file
+   * @return the reader of the file
+   */
+  private static SubtitleReader open(final String inputFile) {
+    try {
+      return SubtitleLoader.open(inputFile);
+    } catch (final IOException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Returns the charset of the specified subtitle file
+   *
+   * @param inputFile the subtitle file
+   * @return the charset of the file
+   */
+  private static Charset charset(final String inputFile) {
+    try {
+      return MappedSubtitleLoader.charset(inputFile);
+    } catch (final IOException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Fixes the subtitle file with the buffered pipeline
+   *
+   * @param inputFile the subtitle file
+   * @param printer   the command which prints the fixed entries
+   * @return the number of fixed entries
+   */
+  private Long fixBuffered(final String inputFile,
+      final Function<List<SubtitleEntry>, List<SubtitleEntry>> printer) {
+    final List<SubtitleEntry> entries = CommandExecutor.getInstance().execute(
+        new LoadSubtitleEntriesCommand().andThen(
+            new DelaySubtitleCommand(delay).andThen(printer)
+        ), inputFile);
+    return (long) entries.size();
+  }
+}
@@ -0,0 +1,72 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.Function;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+
+/**
+ * This command fixes the subtitle content of an input stream, by chaining the
+ * read, delay and print commands. The fixed entries are always encoded with
+ * the configured charset, regardless of the detected one.
+ *
+ * @author david
+ */
+public final class FixSubtitleContentCommand implements Function<InputStream, Long> {
+
+  // the delay pattern
+  private final String delay;
+  // the output stream
+  private final OutputStream out;
+
+  /**
+   * Creates the fix command with the specified delay pattern and output stream
+   *
+   * @param delay the delay pattern to be applied
+   * @param out   the output stream for the fixed entries
+   */
+  public FixSubtitleContentCommand(final String delay, final OutputStream out) {
+    this.delay = delay;
+    this.out = out;
+  }
+
+  @Override
+  public Long apply(final InputStream in) {
+    final List<SubtitleEntry> entries = CommandExecutor.getInstance().execute(
+        new ReadSubtitleEntriesCommand().andThen(
+            new DelaySubtitleCommand(delay).andThen(
+                new PrintSubtitleEntriesCommand(out, Configuration.CHARSET)
+            )
+        ), in);
+    return (long) entries.size();
+  }
+}
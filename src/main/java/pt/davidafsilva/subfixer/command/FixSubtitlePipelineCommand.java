@@ -0,0 +1,176 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleLoader.LineParser;
+import pt.davidafsilva.subfixer.load.SubtitleReader;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
+
+/**
+ * This command fixes a subtitle file with a {@link CommandExecutor#executePipelined
+ * pipelined} execution: the lines of the file are read on one thread, parsed
+ * and delayed on another, and the fixed entries are printed on the calling
+ * one, all at the same time.
+ * <p>
+ * Just like the streaming pipeline, only the entries in flight are kept in
+ * memory and, on a load error, the entries preceding the faulty one might
+ * already have been printed.
+ *
+ * @author david
+ */
+public final class FixSubtitlePipelineCommand implements Function<String, Long> {
+
+  // the delay pattern
+  private final String delay;
+  // the output stream
+  private final OutputStream out;
+
+  /**
+   * Creates the fix command with the specified delay pattern and output stream
+   *
+   * @param delay the delay pattern to be applied
+   * @param out   the output stream for the fixed entries
+   */
+  public FixSubtitlePipelineCommand(final String delay, final OutputStream out) {
+    this.delay = delay;
+    this.out = out;
+  }
+
+  @Override
+  public Long apply(final String inputFile) {
+    final IntUnaryOperator transform = DelaySubtitleCommand.transform(delay);
+    final Metrics metrics = Metrics.getInstance();
+    final long start = metrics.start();
+    // the file is opened upfront, so the entries are printed with its charset
+    final long printed;
+    try (final SubtitleReader reader = SubtitleLoader.open(inputFile)) {
+      printed = CommandExecutor.getInstance().executePipelined(
+          PipelineStages.reader(reader.getSize()),
+          PipelineStages.delay(transform),
+          PipelineStages.printer(out, reader.getCharset().orElse(Configuration.CHARSET)),
+          reader);
+    } catch (final IOException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    }
+    metrics.record(Stage.PIPELINE, start);
+    return printed;
+  }
+
+  // the stages of the pipeline
+  private static final class PipelineStages {
+
+    // private constructor
+    private PipelineStages() {}
+
+    /**
+     * Creates the reader stage, which reads the lines of the subtitle file
+     *
+     * @param size the size of the subtitle file, in bytes
+     * @return the reader stage
+     */
+    private static PipelineStage<SubtitleReader, String> reader(final long size) {
+      return lines -> reader -> {
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            lines.accept(line);
+          }
+          Metrics.getInstance().add(Counter.BYTES_READ, size);
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      };
+    }
+
+    /**
+     * Creates the stage which parses the lines and delays the resulting entries
+     *
+     * @param transform the delay transformation
+     * @return the parse and delay stage
+     */
+    private static PipelineStage<String, SubtitleEntry> delay(final IntUnaryOperator transform) {
+      return entries -> {
+        final long[] shifted = new long[1];
+        final LineParser parser = SubtitleLoader.parser(entry -> {
+          shifted[0]++;
+          entries.accept(DelaySubtitleCommand.delay(entry, transform));
+        });
+        return new PipelineStage.Sink<String>() {
+          @Override
+          public void accept(final String line) {
+            parser.accept(line);
+          }
+
+          @Override
+          public void finish() {
+            parser.finish();
+            Metrics.getInstance().add(Counter.ENTRIES_SHIFTED, shifted[0]);
+          }
+        };
+      };
+    }
+
+    /**
+     * Creates the printer stage, which encodes the entries to the output stream
+     *
+     * @param out     the output stream
+     * @param charset the charset the entries are encoded with
+     * @return the printer stage
+     */
+    private static PipelineStage<SubtitleEntry, Void> printer(final OutputStream out,
+        final Charset charset) {
+      return ignored -> {
+        final EntryEncoder encoder = new EntryEncoder(out, charset);
+        final long[] index = new long[1];
+        return new PipelineStage.Sink<SubtitleEntry>() {
+          @Override
+          public void accept(final SubtitleEntry entry) {
+            encoder.encode(++index[0], entry);
+          }
+
+          @Override
+          public void finish() {
+            encoder.finish();
+            Metrics.getInstance().add(Counter.ENTRIES_PRINTED, index[0]);
+          }
+        };
+      };
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleFollower;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
+
+/**
+ * This command follows a growing subtitle file, applying the specified delay
+ * to each entry and printing it as soon as the entry is appended to the file.
+ * Only the newly appended bytes are parsed on each update, and the output is
+ * flushed after each update.
+ * <p>
+ * The command keeps following the file until {@link #stop() stopped}, which
+ * lets the ongoing update complete, or until the executing thread is
+ * interrupted.
+ *
+ * @author david
+ */
+public final class FollowSubtitleCommand implements Function<String, Long> {
+
+  // the delay pattern
+  private final String delay;
+  // the output stream
+  private final OutputStream out;
+  // the maximum time to wait for the file to be modified, in milliseconds
+  private final long pollMillis;
+  // whether or not the command was stopped, and the follower of the file, if any
+  private volatile boolean stopped;
+  private volatile SubtitleFollower follower;
+
+  /**
+   * Creates the follow command with the specified delay pattern, output stream
+   * and poll interval
+   *
+   * @param delay      the delay pattern to be applied
+   * @param out        the output stream for the fixed entries
+   * @param pollMillis the maximum time to wait for the file to be modified
+   */
+  public FollowSubtitleCommand(final String delay, final OutputStream out,
+      final long pollMillis) {
+    this.delay = delay;
+    this.out = out;
+    this.pollMillis = pollMillis;
+  }
+
+  @Override
+  public Long apply(final String inputFile) {
+    final IntUnaryOperator transform = DelaySubtitleCommand.transform(delay);
+    final Metrics metrics = Metrics.getInstance();
+    final EntryEncoder encoder = new EntryEncoder(out, Configuration.CHARSET);
+    long idx = 0;
+    try (final SubtitleFollower follower = new SubtitleFollower(inputFile)) {
+      // a stop which didn't see the follower yet is seen right after
+      this.follower = follower;
+      if (stopped) {
+        follower.cancel();
+      }
+      while (!follower.isCancelled() && !Thread.currentThread().isInterrupted()) {
+        final long start = metrics.start();
+        final List<SubtitleEntry> entries = follower.poll();
+        if (entries.isEmpty()) {
+          follower.await(pollMillis);
+          continue;
+        }
+
+        // delay and print the completed entries
+        for (final SubtitleEntry entry : entries) {
+          encoder.encode(++idx, DelaySubtitleCommand.delay(entry, transform));
+        }
+        encoder.finish();
+        metrics.add(Counter.ENTRIES_SHIFTED, entries.size());
+        metrics.add(Counter.ENTRIES_PRINTED, entries.size());
+        metrics.record(Stage.FOLLOW, start);
+      }
+    } catch (final InterruptedException | ClosedByInterruptException e) {
+      // stop following the file
+      Thread.currentThread().interrupt();
+    } catch (final IOException | IllegalStateException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    }
+
+    // return the number of printed entries
+    return idx;
+  }
+
+  /**
+   * Stops following the file, once the ongoing update, if any, is printed. The
+   * command can be stopped from any thread, even before it starts following.
+   */
+  public void stop() {
+    stopped = true;
+    final SubtitleFollower current = follower;
+    if (current != null) {
+      current.cancel();
+    }
+  }
+}
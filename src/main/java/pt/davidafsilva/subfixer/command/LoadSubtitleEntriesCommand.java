@@ -26,11 +26,22 @@ package pt.davidafsilva.subfixer.command;
  * #L%
  */
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 
+import pt.davidafsilva.subfixer.config.Charsets;
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.config.Configuration.Loader;
+import pt.davidafsilva.subfixer.load.MappedSubtitleLoader;
 import pt.davidafsilva.subfixer.load.SubtitleEntry;
 import pt.davidafsilva.subfixer.load.SubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+import pt.davidafsilva.subfixer.load.TrackCache;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
 
 /**
  * This command loads the subtitle entries from a provided input file.
@@ -39,12 +50,50 @@ import pt.davidafsilva.subfixer.load.SubtitleLoader;
  */
 public final class LoadSubtitleEntriesCommand implements Function<String, List<SubtitleEntry>> {
 
+  // the number of bytes within a megabyte
+  private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+  // the parse cache, if enabled, whose tracks are keyed by the lenient charset when detected
+  // (repaired tracks are never cached, as they depend on the lenient mode)
+  private static final TrackCache CACHE = Configuration.CACHE_DIR == null ||
+      Configuration.LENIENT ? null :
+      new TrackCache(Paths.get(Configuration.CACHE_DIR),
+          Configuration.CACHE_SIZE * BYTES_PER_MEGABYTE, Configuration.CHARSET_DETECTION
+          ? Charsets.LENIENT_UTF_8 : Configuration.CHARSET);
+
   @Override
   public List<SubtitleEntry> apply(final String inputFile) {
+    final long start = Metrics.getInstance().start();
     try {
-      return SubtitleLoader.load(inputFile);
+      if (CACHE != null) {
+        return CACHE.load(inputFile, LoadSubtitleEntriesCommand::loadTrack);
+      }
+      if (Configuration.LOADER == Loader.READER) {
+        return SubtitleLoader.load(inputFile);
+      }
+      return loadTrack(inputFile);
     } catch (final Exception e) {
       throw new CommandExecutionException(e.getMessage(), e);
+    } finally {
+      Metrics.getInstance().record(Stage.LOAD, start);
+    }
+  }
+
+  /**
+   * Loads the track of the specified file with the configured loader
+   *
+   * @param inputFile the subtitle file path
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  private static SubtitleTrack loadTrack(final String inputFile) throws IOException {
+    switch (Configuration.LOADER) {
+      case MAPPED:
+        return MappedSubtitleLoader.load(inputFile);
+      case PARALLEL:
+        return MappedSubtitleLoader.load(inputFile, ForkJoinPool.commonPool());
+      default:
+        return SubtitleLoader.loadTrack(inputFile);
     }
   }
 }
@@ -0,0 +1,92 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleReader;
+
+/**
+ * This command lazily loads the subtitle entries from a provided reader of
+ * the input file, as {@link SubtitleLoader#open(String) opened}, as the
+ * resulting stream is consumed. The reader is closed along with the stream,
+ * while its charset is left for the caller to encode the entries with.
+ *
+ * @author david
+ */
+public final class LoadSubtitleEntriesStreamCommand
+    implements Function<SubtitleReader, Stream<SubtitleEntry>> {
+
+  @Override
+  public Stream<SubtitleEntry> apply(final SubtitleReader reader) {
+    final Stream<SubtitleEntry> entries = SubtitleLoader.stream(reader, reader.getSize());
+
+    // translate the errors raised while loading the entries
+    final Iterator<SubtitleEntry> iterator = new LoadErrorTranslator(entries.iterator());
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(entries::close);
+  }
+
+  // the iterator which translates the load errors into command errors
+  private static final class LoadErrorTranslator implements Iterator<SubtitleEntry> {
+
+    // the source iterator
+    private final Iterator<SubtitleEntry> source;
+
+    /**
+     * Creates the translator for the specified source iterator
+     *
+     * @param source the source iterator
+     */
+    private LoadErrorTranslator(final Iterator<SubtitleEntry> source) {
+      this.source = source;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return source.hasNext();
+      } catch (final Exception e) {
+        throw new CommandExecutionException(e.getMessage(), e);
+      }
+    }
+
+    @Override
+    public SubtitleEntry next() {
+      // loading only happens on hasNext()
+      return source.next();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.function.Consumer;
+
+/**
+ * A stage of a {@link CommandExecutor#executePipelined pipelined} execution,
+ * which consumes the items of the previous stage and hands its own items over
+ * to the next one.
+ *
+ * @param <A> the type of the consumed items
+ * @param <B> the type of the produced items
+ * @author david
+ */
+@FunctionalInterface
+public interface PipelineStage<A, B> {
+
+  /**
+   * Opens the stage, on the thread where it runs, returning the sink of its
+   * input items
+   *
+   * @param downstream the consumer of the produced items
+   * @return the sink of the consumed items
+   */
+  Sink<A> open(Consumer<? super B> downstream);
+
+  /**
+   * The sink of the items consumed by a stage
+   *
+   * @param <A> the type of the consumed items
+   */
+  @FunctionalInterface
+  interface Sink<A> extends Consumer<A> {
+
+    /**
+     * Finishes the stage, after its last input item, unless the pipeline has
+     * failed meanwhile
+     */
+    default void finish() {}
+  }
+}
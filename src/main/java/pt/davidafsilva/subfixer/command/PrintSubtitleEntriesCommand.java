@@ -26,15 +26,17 @@ package pt.davidafsilva.subfixer.command;
  * #L%
  */
 
-import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.IntStream;
 
 import pt.davidafsilva.subfixer.config.Configuration;
 import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
 
 /**
  * This command prints the subtitle entries to a designated output stream.
@@ -44,49 +46,67 @@ import pt.davidafsilva.subfixer.load.SubtitleEntry;
 public final class PrintSubtitleEntriesCommand
     implements Function<List<SubtitleEntry>, List<SubtitleEntry>> {
 
-  // the output format
-  private static final String ENTRY_FORMAT = "%d%n%s --> %s%n%s%n%n";
-
   // the output stream
   private final OutputStream out;
+  // the output charset, or null for the one of the printed track
+  private final Charset charset;
 
   /**
    * Default print command constructor, it accepts the target output stream.
+   * The entries are encoded with the charset of the printed track, if it was
+   * detected, or the configured one otherwise.
    *
    * @param out the output stream
    */
   public PrintSubtitleEntriesCommand(final OutputStream out) {
+    this(out, null);
+  }
+
+  /**
+   * Creates the print command for the specified output stream and charset
+   *
+   * @param out     the output stream
+   * @param charset the charset the entries are encoded with
+   */
+  public PrintSubtitleEntriesCommand(final OutputStream out, final Charset charset) {
     this.out = out;
+    this.charset = charset;
   }
 
   @Override
   public List<SubtitleEntry> apply(final List<SubtitleEntry> entries) {
-    // print the entries
-    IntStream.range(0, entries.size())
-        .mapToObj(idx -> {
-          final SubtitleEntry entry = entries.get(idx);
-          return String.format(ENTRY_FORMAT, idx + 1,
-              entry.getStartTime().format(Configuration.DATE_TIME_FORMAT),
-              entry.getEndTime().format(Configuration.DATE_TIME_FORMAT),
-              entry.getText());
-        })
-        .map(str -> str.getBytes(StandardCharsets.UTF_8))
-        .forEach(this::write);
+    // print the entries, with the charset of the track if it was detected
+    final Metrics metrics = Metrics.getInstance();
+    final long start = metrics.start();
+    final Charset target = charset != null ? charset : entries instanceof SubtitleTrack ?
+        ((SubtitleTrack) entries).getCharset().orElse(Configuration.CHARSET) :
+        Configuration.CHARSET;
+    final EntryEncoder encoder = new EntryEncoder(out, target);
+    encode(encoder, entries);
+    encoder.finish();
+    metrics.record(Stage.PRINT, start);
+    metrics.add(Counter.ENTRIES_PRINTED, entries.size());
     // return them as is
     return entries;
   }
 
   /**
-   * Writes the given chunck of raw entry data to the configured output stream
+   * Encodes the specified entries, straight from the track columns whenever
+   * possible
    *
-   * @param entry the raw byte data
+   * @param encoder the entry encoder
+   * @param entries the entries
    */
-  private void write(final byte[] entry) {
-    try {
-      out.write(entry);
-    } catch (final IOException e) {
-      throw new CommandExecutionException("unable to write entry data to output"
-          + " stream.", e);
+  static void encode(final EntryEncoder encoder, final List<SubtitleEntry> entries) {
+    if (entries instanceof SubtitleTrack) {
+      final SubtitleTrack track = (SubtitleTrack) entries;
+      for (int i = 0; i < track.size(); i++) {
+        encoder.encode(i + 1, track, i);
+      }
+    } else {
+      for (int i = 0; i < entries.size(); i++) {
+        encoder.encode(i + 1, entries.get(i));
+      }
     }
   }
 }
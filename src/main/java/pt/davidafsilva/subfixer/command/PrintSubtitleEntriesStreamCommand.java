@@ -0,0 +1,104 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
+
+/**
+ * This command prints a stream of subtitle entries to a designated output
+ * stream, as the entries flow. The stream is consumed and closed by this
+ * command.
+ *
+ * @author david
+ */
+public final class PrintSubtitleEntriesStreamCommand
+    implements Function<Stream<SubtitleEntry>, Long> {
+
+  // the output stream
+  private final OutputStream out;
+  // the charset the entries are encoded with
+  private final Charset charset;
+
+  /**
+   * Default print command constructor, it accepts the target output stream.
+   * The entries are encoded with the configured charset.
+   *
+   * @param out the output stream
+   */
+  public PrintSubtitleEntriesStreamCommand(final OutputStream out) {
+    this(out, Configuration.CHARSET);
+  }
+
+  /**
+   * Creates the print command for the specified output stream and charset
+   *
+   * @param out     the output stream
+   * @param charset the charset the entries are encoded with
+   */
+  public PrintSubtitleEntriesStreamCommand(final OutputStream out, final Charset charset) {
+    this.out = out;
+    this.charset = charset;
+  }
+
+  @Override
+  public Long apply(final Stream<SubtitleEntry> entries) {
+    final Metrics metrics = Metrics.getInstance();
+    final long start = metrics.start();
+    final EntryEncoder encoder = new EntryEncoder(out, charset);
+    long idx = 0;
+    try (final Stream<SubtitleEntry> source = entries) {
+      final Iterator<SubtitleEntry> iterator = source.iterator();
+      while (iterator.hasNext()) {
+        encoder.encode(++idx, iterator.next());
+      }
+    } catch (final RuntimeException e) {
+      // still write the entries which preceded the error
+      try {
+        encoder.finish();
+      } catch (final RuntimeException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+    encoder.finish();
+    metrics.record(Stage.STREAM, start);
+    metrics.add(Counter.ENTRIES_PRINTED, idx);
+
+    // return the number of printed entries
+    return idx;
+  }
+}
@@ -0,0 +1,110 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free, ring buffer for handing items over from a single
+ * producer thread to a single consumer thread.
+ * <p>
+ * Each side only writes its own position, with a lazy (ordered) store, and
+ * keeps a cached copy of the position of the other side, which is only read
+ * again when the cached one says the buffer is full (or empty).
+ *
+ * @param <T> the type of the items
+ * @author david
+ */
+final class RingBuffer<T> {
+
+  // the slots and the mask of their indices
+  private final Object[] slots;
+  private final int mask;
+
+  // the position of the next item to be read, written by the consumer only
+  private final AtomicLong head = new AtomicLong();
+  // the position of the next item to be written, written by the producer only
+  private final AtomicLong tail = new AtomicLong();
+  // the cached positions of the other side
+  private long cachedHead;
+  private long cachedTail;
+
+  /**
+   * Creates the ring buffer with the specified capacity
+   *
+   * @param capacity the capacity, which is rounded up to a power of two
+   */
+  RingBuffer(final int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("invalid capacity: " + capacity);
+    }
+    final int size = Integer.highestOneBit(capacity);
+    slots = new Object[size == capacity ? size : size << 1];
+    mask = slots.length - 1;
+  }
+
+  /**
+   * Offers the specified item, which shall only be called by the producer
+   *
+   * @param item the item
+   * @return {@code true} if the item was added, {@code false} if the buffer is
+   * full
+   */
+  boolean offer(final T item) {
+    final long position = tail.get();
+    if (position - cachedHead == slots.length) {
+      cachedHead = head.get();
+      if (position - cachedHead == slots.length) {
+        return false;
+      }
+    }
+    slots[(int) position & mask] = item;
+    tail.lazySet(position + 1);
+    return true;
+  }
+
+  /**
+   * Polls the next item, which shall only be called by the consumer
+   *
+   * @return the item or {@code null} if the buffer is empty
+   */
+  @SuppressWarnings("unchecked")
+  T poll() {
+    final long position = head.get();
+    if (position == cachedTail) {
+      cachedTail = tail.get();
+      if (position == cachedTail) {
+        return null;
+      }
+    }
+    final int index = (int) position & mask;
+    final T item = (T) slots[index];
+    slots[index] = null;
+    head.lazySet(position + 1);
+    return item;
+  }
+}
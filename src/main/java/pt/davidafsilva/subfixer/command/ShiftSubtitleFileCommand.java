@@ -0,0 +1,77 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+import pt.davidafsilva.subfixer.load.TimeFrameShifter;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
+
+/**
+ * This command applies a specified delay to a subtitle file by shifting its
+ * time frames in place, straight on the raw bytes of the file, and transferring
+ * everything else to the output channel as is. The transfer is zero-copy when
+ * the output is a file channel.
+ *
+ * @author david
+ */
+public final class ShiftSubtitleFileCommand implements Function<String, Long> {
+
+  // the delay pattern
+  private final String delay;
+  // the output channel
+  private final WritableByteChannel out;
+
+  /**
+   * Creates the shift command with the specified delay pattern and output
+   * channel
+   *
+   * @param delay the delay pattern to be applied
+   * @param out   the output channel for the shifted file
+   */
+  public ShiftSubtitleFileCommand(final String delay, final WritableByteChannel out) {
+    this.delay = delay;
+    this.out = out;
+  }
+
+  @Override
+  public Long apply(final String inputFile) {
+    final IntUnaryOperator transform = DelaySubtitleCommand.transform(delay);
+    final long start = Metrics.getInstance().start();
+    try {
+      return TimeFrameShifter.shift(inputFile, transform, out);
+    } catch (final IOException | IllegalStateException e) {
+      throw new CommandExecutionException(e.getMessage(), e);
+    } finally {
+      Metrics.getInstance().record(Stage.SHIFT, start);
+    }
+  }
+}
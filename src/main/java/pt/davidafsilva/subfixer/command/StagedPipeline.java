@@ -0,0 +1,281 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.command.PipelineStage.Sink;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * A single pipelined execution of three stages, the reader, the transformer
+ * and the writer, each running on its own thread. The items of each stage are
+ * handed over to the next one in batches, through bounded {@link RingBuffer
+ * ring buffers}, so that the stages only contend once per batch.
+ * <p>
+ * A stage waiting on a full (or empty) ring buffer spins for a while, then
+ * yields and finally parks for short periods, thus the stages keep up with
+ * each other without any locks. The first failure of any stage cancels the
+ * other ones and is rethrown once all of them have stopped.
+ *
+ * @author david
+ */
+final class StagedPipeline {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the number of items of each batch
+  static final int BATCH_SIZE = 1024;
+  // the number of batches within each ring buffer
+  private static final int RING_CAPACITY = 16;
+  // the waiting strategy: spins, then yields, then parks
+  private static final int SPINS = 128;
+  private static final int YIELDS = 256;
+  private static final long PARK_NANOS = 50_000;
+  // the marker of the end of the items of a stage
+  private static final Object[] END = new Object[0];
+
+  // the ring buffers between the reader and the transformer, and the transformer and the writer
+  private final RingBuffer<Object[]> read = new RingBuffer<>(RING_CAPACITY);
+  private final RingBuffer<Object[]> transformed = new RingBuffer<>(RING_CAPACITY);
+  // the first failure of any stage
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  /**
+   * Runs the specified stages, with the reader and transformer on their own
+   * threads and the writer on the calling one
+   *
+   * @param <I>         the type of the input
+   * @param <A>         the type of the read items
+   * @param <B>         the type of the transformed items
+   * @param reader      the reader stage, which consumes the input
+   * @param transformer the transformer stage
+   * @param writer      the writer stage
+   * @param input       the input
+   * @return the number of items consumed by the writer
+   * @throws CommandExecutionException if any of the stages fails
+   */
+  <I, A, B> long run(final PipelineStage<I, A> reader, final PipelineStage<A, B> transformer,
+      final PipelineStage<B, ?> writer, final I input) {
+    final Thread readerThread = start("subfixer-pipeline-reader", () -> {
+      final Batcher<A> batcher = new Batcher<>(read);
+      final Sink<I> sink = reader.open(batcher);
+      sink.accept(input);
+      sink.finish();
+      batcher.close();
+    });
+    final Thread transformerThread = start("subfixer-pipeline-transformer", () -> {
+      final Batcher<B> batcher = new Batcher<>(transformed);
+      final Sink<A> sink = transformer.open(batcher);
+      drain(read, sink);
+      sink.finish();
+      batcher.close();
+    });
+
+    long written = 0;
+    try {
+      final Sink<B> sink = writer.open(item -> {});
+      written = drain(transformed, sink);
+      sink.finish();
+    } catch (final Throwable e) {
+      fail(e);
+    } finally {
+      join(readerThread);
+      join(transformerThread);
+    }
+
+    final Throwable error = failure.get();
+    if (error instanceof CommandExecutionException) {
+      throw (CommandExecutionException) error;
+    } else if (error instanceof Error) {
+      throw (Error) error;
+    } else if (error != null) {
+      throw new CommandExecutionException(error.getMessage(), error);
+    }
+    return written;
+  }
+
+  /**
+   * Starts a thread running the specified stage, recording its failure
+   *
+   * @param name  the thread name
+   * @param stage the stage
+   * @return the started thread
+   */
+  private Thread start(final String name, final Runnable stage) {
+    final Thread thread = new Thread(() -> {
+      try {
+        stage.run();
+      } catch (final Throwable e) {
+        fail(e);
+      }
+    }, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Waits for the specified stage thread to stop, cancelling the pipeline if
+   * interrupted meanwhile
+   *
+   * @param thread the stage thread
+   */
+  private void join(final Thread thread) {
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (final InterruptedException e) {
+        interrupted = true;
+        fail(e);
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Records the specified failure, unless there's one already or it's the
+   * cancellation caused by another one
+   *
+   * @param error the failure
+   */
+  private void fail(final Throwable error) {
+    if (!(error instanceof CancellationException) && failure.compareAndSet(null, error)) {
+      LOGGER.log(Level.FINE, "pipeline stage failed", error);
+    }
+  }
+
+  /**
+   * Hands over all of the items of the specified ring buffer to the given sink
+   *
+   * @param <T>  the type of the items
+   * @param ring the ring buffer
+   * @param sink the sink
+   * @return the number of items
+   */
+  @SuppressWarnings("unchecked")
+  private <T> long drain(final RingBuffer<Object[]> ring, final Sink<T> sink) {
+    long items = 0;
+    while (true) {
+      Object[] batch;
+      int attempt = 0;
+      while ((batch = ring.poll()) == null) {
+        idle(attempt++);
+      }
+      if (batch == END) {
+        return items;
+      }
+      for (final Object item : batch) {
+        sink.accept((T) item);
+      }
+      items += batch.length;
+    }
+  }
+
+  /**
+   * Waits, according to the number of the failed attempts so far, for a ring
+   * buffer to be ready
+   *
+   * @param attempt the number of failed attempts
+   * @throws CancellationException if the pipeline has failed meanwhile
+   */
+  private void idle(final int attempt) {
+    if (failure.get() != null || Thread.currentThread().isInterrupted()) {
+      throw new CancellationException();
+    }
+    if (attempt < SPINS) {
+      return;
+    }
+    if (attempt < SPINS + YIELDS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+
+  // the consumer which groups the items of a stage into batches
+  private final class Batcher<T> implements Consumer<T> {
+
+    // the target ring buffer
+    private final RingBuffer<Object[]> ring;
+    // the current batch and its size
+    private Object[] batch = new Object[BATCH_SIZE];
+    private int size;
+
+    /**
+     * Creates the batcher for the specified ring buffer
+     *
+     * @param ring the target ring buffer
+     */
+    private Batcher(final RingBuffer<Object[]> ring) {
+      this.ring = ring;
+    }
+
+    @Override
+    public void accept(final T item) {
+      batch[size++] = item;
+      if (size == batch.length) {
+        put(batch);
+        batch = new Object[BATCH_SIZE];
+        size = 0;
+      }
+    }
+
+    /**
+     * Hands over the pending items, followed by the end marker
+     */
+    private void close() {
+      if (size > 0) {
+        put(Arrays.copyOf(batch, size));
+      }
+      put(END);
+    }
+
+    /**
+     * Puts the specified batch into the ring buffer, waiting for room if needed
+     *
+     * @param items the batch
+     */
+    private void put(final Object[] items) {
+      int attempt = 0;
+      while (!ring.offer(items)) {
+        idle(attempt++);
+      }
+    }
+  }
+}
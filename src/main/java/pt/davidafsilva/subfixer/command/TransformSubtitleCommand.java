@@ -0,0 +1,102 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+import pt.davidafsilva.subfixer.load.TimeTransform;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
+
+/**
+ * This command applies a {@link TimeTransform timing transformation} to the
+ * subtitle entries, in a single pass over the entries.
+ * <p>
+ * Rather than chaining several timing commands with {@link #andThen}, which
+ * copies all of the entries on each step, the transformations shall be fused
+ * with {@link #then(TimeTransform)}, so that all of them are applied at once.
+ *
+ * @author david
+ */
+public final class TransformSubtitleCommand
+    implements Function<List<SubtitleEntry>, List<SubtitleEntry>> {
+
+  // the timing transformation
+  private final TimeTransform transform;
+
+  /**
+   * Creates the command with the specified timing transformation
+   *
+   * @param transform the timing transformation
+   */
+  public TransformSubtitleCommand(final TimeTransform transform) {
+    this.transform = Objects.requireNonNull(transform, "transform");
+  }
+
+  /**
+   * Creates the command which applies the transformation of this command
+   * followed by the specified one, in a single pass
+   *
+   * @param next the transformation applied after the one of this command
+   * @return the fused command
+   */
+  public TransformSubtitleCommand then(final TimeTransform next) {
+    return new TransformSubtitleCommand(transform.then(next));
+  }
+
+  @Override
+  public List<SubtitleEntry> apply(final List<SubtitleEntry> entries) {
+    final Metrics metrics = Metrics.getInstance();
+    final long start = metrics.start();
+    final List<SubtitleEntry> transformed;
+    if (entries instanceof SubtitleTrack) {
+      // transform the track times straight away, sharing the entries text
+      transformed = ((SubtitleTrack) entries).transform(transform);
+    } else {
+      final List<SubtitleEntry> result = new ArrayList<>(entries.size());
+      for (final SubtitleEntry entry : entries) {
+        final long startMillis = transform.applyAsLong(entry.getStartMillis());
+        final long endMillis = transform.applyAsLong(entry.getEndMillis());
+        if (!transform.isTrimming() || startMillis < endMillis) {
+          result.add(entry.setTimeFrame(TimeTransform.toMillisOfDay(startMillis),
+              TimeTransform.toMillisOfDay(endMillis)));
+        }
+      }
+      transformed = Collections.unmodifiableList(result);
+    }
+    metrics.record(Stage.DELAY, start);
+    metrics.add(Counter.ENTRIES_SHIFTED, transformed.size());
+    return transformed;
+  }
+}
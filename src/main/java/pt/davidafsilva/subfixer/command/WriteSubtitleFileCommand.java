@@ -0,0 +1,208 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+import pt.davidafsilva.subfixer.metrics.Metrics.Stage;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * This command writes the subtitle entries to a designated file.
+ * <p>
+ * The entries are encoded, through a large direct buffer, straight into the
+ * channel of a temporary file within the target directory, whose length is
+ * set upfront to the encoded length of the entries. Once fully written, the
+ * temporary file is atomically moved over the target file, thus the target is
+ * either left untouched or fully replaced, never partially written.
+ *
+ * @author david
+ */
+public final class WriteSubtitleFileCommand
+    implements Function<List<SubtitleEntry>, List<SubtitleEntry>> {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the size of the output buffer
+  static final int BUFFER_SIZE = 1024 * 1024;
+
+  // the permissions of a new target file
+  private static final Set<PosixFilePermission> NEW_FILE_PERMISSIONS =
+      PosixFilePermissions.fromString("rw-r--r--");
+
+  /**
+   * The writer of the content of a file
+   */
+  @FunctionalInterface
+  interface ChannelWriter {
+
+    /**
+     * Writes the content to the specified file channel
+     *
+     * @param channel the file channel
+     * @return the number of written entries
+     * @throws IOException if an error occurs while writing the content
+     */
+    long write(FileChannel channel) throws IOException;
+  }
+
+  // the target file
+  private final Path target;
+
+  /**
+   * Creates the write command for the specified target file, which is replaced
+   * if it exists
+   *
+   * @param target the target file
+   */
+  public WriteSubtitleFileCommand(final Path target) {
+    this.target = Objects.requireNonNull(target, "target");
+  }
+
+  @Override
+  public List<SubtitleEntry> apply(final List<SubtitleEntry> entries) {
+    // write the entries with the charset of the track, if it was detected
+    final Metrics metrics = Metrics.getInstance();
+    final long start = metrics.start();
+    final Charset charset = entries instanceof SubtitleTrack ?
+        ((SubtitleTrack) entries).getCharset().orElse(Configuration.CHARSET) :
+        Configuration.CHARSET;
+    write(target, EntryEncoder.encodedLength(entries, charset), channel -> {
+      final EntryEncoder encoder = new EntryEncoder(channel,
+          ByteBuffer.allocateDirect(BUFFER_SIZE), charset);
+      PrintSubtitleEntriesCommand.encode(encoder, entries);
+      encoder.finish();
+      return entries.size();
+    });
+    metrics.record(Stage.PRINT, start);
+    metrics.add(Counter.ENTRIES_PRINTED, entries.size());
+    // return them as is
+    return entries;
+  }
+
+  /**
+   * Writes the specified target file through a temporary file, whose length is
+   * set upfront to the given expected size and which is atomically moved over
+   * the target once fully written. The temporary file is deleted on any error.
+   * <p>
+   * Setting the length only writes the last byte, which is a sparse extension
+   * on most file systems: the file size is updated once, rather than by every
+   * write, but no disk blocks are reserved, thus running out of space is still
+   * only detected by the writes themselves.
+   *
+   * @param target the target file
+   * @param size   the expected size of the file, or {@code 0} if unknown
+   * @param writer the writer of the file content
+   * @return the number of written entries
+   * @throws CommandExecutionException if the file can't be written
+   */
+  static long write(final Path target, final long size, final ChannelWriter writer) {
+    Path temporary = null;
+    try {
+      final Path directory = target.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      temporary = Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+      permissions(target, temporary);
+      final long entries;
+      try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        // set the file length, so the writes don't have to extend it
+        if (size > 0) {
+          channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        entries = writer.write(channel);
+        // the expected size might have been an overestimate
+        channel.truncate(channel.position());
+        channel.force(false);
+      }
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      return entries;
+    } catch (final IOException e) {
+      deleteQuietly(temporary);
+      throw new CommandExecutionException("unable to write " + target + ": " + e.getMessage(), e);
+    } catch (final RuntimeException e) {
+      deleteQuietly(temporary);
+      throw e;
+    }
+  }
+
+  /**
+   * Sets the permissions of the temporary file to the ones of the target file,
+   * if it exists, or to the usual permissions of a new file, since temporary
+   * files are created readable by their owner only
+   *
+   * @param target    the target file
+   * @param temporary the temporary file
+   * @throws IOException if an error occurs while setting the permissions
+   */
+  private static void permissions(final Path target, final Path temporary) throws IOException {
+    if (!Files.getFileStore(temporary).supportsFileAttributeView(PosixFileAttributeView.class)) {
+      return;
+    }
+    Files.setPosixFilePermissions(temporary, Files.exists(target) ?
+        Files.getPosixFilePermissions(target) : NEW_FILE_PERMISSIONS);
+  }
+
+  /**
+   * Deletes the specified temporary file, if any
+   *
+   * @param temporary the temporary file
+   */
+  private static void deleteQuietly(final Path temporary) {
+    if (temporary == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(temporary);
+    } catch (final IOException e) {
+      LOGGER.log(Level.SEVERE, "unable to delete " + temporary, e);
+    }
+  }
+}
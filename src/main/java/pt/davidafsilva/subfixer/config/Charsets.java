@@ -0,0 +1,311 @@
+package pt.davidafsilva.subfixer.config;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Charset related utilities.
+ *
+ * @author david
+ */
+public final class Charsets {
+
+  // the characters which must be encoded as ASCII
+  private static final String ASCII_PROBE = "\t\r\n 0123456789:,->";
+
+  // the number of leading bytes which are sniffed to detect the charset
+  public static final int SNIFF_LENGTH = 64 * 1024;
+  // the usual charset of the files which aren't valid UTF-8
+  public static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+  // the UTF-8 charset which decodes any malformed input as windows-1252
+  public static final Charset LENIENT_UTF_8 = new LenientUtf8();
+
+  // the byte order marks
+  private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+  private static final byte[] UTF_16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+  private static final byte[] UTF_16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+  // private constructor
+  private Charsets() {}
+
+  /**
+   * Checks whether or not the specified charset is ASCII compatible, meaning
+   * that the line breaks, digits and time frame symbols are encoded as plain
+   * ASCII bytes which are never part of a multi-byte character. That is the case
+   * for UTF-8 and for the single-byte charsets, such as ISO-8859-1.
+   *
+   * @param charset the charset
+   * @return {@code true} if the charset is ASCII compatible, {@code false}
+   * otherwise
+   */
+  public static boolean isAsciiCompatible(final Charset charset) {
+    if (!charset.canEncode()) {
+      return false;
+    }
+    final CharsetEncoder encoder = charset.newEncoder();
+    final boolean singleByteOrUtf8 = encoder.charset().equals(StandardCharsets.UTF_8) ||
+        encoder.maxBytesPerChar() == 1;
+    return singleByteOrUtf8 && Arrays.equals(ASCII_PROBE.getBytes(StandardCharsets.US_ASCII),
+        ASCII_PROBE.getBytes(charset));
+  }
+
+  /**
+   * Detects the charset of the content whose leading bytes are the remaining
+   * ones of the specified buffer, which is left untouched. The byte order mark,
+   * if any, determines the charset. Otherwise, content with plenty of zero
+   * bytes at either the odd or the even positions is deemed UTF-16, valid UTF-8
+   * content is deemed UTF-8, and anything else is deemed windows-1252.
+   * <p>
+   * UTF-8 content is decoded with the {@link #LENIENT_UTF_8 lenient UTF-8}
+   * charset, which validates the remaining content as it is decoded, decoding
+   * any malformed input as windows-1252 rather than reading the content again.
+   *
+   * @param head the buffer with the leading bytes of the content
+   * @return the charset the content shall be decoded with
+   */
+  public static Charset detect(final ByteBuffer head) {
+    if (startsWith(head, UTF_8_BOM)) {
+      return LENIENT_UTF_8;
+    } else if (startsWith(head, UTF_16BE_BOM)) {
+      return StandardCharsets.UTF_16BE;
+    } else if (startsWith(head, UTF_16LE_BOM)) {
+      return StandardCharsets.UTF_16LE;
+    }
+
+    // count the zero bytes at the even and odd positions
+    final int start = head.position();
+    final int end = Math.min(head.limit(), start + SNIFF_LENGTH);
+    int evenZeros = 0;
+    int oddZeros = 0;
+    for (int i = start; i < end; i++) {
+      if (head.get(i) == 0) {
+        if (((i - start) & 1) == 0) {
+          evenZeros++;
+        } else {
+          oddZeros++;
+        }
+      }
+    }
+    final int pairs = (end - start) / 2;
+    if (oddZeros > pairs / 4 && evenZeros < pairs / 16) {
+      return StandardCharsets.UTF_16LE;
+    } else if (evenZeros > pairs / 4 && oddZeros < pairs / 16) {
+      return StandardCharsets.UTF_16BE;
+    }
+    return isUtf8(head, start, end) ? LENIENT_UTF_8 : WINDOWS_1252;
+  }
+
+  /**
+   * Maps the leading bytes of the specified file channel, which shall be
+   * sniffed for its charset
+   *
+   * @param channel the file channel
+   * @return the buffer with the leading bytes of the file
+   * @throws IOException if an error occurs while mapping the file
+   */
+  public static ByteBuffer head(final FileChannel channel) throws IOException {
+    return channel.map(MapMode.READ_ONLY, 0, Math.min(channel.size(), SNIFF_LENGTH));
+  }
+
+  /**
+   * Returns the length of the byte order mark at the start of the remaining
+   * bytes of the specified buffer, which is left untouched
+   *
+   * @param head the buffer with the leading bytes of the content
+   * @return the length of the byte order mark or {@code 0} if there's none
+   */
+  public static int bomLength(final ByteBuffer head) {
+    if (startsWith(head, UTF_8_BOM)) {
+      return UTF_8_BOM.length;
+    } else if (startsWith(head, UTF_16BE_BOM) || startsWith(head, UTF_16LE_BOM)) {
+      return UTF_16BE_BOM.length;
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the length of the UTF-8 byte order mark at the start of the
+   * specified file, as long as it's decoded with the UTF-8 charset. The byte
+   * order mark is not part of the content, even if the charset wasn't detected.
+   *
+   * @param channel the file channel
+   * @param charset the charset the file is decoded with
+   * @return the length of the byte order mark or {@code 0} if there's none
+   * @throws IOException if an error occurs while reading the file
+   */
+  public static int bomLength(final FileChannel channel, final Charset charset)
+      throws IOException {
+    if (!StandardCharsets.UTF_8.equals(charset)) {
+      return 0;
+    }
+    final ByteBuffer head = ByteBuffer.allocate(UTF_8_BOM.length);
+    channel.read(head, 0);
+    head.flip();
+    return startsWith(head, UTF_8_BOM) ? UTF_8_BOM.length : 0;
+  }
+
+  /**
+   * Returns the charset the content decoded with the specified charset shall
+   * be encoded with
+   *
+   * @param charset the charset the content was decoded with
+   * @return the charset for encoding the content
+   */
+  public static Charset encoding(final Charset charset) {
+    return charset.canEncode() ? charset.newEncoder().charset() : charset;
+  }
+
+  /**
+   * Checks whether or not the remaining bytes of the specified buffer start
+   * with the given prefix
+   *
+   * @param buffer the buffer
+   * @param prefix the prefix
+   * @return {@code true} if starting with the prefix, {@code false} otherwise
+   */
+  private static boolean startsWith(final ByteBuffer buffer, final byte[] prefix) {
+    if (buffer.remaining() < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(buffer.position() + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether or not the specified range of bytes is valid UTF-8. A
+   * truncated character at the end of the range is deemed valid, as the range
+   * may be cut at any point of the content.
+   *
+   * @param buffer the buffer
+   * @param from   the start of the range (inclusive)
+   * @param to     the end of the range (exclusive)
+   * @return {@code true} if valid UTF-8, {@code false} otherwise
+   */
+  private static boolean isUtf8(final ByteBuffer buffer, final int from, final int to) {
+    int i = from;
+    while (i < to) {
+      final int lead = buffer.get(i++) & 0xFF;
+      final int continuations;
+      if (lead < 0x80) {
+        continue;
+      } else if (lead >= 0xC2 && lead <= 0xDF) {
+        continuations = 1;
+      } else if (lead >= 0xE0 && lead <= 0xEF) {
+        continuations = 2;
+      } else if (lead >= 0xF0 && lead <= 0xF4) {
+        continuations = 3;
+      } else {
+        return false;
+      }
+      for (int c = 0; c < continuations && i < to; c++) {
+        if ((buffer.get(i++) & 0xC0) != 0x80) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // the UTF-8 charset which decodes any malformed input as windows-1252
+  private static final class LenientUtf8 extends Charset {
+
+    // the characters of each of the windows-1252 bytes
+    private static final char[] WINDOWS_1252_CHARS;
+
+    static {
+      final byte[] bytes = new byte[256];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) i;
+      }
+      WINDOWS_1252_CHARS = new String(bytes, WINDOWS_1252).toCharArray();
+    }
+
+    // private constructor
+    private LenientUtf8() {
+      super("x-UTF-8-windows-1252", null);
+    }
+
+    @Override
+    public boolean contains(final Charset cs) {
+      return StandardCharsets.UTF_8.contains(cs);
+    }
+
+    @Override
+    public CharsetDecoder newDecoder() {
+      return new CharsetDecoder(this, 1, 1) {
+
+        // the strict UTF-8 decoder
+        private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        @Override
+        protected CoderResult decodeLoop(final ByteBuffer in, final CharBuffer out) {
+          while (true) {
+            final CoderResult result = utf8.decode(in, out, false);
+            if (!result.isError()) {
+              return result;
+            }
+            // decode the malformed input as windows-1252
+            if (out.remaining() < result.length()) {
+              return CoderResult.OVERFLOW;
+            }
+            for (int i = 0; i < result.length(); i++) {
+              out.put(WINDOWS_1252_CHARS[in.get() & 0xFF]);
+            }
+          }
+        }
+
+        @Override
+        protected void implReset() {
+          utf8.reset();
+        }
+      };
+    }
+
+    @Override
+    public CharsetEncoder newEncoder() {
+      return StandardCharsets.UTF_8.newEncoder();
+    }
+  }
+}
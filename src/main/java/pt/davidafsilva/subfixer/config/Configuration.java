@@ -27,8 +27,10 @@ package pt.davidafsilva.subfixer.config;
  */
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,9 +50,43 @@ public final class Configuration {
   // the global logger namespace
   public static final String LOGGER_NAME = "pt.davidafsilva.subfixer";
   // the log level
-  public static final Level LOGGER_LEVEL = Level.parse(System.getProperty("logLevel", "OFF"));
-  // the charset to be used when loading and write data
-  public static final Charset CHARSET = Charset.forName(System.getProperty("encoding", "UTF-8"));
+  public static final Level LOGGER_LEVEL = System.getProperty("logLevel") == null ? Level.OFF :
+      Level.parse(System.getProperty("logLevel"));
+  // whether or not the charset of each file is detected from its leading bytes
+  public static final boolean CHARSET_DETECTION = "auto".equalsIgnoreCase(
+      System.getProperty("encoding"));
+  // the charset to be used when loading and write data (UTF-8 when detected per file)
+  public static final Charset CHARSET = CHARSET_DETECTION ? StandardCharsets.UTF_8 :
+      Charset.forName(System.getProperty("encoding", "UTF-8"));
+  // whether or not the malformed entries are repaired, rather than failing the load
+  public static final boolean LENIENT = Boolean.getBoolean("lenient");
+  // the pipeline used to load, fix and print the entries
+  public static final Pipeline PIPELINE = Pipeline.valueOf(
+      System.getProperty("pipeline", "buffered").toUpperCase(Locale.ROOT));
+  // the loader used to load the entries of the buffered pipeline
+  public static final Loader LOADER = Loader.valueOf(
+      System.getProperty("loader", "reader").toUpperCase(Locale.ROOT));
+  // how the pipeline metrics are exposed
+  public static final MetricsExposure METRICS = MetricsExposure.valueOf(
+      System.getProperty("metrics", "off").toUpperCase(Locale.ROOT));
+  // the number of files fixed concurrently in batch mode
+  public static final int THREADS = Integer.getInteger("threads",
+      Runtime.getRuntime().availableProcessors());
+  // the maximum number of asynchronously executed commands in flight
+  public static final int ASYNC_LIMIT = Integer.getInteger("asyncLimit", 1024);
+  // whether or not the asynchronous commands run on virtual threads, whenever available
+  public static final boolean VIRTUAL_THREADS = Boolean.parseBoolean(
+      System.getProperty("virtualThreads", "true"));
+  // the capacity of the pending requests queue in server mode
+  public static final int SERVER_QUEUE = Integer.getInteger("serverQueue", 64);
+  // the maximum time to wait for a followed file to be modified, in milliseconds
+  public static final long FOLLOW_POLL = Long.getLong("followPoll", 1000);
+  // the directory of the parse cache, which is disabled if not set
+  public static final String CACHE_DIR = System.getProperty("cacheDir");
+  // the maximum size of the parse cache, in megabytes
+  public static final long CACHE_SIZE = Long.getLong("cacheSize", 256);
+  // the maximum size of the text pool shared by the loaders, in megabytes (0 to disable)
+  public static final long TEXT_POOL = Long.getLong("textPool", 0);
   // the logger instance
   private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
@@ -59,11 +95,38 @@ public final class Configuration {
     LOGGER.setLevel(LOGGER_LEVEL);
   }
 
-  // the date time format for the entry timestamps
-  public static final DateTimeFormatter DATE_TIME_FORMAT;
-
+  // log loaded configuration, without formatting it unless it's actually logged
   static {
-    DATE_TIME_FORMAT = new DateTimeFormatterBuilder()
+    if (LOGGER.isLoggable(Level.INFO)) {
+      LOGGER.info(String.format("{%n\tLogger: %s%n\tLog level: %s%n\tCharset: %s%s%n" +
+          "\tPipeline: %s%n\tLoader: %s%n\tMetrics: %s%n\tThreads: %d%n\tServer queue: %d%n" +
+          "\tFollow poll: %d ms%n\tCache directory: %s%n\tCache size: %d MB%n\tText pool: %d MB%n" +
+          "\tLenient: %s%n\tAsync limit: %d%n\tVirtual threads: %s%n}",
+          LOGGER_NAME, LOGGER_LEVEL, CHARSET, CHARSET_DETECTION ? " (detected per file)" : "",
+          PIPELINE, LOADER, METRICS, THREADS, SERVER_QUEUE, FOLLOW_POLL, CACHE_DIR, CACHE_SIZE,
+          TEXT_POOL, LENIENT, ASYNC_LIMIT, VIRTUAL_THREADS));
+    }
+  }
+
+  // private constructor
+  private Configuration() {}
+
+  /**
+   * Returns the date time format for the entry timestamps, which is only built
+   * when first needed. It replaces the former {@code DATE_TIME_FORMAT} constant,
+   * which would build the format along with the configuration.
+   *
+   * @return the date time format
+   */
+  public static DateTimeFormatter dateTimeFormat() {
+    return DateTimeFormatHolder.DATE_TIME_FORMAT;
+  }
+
+  // the lazy holder of the date time format
+  private static final class DateTimeFormatHolder {
+
+    // the date time format for the entry timestamps
+    private static final DateTimeFormatter DATE_TIME_FORMAT = new DateTimeFormatterBuilder()
         .appendValue(HOUR_OF_DAY, 2)
         .appendLiteral(':')
         .appendValue(MINUTE_OF_HOUR, 2)
@@ -74,12 +137,61 @@ public final class Configuration {
         .toFormatter();
   }
 
-  // log loaded configuration
-  static {
-    LOGGER.info(String.format("{%n\tLogger: %s%n\tLog level: %s%n\tCharset: %s%n}",
-        LOGGER_NAME, LOGGER_LEVEL, CHARSET));
+  /**
+   * The supported pipelines for processing the subtitle entries
+   */
+  public enum Pipeline {
+    // all of the entries are loaded before being fixed and printed
+    BUFFERED,
+    // each entry is fixed and printed as soon as it is loaded
+    STREAMING,
+    // the time frames are shifted in place, on the raw bytes of the file
+    SHIFT,
+    // the entries are read, fixed and printed concurrently, on separate threads
+    PIPELINED
   }
 
-  // private constructor
-  private Configuration() {}
+  /**
+   * The supported loaders for the subtitle files
+   */
+  public enum Loader {
+    // the file is read and decoded line by line
+    READER,
+    // the file is mapped into memory and parsed from its raw bytes
+    MAPPED,
+    // the file is mapped into memory and its chunks are parsed concurrently
+    PARALLEL
+  }
+
+  /**
+   * The supported exposures of the pipeline metrics
+   */
+  public enum MetricsExposure {
+    // the metrics are only recorded
+    OFF,
+    // the metrics are exposed through JMX
+    JMX,
+    // the metrics are reported at the end of the run
+    REPORT,
+    // the metrics are exposed through JMX and reported at the end of the run
+    ALL;
+
+    /**
+     * Checks whether or not the metrics are exposed through JMX
+     *
+     * @return {@code true} if exposed through JMX, {@code false} otherwise
+     */
+    public boolean isJmx() {
+      return this == JMX || this == ALL;
+    }
+
+    /**
+     * Checks whether or not the metrics are reported at the end of the run
+     *
+     * @return {@code true} if reported, {@code false} otherwise
+     */
+    public boolean isReport() {
+      return this == REPORT || this == ALL;
+    }
+  }
 }
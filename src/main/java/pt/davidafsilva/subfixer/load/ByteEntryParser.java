@@ -0,0 +1,339 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Objects;
+
+import pt.davidafsilva.subfixer.load.EntryLoadContext.EntryLoadState;
+
+/**
+ * A subtitle entries parser which works directly on the raw bytes of the lines,
+ * encoded with an ASCII compatible charset. The indices and time frames are
+ * parsed without decoding the bytes, and the text of the entries is only decoded
+ * when the entry is complete, straight into the track.
+ * <p>
+ * The parser follows the same rules, and reports the same errors, as the line
+ * consumers used by the {@link SubtitleLoader}, including the malformed or
+ * unmappable bytes reported by its reader.
+ *
+ * @author david
+ */
+final class ByteEntryParser implements MappedLineScanner.LineConsumer {
+
+  // the initial capacity of the text buffer
+  private static final int INITIAL_TEXT_CAPACITY = 256;
+  // the maximum number of digits parsed without decoding the index
+  private static final int MAX_INDEX_DIGITS = 9;
+
+  // the loaded track
+  private final SubtitleTrack.Builder track;
+  // the charset of the raw bytes
+  private final Charset charset;
+  // the decoder of the entries text
+  private final CharsetDecoder decoder;
+  // the encoded line separator used to join the text lines
+  private final byte[] lineSeparator;
+  // whether or not the lines are a chunk of the file, in which case the indices
+  // are validated against the first index of the chunk
+  private final boolean chunk;
+
+  // the current state
+  private EntryLoadState state = EntryLoadState.INITIAL;
+  // the number of consumed lines
+  private int lines;
+  // the index of the first entry
+  private int firstIndex;
+  // the current entry time frame
+  private long timeFrame;
+  // the current entry raw text, along with its buffer view
+  private byte[] text = new byte[INITIAL_TEXT_CAPACITY];
+  private ByteBuffer textBytes = ByteBuffer.wrap(text);
+  private int textLength;
+  // the decoded text of the current entry
+  private CharBuffer textChars = CharBuffer.allocate(INITIAL_TEXT_CAPACITY);
+
+  /**
+   * Creates the parser for the specified track
+   *
+   * @param track   the track where the entries are added to
+   * @param charset the charset of the raw bytes
+   */
+  ByteEntryParser(final SubtitleTrack.Builder track, final Charset charset) {
+    this(track, charset, false);
+  }
+
+  /**
+   * Creates the parser for the specified track, which might be parsing just a
+   * chunk of the file. The chunk shall start at the beginning of an entry and
+   * its entries are only required to have consecutive indices, starting at any
+   * {@link #getFirstIndex() index}.
+   *
+   * @param track   the track where the entries are added to
+   * @param charset the charset of the raw bytes
+   * @param chunk   whether or not the lines are a chunk of the file
+   */
+  ByteEntryParser(final SubtitleTrack.Builder track, final Charset charset,
+      final boolean chunk) {
+    this.track = Objects.requireNonNull(track, "track");
+    this.charset = Objects.requireNonNull(charset, "charset");
+    this.decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    this.lineSeparator = System.lineSeparator().getBytes(charset);
+    this.chunk = chunk;
+  }
+
+  @Override
+  public void accept(final MappedByteBuffer buffer, final int start, final int end,
+      final long position) throws CharacterCodingException {
+    lines++;
+
+    // trim the line
+    int from = start;
+    int to = end;
+    while (from < to && (buffer.get(from) & 0xFF) <= ' ') {
+      from++;
+    }
+    while (to > from && (buffer.get(to - 1) & 0xFF) <= ' ') {
+      to--;
+    }
+    consume(buffer, from, to);
+  }
+
+  /**
+   * Returns the number of lines consumed so far
+   *
+   * @return the number of lines
+   */
+  int getLines() {
+    return lines;
+  }
+
+  /**
+   * Returns the index of the first parsed entry
+   *
+   * @return the first index
+   */
+  int getFirstIndex() {
+    return firstIndex;
+  }
+
+  /**
+   * Finishes the parsing, filling the last entry if not processed yet
+   *
+   * @throws CharacterCodingException if the text of the entry can't be decoded
+   */
+  void finish() throws CharacterCodingException {
+    consume(null, 0, 0);
+  }
+
+  /**
+   * Consumes the specified trimmed line
+   *
+   * @param buffer the buffer containing the line
+   * @param from   the start index of the line
+   * @param to     the end index (exclusive) of the line
+   * @throws CharacterCodingException if the line, or the completed entry text,
+   *                                  can't be decoded
+   */
+  private void consume(final ByteBuffer buffer, final int from, final int to)
+      throws CharacterCodingException {
+    switch (state) {
+      case INITIAL:
+        if (from == to) {
+          // just a blank line
+          return;
+        }
+        if (chunk) {
+          validateChunkIndex(buffer, from, to);
+        } else {
+          validateIndex(buffer, from, to, track.size(), charset);
+        }
+        state = EntryLoadState.TIME_FRAME;
+        break;
+      case TIME_FRAME:
+        timeFrame = TimeFrameParser.parse(buffer, from, to - from);
+        if (timeFrame == TimeFrameParser.INVALID) {
+          timeFrame = EntryTimeFrameLineConsumer.parseIrregular(
+              decode(buffer, from, to, charset), track.size() + 1);
+        }
+        state = EntryLoadState.TEXT;
+        break;
+      case TEXT:
+        if (from < to) {
+          appendText(buffer, from, to);
+        } else {
+          completeEntry();
+        }
+        break;
+      default:
+        throw new IllegalStateException("unsupported state");
+    }
+  }
+
+  /**
+   * Validates the entry index line of a chunk, which must follow the index of
+   * the previous entry of the chunk
+   *
+   * @param buffer the buffer containing the line
+   * @param from   the start index of the line
+   * @param to     the end index (exclusive) of the line
+   */
+  private void validateChunkIndex(final ByteBuffer buffer, final int from, final int to) {
+    final int index = parseIndex(buffer, from, to);
+    if (track.size() == 0) {
+      firstIndex = index;
+    }
+    if (index <= 0 || index != firstIndex + track.size()) {
+      throw new IllegalStateException("unexpected entry index within chunk");
+    }
+  }
+
+  /**
+   * Validates the entry index line
+   *
+   * @param buffer        the buffer containing the line
+   * @param from          the start index of the line
+   * @param to            the end index (exclusive) of the line
+   * @param loadedEntries the number of entries loaded so far
+   * @param charset       the charset of the raw bytes
+   * @throws CharacterCodingException if the unexpected index can't be decoded
+   */
+  static void validateIndex(final ByteBuffer buffer, final int from, final int to,
+      final int loadedEntries, final Charset charset) throws CharacterCodingException {
+    // anything else than the expected index is handled (and reported) as text
+    if (parseIndex(buffer, from, to) != loadedEntries + 1) {
+      ValidateEntryIndexLineConsumer.validateIndex(decode(buffer, from, to, charset),
+          loadedEntries);
+    }
+  }
+
+  /**
+   * Parses the entry index line, without decoding it
+   *
+   * @param buffer the buffer containing the line
+   * @param from   the start index of the line
+   * @param to     the end index (exclusive) of the line
+   * @return the index or a negative value if the line isn't a (small enough)
+   * number
+   */
+  static int parseIndex(final ByteBuffer buffer, final int from, final int to) {
+    int index = to - from <= MAX_INDEX_DIGITS && from < to ? 0 : -1;
+    for (int i = from; i < to && index >= 0; i++) {
+      final int digit = buffer.get(i) - '0';
+      index = digit < 0 || digit > 9 ? -1 : index * 10 + digit;
+    }
+    return index;
+  }
+
+  /**
+   * Appends the specified text line to the current entry text
+   *
+   * @param buffer the buffer containing the line
+   * @param from   the start index of the line
+   * @param to     the end index (exclusive) of the line
+   */
+  private void appendText(final ByteBuffer buffer, final int from, final int to) {
+    final int separatorLength = textLength > 0 ? lineSeparator.length : 0;
+    final int required = textLength + separatorLength + to - from;
+    if (required > text.length) {
+      text = Arrays.copyOf(text, Math.max(required, text.length * 2));
+      textBytes = ByteBuffer.wrap(text);
+    }
+    System.arraycopy(lineSeparator, 0, text, textLength, separatorLength);
+    textLength += separatorLength;
+
+    // the scanner only uses absolute reads, hence we're free to move the position
+    buffer.position(from);
+    buffer.get(text, textLength, to - from);
+    textLength += to - from;
+  }
+
+  /**
+   * Completes the current entry, decoding its text straight into the track
+   *
+   * @throws CharacterCodingException if the text can't be decoded
+   */
+  private void completeEntry() throws CharacterCodingException {
+    if (textLength == 0) {
+      throw EntryFinalLineConsumer.noTextError(track.size());
+    }
+    final int capacity = (int) Math.ceil(textLength * (double) decoder.maxCharsPerByte());
+    if (capacity > textChars.capacity()) {
+      textChars = CharBuffer.allocate(Math.max(capacity, textChars.capacity() * 2));
+    }
+    textBytes.limit(textLength).position(0);
+    textChars.clear();
+    decoder.reset();
+    CoderResult result = decoder.decode(textBytes, textChars, true);
+    if (result.isUnderflow()) {
+      result = decoder.flush(textChars);
+    }
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    textChars.flip();
+    track.add(TimeFrameParser.startMillis(timeFrame), TimeFrameParser.endMillis(timeFrame),
+        textChars, textChars.remaining());
+    textLength = 0;
+    state = EntryLoadState.INITIAL;
+  }
+
+  /**
+   * Decodes the specified line, reporting rather than replacing any malformed
+   * or unmappable bytes
+   *
+   * @param buffer  the buffer containing the line
+   * @param from    the start index of the line
+   * @param to      the end index (exclusive) of the line
+   * @param charset the charset of the raw bytes
+   * @return the decoded line
+   * @throws CharacterCodingException if the line can't be decoded
+   */
+  static String decode(final ByteBuffer buffer, final int from, final int to,
+      final Charset charset) throws CharacterCodingException {
+    if (from == to) {
+      return "";
+    }
+    final ByteBuffer line = buffer.duplicate();
+    line.limit(to).position(from);
+    return charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT)
+        .decode(line)
+        .toString();
+  }
+}
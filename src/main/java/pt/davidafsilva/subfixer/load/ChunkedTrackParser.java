@@ -0,0 +1,334 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parser which splits a mapped subtitle file into chunks, at entry
+ * boundaries, and parses them concurrently on a fork/join pool.
+ * <p>
+ * Each chunk only requires its own entries to have consecutive indices, which
+ * are then validated across the chunks, once they're stitched back together.
+ * Any error while parsing the chunks is reported as a {@link ChunkedParseException},
+ * leaving the caller to parse the file sequentially and report the actual
+ * error with the same messages of the sequential parsing.
+ *
+ * @author david
+ */
+final class ChunkedTrackParser {
+
+  // the minimum size of a chunk
+  static final long MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+  // the number of chunks per thread of the pool, for a better load balancing
+  private static final int CHUNKS_PER_THREAD = 4;
+  // the size of the blocks read while looking for the entry boundaries
+  private static final int BOUNDARY_BLOCK_SIZE = 8 * 1024;
+
+  // the file channel
+  private final FileChannel channel;
+  // the charset of the raw bytes
+  private final Charset charset;
+  // the fork/join pool
+  private final ForkJoinPool pool;
+  // the minimum size of a chunk
+  private final long minChunkSize;
+
+  /**
+   * Creates the parser for the specified file channel
+   *
+   * @param channel the file channel
+   * @param charset the charset of the raw bytes
+   * @param pool    the fork/join pool where the chunks are parsed
+   */
+  ChunkedTrackParser(final FileChannel channel, final Charset charset,
+      final ForkJoinPool pool) {
+    this(channel, charset, pool, MIN_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates the parser for the specified file channel, with a specific minimum
+   * chunk size
+   *
+   * @param channel      the file channel
+   * @param charset      the charset of the raw bytes
+   * @param pool         the fork/join pool where the chunks are parsed
+   * @param minChunkSize the minimum size of a chunk
+   */
+  ChunkedTrackParser(final FileChannel channel, final Charset charset,
+      final ForkJoinPool pool, final long minChunkSize) {
+    this.channel = channel;
+    this.charset = charset;
+    this.pool = pool;
+    this.minChunkSize = minChunkSize;
+  }
+
+  /**
+   * Checks whether or not a file with the specified size is worth being
+   * parsed in chunks, with the given parallelism
+   *
+   * @param size        the file size
+   * @param parallelism the pool parallelism
+   * @return {@code true} if the file should be parsed in chunks, {@code false}
+   * otherwise
+   */
+  static boolean isWorthy(final long size, final int parallelism) {
+    return parallelism > 1 && size >= 2 * MIN_CHUNK_SIZE;
+  }
+
+  /**
+   * Parses the whole file
+   *
+   * @return the parsed track
+   * @throws IOException           if an error occurs while reading the file
+   * @throws ChunkedParseException if the file can't be parsed in chunks
+   */
+  ParsedTrack parse() throws IOException {
+    return parse(0);
+  }
+
+  /**
+   * Parses the file from the specified position, such as the end of its byte
+   * order mark
+   *
+   * @param from the position where the content starts
+   * @return the parsed track
+   * @throws IOException           if an error occurs while reading the file
+   * @throws ChunkedParseException if the file can't be parsed in chunks
+   */
+  ParsedTrack parse(final long from) throws IOException {
+    final long[] boundaries = split(from, channel.size());
+    final ChunkTask[] chunks = new ChunkTask[boundaries.length - 1];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = new ChunkTask(boundaries[i], boundaries[i + 1]);
+    }
+    try {
+      pool.invoke(new ChunksTask(chunks, 0, chunks.length));
+    } catch (final UncheckedIOException e) {
+      throw e.getCause();
+    } catch (final IllegalStateException e) {
+      throw new ChunkedParseException(e);
+    }
+
+    // stitch the chunks back together, validating the sequence of indices
+    final SubtitleTrack.Builder track = new SubtitleTrack.Builder(TextPool.getDefault());
+    int lines = 0;
+    for (final ChunkTask chunk : chunks) {
+      if (chunk.track.size() > 0 && chunk.parser.getFirstIndex() != track.size() + 1) {
+        throw new ChunkedParseException(new IllegalStateException(
+            "unexpected first index " + chunk.parser.getFirstIndex() + " at " + chunk.from));
+      }
+      track.addAll(chunk.track);
+      lines += chunk.parser.getLines();
+    }
+    return new ParsedTrack(track.build(), lines);
+  }
+
+  /**
+   * Splits the file into chunks, at entry boundaries
+   *
+   * @param from the position where the content starts
+   * @param size the file size
+   * @return the chunk boundaries, starting at {@code from} and ending at the
+   * file size
+   * @throws IOException if an error occurs while reading the file
+   */
+  private long[] split(final long from, final long size) throws IOException {
+    final int target = (int) Math.max(1, Math.min(
+        (long) pool.getParallelism() * CHUNKS_PER_THREAD, (size - from) / minChunkSize));
+    final List<Long> boundaries = new ArrayList<>(target + 1);
+    boundaries.add(from);
+    for (int i = 1; i < target; i++) {
+      final long boundary = nextEntryStart(Math.max(from + (size - from) / target * i,
+          boundaries.get(boundaries.size() - 1)), size);
+      if (boundary >= size) {
+        break;
+      }
+      if (boundary > boundaries.get(boundaries.size() - 1)) {
+        boundaries.add(boundary);
+      }
+    }
+    boundaries.add(size);
+    return boundaries.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  /**
+   * Finds the start of the first entry after the specified position, which is
+   * the start of the first non blank line which follows a blank line
+   *
+   * @param position the position
+   * @param size     the file size
+   * @return the position of the entry start or the file size if there's none
+   * @throws IOException if an error occurs while reading the file
+   */
+  private long nextEntryStart(final long position, final long size) throws IOException {
+    final ByteBuffer block = ByteBuffer.allocate(BOUNDARY_BLOCK_SIZE);
+    // the start of the current line, which is unknown for the first (partial) line
+    long lineStart = -1;
+    boolean blank = true;
+    boolean previousBlank = false;
+    long offset = position;
+    while (offset < size) {
+      block.clear();
+      final int read = channel.read(block, offset);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        final int b = block.get(i) & 0xFF;
+        if (b == '\n') {
+          previousBlank = lineStart >= 0 && blank;
+          lineStart = offset + i + 1;
+          blank = true;
+        } else if (b > ' ') {
+          if (blank && previousBlank) {
+            return lineStart;
+          }
+          blank = false;
+        }
+      }
+      offset += read;
+    }
+    return size;
+  }
+
+  /**
+   * The parsed track, along with the number of parsed lines
+   */
+  static final class ParsedTrack {
+
+    // the track
+    final SubtitleTrack track;
+    // the number of parsed lines
+    final int lines;
+
+    /**
+     * Creates the parsed track
+     *
+     * @param track the track
+     * @param lines the number of parsed lines
+     */
+    private ParsedTrack(final SubtitleTrack track, final int lines) {
+      this.track = track;
+      this.lines = lines;
+    }
+  }
+
+  /**
+   * The error of a chunked parse, which shall be retried sequentially
+   */
+  static final class ChunkedParseException extends RuntimeException {
+
+    /**
+     * Creates the exception with the specified cause
+     *
+     * @param cause the underlying cause
+     */
+    private ChunkedParseException(final Throwable cause) {
+      super(cause);
+    }
+  }
+
+  // the task which parses a range of chunks, splitting it until a single chunk
+  private static final class ChunksTask extends RecursiveAction {
+
+    // the chunks
+    private final ChunkTask[] chunks;
+    // the range of chunks
+    private final int from;
+    private final int to;
+
+    /**
+     * Creates the task for the specified range of chunks
+     *
+     * @param chunks the chunks
+     * @param from   the first chunk
+     * @param to     the last chunk (exclusive)
+     */
+    private ChunksTask(final ChunkTask[] chunks, final int from, final int to) {
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        chunks[from].compute();
+      } else {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new ChunksTask(chunks, from, middle), new ChunksTask(chunks, middle, to));
+      }
+    }
+  }
+
+  // the parsing of a single chunk
+  private final class ChunkTask {
+
+    // the chunk region
+    private final long from;
+    private final long to;
+    // the parsed track and its parser
+    private final SubtitleTrack.Builder track = new SubtitleTrack.Builder(TextPool.getDefault());
+    private final ByteEntryParser parser = new ByteEntryParser(track, charset, true);
+
+    /**
+     * Creates the parsing of the specified region
+     *
+     * @param from the start position of the chunk
+     * @param to   the end position (exclusive) of the chunk
+     */
+    private ChunkTask(final long from, final long to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * Parses the chunk
+     */
+    private void compute() {
+      try {
+        MappedLineScanner.scan(channel, from, to, parser);
+        parser.finish();
+      } catch (final CharacterCodingException e) {
+        // reported by the sequential parsing, unless preceded by another error
+        throw new IllegalStateException(e);
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
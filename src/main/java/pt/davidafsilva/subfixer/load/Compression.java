@@ -0,0 +1,117 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The compression formats of the subtitle files, which are detected from their
+ * leading bytes (the magic number of the format) rather than their names.
+ *
+ * @author david
+ */
+public enum Compression {
+
+  /**
+   * A plain subtitle file
+   */
+  NONE,
+
+  /**
+   * A gzip compressed subtitle file, such as {@code movie.srt.gz}
+   */
+  GZIP,
+
+  /**
+   * A zip archive of subtitle files, such as one entry per language
+   */
+  ZIP;
+
+  // the size of the (de)compression buffers
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  // the magic numbers of the formats
+  private static final int GZIP_MAGIC = 0x1F8B;
+  private static final int ZIP_MAGIC = 0x504B0304;
+
+  /**
+   * Detects the compression of the specified file from its leading bytes
+   *
+   * @param file the file path
+   * @return the compression of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  public static Compression of(final String file) throws IOException {
+    try (final FileChannel channel = FileChannel.open(Paths.get(file),
+        StandardOpenOption.READ)) {
+      final ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+      while (head.hasRemaining() && channel.read(head) > 0) {
+        // keep reading until the magic number is read or the file ends
+      }
+      head.flip();
+      return of(head);
+    }
+  }
+
+  /**
+   * Detects the compression of the content starting at the position of the
+   * specified buffer, which is left untouched
+   *
+   * @param head the leading bytes of the content
+   * @return the compression of the content
+   */
+  static Compression of(final ByteBuffer head) {
+    final int position = head.position();
+    if (head.remaining() >= Integer.BYTES && head.getInt(position) == ZIP_MAGIC) {
+      return ZIP;
+    }
+    if (head.remaining() >= Short.BYTES &&
+        (head.getShort(position) & 0xFFFF) == GZIP_MAGIC) {
+      return GZIP;
+    }
+    return NONE;
+  }
+
+  /**
+   * Wraps the specified input stream, so that the content is read
+   * decompressed. Archives are read one entry at a time, thus they're left as
+   * is.
+   *
+   * @param in the compressed input stream
+   * @return the decompressed input stream
+   * @throws IOException if an error occurs while reading the compression header
+   */
+  public InputStream decompress(final InputStream in) throws IOException {
+    return this == GZIP ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+  }
+}
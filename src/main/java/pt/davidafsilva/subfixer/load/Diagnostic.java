@@ -0,0 +1,111 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Objects;
+
+/**
+ * A diagnostic of an issue found, and repaired, while leniently loading a
+ * subtitle file. Each diagnostic is immutable.
+ *
+ * @author david
+ */
+public final class Diagnostic {
+
+  /**
+   * The issues found while leniently loading a subtitle file
+   */
+  public enum Issue {
+    // an entry index which does not follow the previous one, the entry is renumbered
+    UNEXPECTED_INDEX,
+    // an entry without index, the entry is loaded from its time frame
+    MISSING_INDEX,
+    // a line which isn't part of any entry, skipped up to the next entry
+    UNEXPECTED_LINE,
+    // a blank line within an entry, skipped
+    STRAY_BLANK_LINE,
+    // an invalid time frame, the entry is skipped
+    INVALID_TIME_FRAME,
+    // an entry which isn't terminated by a blank line, terminated at the next time frame
+    MISSING_BLANK_LINE,
+    // an entry without text, the entry is skipped
+    MISSING_TEXT,
+    // an entry truncated by the end of the file, the entry is skipped
+    TRUNCATED_ENTRY
+  }
+
+  // properties
+  private final int line;
+  private final Issue issue;
+
+  /**
+   * Creates the diagnostic of an issue found at the specified line
+   *
+   * @param line  the line number
+   * @param issue the issue
+   */
+  Diagnostic(final int line, final Issue issue) {
+    this.line = line;
+    this.issue = Objects.requireNonNull(issue, "issue");
+  }
+
+  /**
+   * Returns the number of the line where the issue was found
+   *
+   * @return the line number
+   */
+  public int getLine() { return line; }
+
+  /**
+   * Returns the issue found
+   *
+   * @return the issue
+   */
+  public Issue getIssue() { return issue; }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final Diagnostic that = (Diagnostic) o;
+    return line == that.line && issue == that.issue;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(line, issue);
+  }
+
+  @Override
+  public String toString() {
+    return "line " + line + ": " + issue;
+  }
+}
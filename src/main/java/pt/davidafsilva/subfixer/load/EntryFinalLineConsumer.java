@@ -30,6 +30,9 @@ import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import pt.davidafsilva.subfixer.load.Diagnostic.Issue;
+import pt.davidafsilva.subfixer.load.EntryLoadContext.EntryLoadState;
+
 import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
 
 /**
@@ -45,31 +48,46 @@ final class EntryFinalLineConsumer implements BiConsumer<LoadContext, String> {
 
   @Override
   public void accept(final LoadContext loadContext, final String line) {
-    switch (loadContext.getCurrentEntryLoadContext().getCurrentLoadState()) {
-      case FINAL:
-        final String text = loadContext.getCurrentEntryLoadContext().getText();
-        if (text.isEmpty()) {
-          final RuntimeException e = new IllegalStateException("unable to load subtitle file: " +
-              "no subtitle entry text for entry " + loadContext.getLoadedEntries().size() + 1);
-          LOGGER.log(Level.SEVERE, "no subtitle entry text", e);
-          throw e;
-        }
+    if (loadContext.getCurrentEntryLoadContext().getCurrentLoadState() == EntryLoadState.FINAL) {
+      complete(loadContext);
+    }
+  }
 
-        // create the subtitle entry
-        final SubtitleEntry entry = new SubtitleEntry(
-            loadContext.getCurrentEntryLoadContext().getStartTime(),
-            loadContext.getCurrentEntryLoadContext().getEndTime(),
-            loadContext.getCurrentEntryLoadContext().getText()
-        );
+  /**
+   * Completes the entry being loaded, adding it to the loaded entries, and
+   * initiates a new load step. An entry without text is skipped when loading
+   * leniently.
+   *
+   * @param loadContext the load context
+   * @throws IllegalStateException if the entry has no text
+   */
+  static void complete(final LoadContext loadContext) {
+    final EntryLoadContext entry = loadContext.getCurrentEntryLoadContext();
+    if (!entry.hasText()) {
+      if (!loadContext.isLenient()) {
+        throw noTextError(loadContext.getLoadedEntriesCount());
+      }
+      loadContext.report(Issue.MISSING_TEXT);
+    } else {
+      // add the subtitle entry to the context
+      loadContext.addSubtitleEntry(entry.getStartMillis(), entry.getEndMillis(),
+          entry.getTextSequence());
+    }
 
-        // add it to the context
-        loadContext.addSubtitleEntry(entry);
+    // reset the entry load step for the next entry
+    loadContext.resetEntryLoadContext();
+  }
 
-        // create a new entry load step
-        loadContext.createEntryLoadContext();
-        break;
-      default:
-        break;
-    }
+  /**
+   * Creates (and logs) the error for an entry without text
+   *
+   * @param loadedEntries the number of entries loaded so far
+   * @return the error
+   */
+  static RuntimeException noTextError(final int loadedEntries) {
+    final RuntimeException e = new IllegalStateException("unable to load subtitle file: " +
+        "no subtitle entry text for entry " + loadedEntries + 1);
+    LOGGER.log(Level.SEVERE, "no subtitle entry text", e);
+    return e;
   }
 }
@@ -26,7 +26,6 @@ package pt.davidafsilva.subfixer.load;
  * #L%
  */
 
-import java.time.LocalTime;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,14 +43,20 @@ final class EntryLoadContext {
   // the logger
   private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
+  // the possible states, which aren't cloned on every transition
+  private static final EntryLoadState[] STATES = EntryLoadState.values();
+  // the maximum capacity of the text kept when the context is reset
+  private static final int MAX_RETAINED_TEXT = 4096;
+
   // the current entry load state
   private EntryLoadState currentLoadState;
-  // the entry start time
-  private LocalTime startTime;
-  // the entry end time
-  private LocalTime endTime;
-  // the actual subtitle text of this entry
+  // the entry start time, in milliseconds of the day
+  private int startMillis = -1;
+  // the entry end time, in milliseconds of the day
+  private int endMillis = -1;
+  // the actual subtitle text of this entry and the start of its last line
   private StringBuilder text = new StringBuilder();
+  private int lastLineStart;
 
   /**
    * Creates a entry load context with the specified initial state.
@@ -70,18 +75,20 @@ final class EntryLoadContext {
   EntryLoadState getCurrentLoadState() { return currentLoadState; }
 
   /**
-   * Returns the start time, if any was set so far, otherwise {@code null} is returned
+   * Returns the start time, in milliseconds of the day, if any was set so far,
+   * otherwise {@code -1} is returned
    *
    * @return entry start time
    */
-  LocalTime getStartTime() { return startTime; }
+  int getStartMillis() { return startMillis; }
 
   /**
-   * Returns the end time, if any was set so far, otherwise {@code null} is returned
+   * Returns the end time, in milliseconds of the day, if any was set so far,
+   * otherwise {@code -1} is returned
    *
    * @return entry end time
    */
-  LocalTime getEndTime() { return endTime; }
+  int getEndMillis() { return endMillis; }
 
   /**
    * Returns the entry text, if any was set so far, otherwise an empty string is
@@ -91,29 +98,72 @@ final class EntryLoadContext {
    */
   String getText() { return text.toString(); }
 
+  /**
+   * Returns the entry text, as is, without copying it. The text is only valid
+   * until the context is reset.
+   *
+   * @return entry text
+   */
+  CharSequence getTextSequence() { return text; }
+
+  /**
+   * Checks whether or not any text was set so far
+   *
+   * @return {@code true} if the entry has text, {@code false} otherwise
+   */
+  boolean hasText() { return text.length() > 0; }
+
+  /**
+   * Removes the last line of the entry text if it's an entry index, which is
+   * the case of an entry that isn't terminated by a blank line
+   */
+  void removeTrailingIndex() {
+    if (ValidateEntryIndexLineConsumer.parseIndex(text, lastLineStart, text.length()) >= 0) {
+      final String separator = System.lineSeparator();
+      text.setLength(Math.max(0, lastLineStart - separator.length()));
+      final int previous = text.lastIndexOf(separator);
+      lastLineStart = previous < 0 ? 0 : previous + separator.length();
+    }
+  }
+
   /**
    * Transitions to the next state
    */
   void nextState() {
-    final EntryLoadState[] possibleStates = EntryLoadState.values();
-    if (currentLoadState.ordinal() + 1 == possibleStates.length) {
+    if (currentLoadState.ordinal() + 1 == STATES.length) {
       final RuntimeException e = new IllegalStateException(
           "unable to progress to the next state, already at " + currentLoadState);
       LOGGER.log(Level.SEVERE, "invalid state transition", e);
       throw e;
     }
-    this.currentLoadState = EntryLoadState.values()[currentLoadState.ordinal() + 1];
+    this.currentLoadState = STATES[currentLoadState.ordinal() + 1];
+  }
+
+  /**
+   * Resets this context, so that it's ready for the next entry to be loaded,
+   * keeping its text storage unless it grew too big
+   */
+  void reset() {
+    currentLoadState = EntryLoadState.INITIAL;
+    startMillis = -1;
+    endMillis = -1;
+    if (text.capacity() > MAX_RETAINED_TEXT) {
+      text = new StringBuilder();
+    } else {
+      text.setLength(0);
+    }
+    lastLineStart = 0;
   }
 
   /**
    * Sets the time frame for this subtitle entry being loaded
    *
-   * @param startTime the start time of the entry
-   * @param endTime   the end time of the entry
+   * @param startMillis the start time of the entry, in milliseconds of the day
+   * @param endMillis   the end time of the entry, in milliseconds of the day
    */
-  void setTimeFrame(final LocalTime startTime, final LocalTime endTime) {
-    this.startTime = Objects.requireNonNull(startTime, "startTime");
-    this.endTime = Objects.requireNonNull(endTime, "endTime");
+  void setTimeFrame(final int startMillis, final int endMillis) {
+    this.startMillis = startMillis;
+    this.endMillis = endMillis;
   }
 
   /**
@@ -125,6 +175,7 @@ final class EntryLoadContext {
     if (this.text.length() > 0) {
       this.text.append(System.lineSeparator());
     }
+    lastLineStart = this.text.length();
     this.text.append(Objects.requireNonNull(text, "text"));
   }
 
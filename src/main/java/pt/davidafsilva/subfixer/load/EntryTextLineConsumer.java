@@ -28,6 +28,8 @@ package pt.davidafsilva.subfixer.load;
 
 import java.util.function.BiConsumer;
 
+import pt.davidafsilva.subfixer.load.Diagnostic.Issue;
+
 /**
  * This consumer either appends the input line to the text of the entry or
  * terminates the text loading phase if it reached the end of the entry text.
@@ -38,6 +40,11 @@ final class EntryTextLineConsumer implements BiConsumer<LoadContext, String> {
 
   @Override
   public void accept(final LoadContext loadContext, final String line) {
+    if (loadContext.isLenient()) {
+      acceptLeniently(loadContext, line);
+      return;
+    }
+
     if (!line.isEmpty()) {
       // add to the text
       loadContext.getCurrentEntryLoadContext().appendText(line);
@@ -47,4 +54,40 @@ final class EntryTextLineConsumer implements BiConsumer<LoadContext, String> {
       loadContext.getCurrentEntryLoadContext().nextState();
     }
   }
+
+  /**
+   * Consumes a text line of the entry being leniently loaded, skipping stray
+   * blank lines before the text and terminating the entry at the time frame of
+   * the next one, if it's not terminated by a blank line
+   *
+   * @param loadContext the load context
+   * @param line        the line
+   */
+  private static void acceptLeniently(final LoadContext loadContext, final String line) {
+    final EntryLoadContext entry = loadContext.getCurrentEntryLoadContext();
+    if (line.isEmpty()) {
+      if (entry.hasText()) {
+        entry.nextState();
+      } else {
+        loadContext.report(Issue.STRAY_BLANK_LINE);
+      }
+      return;
+    }
+
+    final long timeFrame = EntryTimeFrameLineConsumer.tryParse(line);
+    if (timeFrame == TimeFrameParser.INVALID) {
+      entry.appendText(line);
+      return;
+    }
+
+    // the next entry has started, whose index (if any) was taken as text
+    loadContext.report(Issue.MISSING_BLANK_LINE);
+    entry.removeTrailingIndex();
+    entry.nextState();
+    EntryFinalLineConsumer.complete(loadContext);
+    final EntryLoadContext next = loadContext.getCurrentEntryLoadContext();
+    next.nextState();
+    next.setTimeFrame(TimeFrameParser.startMillis(timeFrame), TimeFrameParser.endMillis(timeFrame));
+    next.nextState();
+  }
 }
@@ -32,7 +32,9 @@ import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static pt.davidafsilva.subfixer.config.Configuration.DATE_TIME_FORMAT;
+import pt.davidafsilva.subfixer.load.Diagnostic.Issue;
+
+import static pt.davidafsilva.subfixer.config.Configuration.dateTimeFormat;
 import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
 
 /**
@@ -47,10 +49,94 @@ final class EntryTimeFrameLineConsumer implements BiConsumer<LoadContext, String
   private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
   // the time frame separator
-  private static final String TIME_FRAME_SEPARATOR = " --> ";
+  private static final String TIME_FRAME_SEPARATOR = TimeFrameParser.SEPARATOR;
 
   @Override
   public void accept(final LoadContext loadContext, final String line) {
+    if (loadContext.isLenient()) {
+      acceptLeniently(loadContext, line);
+      return;
+    }
+
+    // fast path: time frames with the regular layout
+    final long timeFrame = TimeFrameParser.parse(line);
+    if (timeFrame != TimeFrameParser.INVALID) {
+      loadContext.getCurrentEntryLoadContext().setTimeFrame(
+          TimeFrameParser.startMillis(timeFrame), TimeFrameParser.endMillis(timeFrame));
+    } else {
+      // irregular time frames are handled by the formatter
+      final long irregular = parseIrregular(line, loadContext.getLoadedEntriesCount() + 1);
+      loadContext.getCurrentEntryLoadContext().setTimeFrame(
+          TimeFrameParser.startMillis(irregular), TimeFrameParser.endMillis(irregular));
+    }
+
+    // jump to the next state
+    loadContext.getCurrentEntryLoadContext().nextState();
+  }
+
+  /**
+   * Consumes the time frame line of the entry being leniently loaded, skipping
+   * stray blank lines and the whole entry if the time frame is invalid
+   *
+   * @param loadContext the load context
+   * @param line        the line
+   */
+  private static void acceptLeniently(final LoadContext loadContext, final String line) {
+    if (line.isEmpty()) {
+      loadContext.report(Issue.STRAY_BLANK_LINE);
+      return;
+    }
+
+    final long timeFrame = tryParse(line);
+    if (timeFrame == TimeFrameParser.INVALID) {
+      loadContext.report(Issue.INVALID_TIME_FRAME);
+      loadContext.resetEntryLoadContext();
+      loadContext.setResyncing(true);
+      return;
+    }
+    loadContext.getCurrentEntryLoadContext().setTimeFrame(
+        TimeFrameParser.startMillis(timeFrame), TimeFrameParser.endMillis(timeFrame));
+    loadContext.getCurrentEntryLoadContext().nextState();
+  }
+
+  /**
+   * Parses the specified time frame, either regular or irregular, without
+   * failing. Lines without the time frame separator are never handed to the
+   * formatter.
+   *
+   * @param line the line
+   * @return the packed time frame or {@link TimeFrameParser#INVALID} if the line
+   * isn't a valid time frame
+   */
+  static long tryParse(final String line) {
+    final long timeFrame = TimeFrameParser.parse(line);
+    if (timeFrame != TimeFrameParser.INVALID || !line.contains(TIME_FRAME_SEPARATOR)) {
+      return timeFrame;
+    }
+    final String[] times = line.split(TIME_FRAME_SEPARATOR);
+    if (times.length != 2) {
+      return TimeFrameParser.INVALID;
+    }
+    try {
+      return TimeFrameParser.pack(
+          SubtitleEntry.toMillis(LocalTime.parse(times[0].trim(), dateTimeFormat())),
+          SubtitleEntry.toMillis(LocalTime.parse(times[1].trim(), dateTimeFormat()))
+      );
+    } catch (final DateTimeParseException e) {
+      return TimeFrameParser.INVALID;
+    }
+  }
+
+  /**
+   * Parses an irregular time frame, which does not follow the fixed layout, with
+   * the help of the configured date time formatter.
+   *
+   * @param line  the time frame line
+   * @param entry the number of the entry being loaded
+   * @return the packed time frame
+   * @throws IllegalStateException if the time frame is invalid
+   */
+  static long parseIrregular(final String line, final int entry) {
     final String[] times = line.split(TIME_FRAME_SEPARATOR);
     if (times.length != 2) {
       final RuntimeException e = new IllegalStateException("unable to load subtitle file: " +
@@ -60,19 +146,15 @@ final class EntryTimeFrameLineConsumer implements BiConsumer<LoadContext, String
       throw e;
     }
     try {
-      loadContext.getCurrentEntryLoadContext().setTimeFrame(
-          LocalTime.parse(times[0].trim(), DATE_TIME_FORMAT),
-          LocalTime.parse(times[1].trim(), DATE_TIME_FORMAT)
+      return TimeFrameParser.pack(
+          SubtitleEntry.toMillis(LocalTime.parse(times[0].trim(), dateTimeFormat())),
+          SubtitleEntry.toMillis(LocalTime.parse(times[1].trim(), dateTimeFormat()))
       );
     } catch (final DateTimeParseException e) {
       final RuntimeException e2 = new IllegalStateException(String.format(
-          "unable to load subtitle file: invalid time format for entry %d",
-          loadContext.getLoadedEntries().size() + 1), e);
+          "unable to load subtitle file: invalid time format for entry %d", entry), e);
       LOGGER.log(Level.SEVERE, "invalid subtitle entry time frame", e2);
       throw e2;
     }
-
-    // jump to the next state
-    loadContext.getCurrentEntryLoadContext().nextState();
   }
 }
@@ -26,11 +26,17 @@ package pt.davidafsilva.subfixer.load;
  * #L%
  */
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
+import pt.davidafsilva.subfixer.load.Diagnostic.Issue;
 import pt.davidafsilva.subfixer.load.EntryLoadContext.EntryLoadState;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
 
 /**
  * The load context that is used by the loader steps.
@@ -39,44 +45,154 @@ import pt.davidafsilva.subfixer.load.EntryLoadContext.EntryLoadState;
  */
 final class LoadContext {
 
-  // the loaded entries
-  private final List<SubtitleEntry> entries = new ArrayList<>();
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the sink of the loaded entries
+  private final EntrySink entrySink;
+  // the diagnostics of the repaired issues, if loading leniently
+  private final List<Diagnostic> diagnostics;
 
-  // the current entry load context
+  // the number of loaded entries
+  private int loadedEntries;
+  // the number of the line being consumed
+  private int lineNumber;
+  // whether or not the lines are being skipped up to the next entry
+  private boolean resyncing;
+
+  // the current entry load context, which is reused across the entries
   private EntryLoadContext currentEntryLoadContext;
 
   /**
-   * Creates a load context
+   * Creates a load context which hands over each loaded entry to the specified
+   * consumer, as soon as the entry is fully loaded.
+   *
+   * @param entryConsumer the consumer of the loaded entries
+   */
+  LoadContext(final Consumer<SubtitleEntry> entryConsumer) {
+    this(entryConsumer, null);
+  }
+
+  /**
+   * Creates a load context which hands over each loaded entry to the specified
+   * consumer and, if a diagnostics list is given, loads the entries leniently:
+   * rather than failing, malformed lines are repaired or skipped and their
+   * issues are added to that list.
+   *
+   * @param entryConsumer the consumer of the loaded entries
+   * @param diagnostics   the list of the repaired issues, if loading leniently
+   */
+  LoadContext(final Consumer<SubtitleEntry> entryConsumer, final List<Diagnostic> diagnostics) {
+    this(toSink(Objects.requireNonNull(entryConsumer, "entryConsumer")), diagnostics);
+  }
+
+  /**
+   * Creates a load context which hands over the fields of each loaded entry to
+   * the specified sink, without creating the entry itself, and loads the
+   * entries leniently if a diagnostics list is given.
+   *
+   * @param entrySink   the sink of the loaded entries
+   * @param diagnostics the list of the repaired issues, if loading leniently
    */
-  LoadContext() {}
+  LoadContext(final EntrySink entrySink, final List<Diagnostic> diagnostics) {
+    this.entrySink = Objects.requireNonNull(entrySink, "entrySink");
+    this.diagnostics = diagnostics;
+  }
+
+  /**
+   * Adapts the specified entry consumer into an entry sink
+   *
+   * @param entryConsumer the consumer of the loaded entries
+   * @return the entry sink
+   */
+  private static EntrySink toSink(final Consumer<SubtitleEntry> entryConsumer) {
+    return (startMillis, endMillis, text) ->
+        entryConsumer.accept(new SubtitleEntry(startMillis, endMillis, text.toString()));
+  }
 
   /**
-   * Adds the specified subtitle entry to the list of loaded entries.
+   * Checks whether or not the entries are loaded leniently
    *
-   * @param entry the newly parsed entry
+   * @return {@code true} if lenient, {@code false} otherwise
    */
-  void addSubtitleEntry(final SubtitleEntry entry) {
-    entries.add(entry);
+  boolean isLenient() {
+    return diagnostics != null;
   }
 
   /**
-   * Returns all of the loaded entries, so far, wrapped around an unmodifiable
-   * struture.
+   * Reports the specified issue, found at the line being consumed
    *
-   * @return the loaded entries
+   * @param issue the issue
    */
-  List<SubtitleEntry> getLoadedEntries() {
-    return Collections.unmodifiableList(entries);
+  void report(final Issue issue) {
+    final Diagnostic diagnostic = new Diagnostic(lineNumber, issue);
+    diagnostics.add(diagnostic);
+    LOGGER.warning(diagnostic::toString);
+    Metrics.getInstance().add(Counter.ISSUES_REPAIRED, 1);
   }
 
   /**
-   * Creates a new, empty entry load context and sets it (replacing the previous
-   * one, if any was set) as the current entry load context.
+   * Sets the number of the line being consumed
+   *
+   * @param lineNumber the line number
+   */
+  void setLineNumber(final int lineNumber) {
+    this.lineNumber = lineNumber;
+  }
+
+  /**
+   * Checks whether or not the lines are being skipped up to the next entry
+   *
+   * @return {@code true} if resyncing, {@code false} otherwise
+   */
+  boolean isResyncing() {
+    return resyncing;
+  }
+
+  /**
+   * Sets whether or not the lines are being skipped up to the next entry
+   *
+   * @param resyncing whether or not to skip the lines
+   */
+  void setResyncing(final boolean resyncing) {
+    this.resyncing = resyncing;
+  }
+
+  /**
+   * Adds the specified subtitle entry to the loaded entries.
+   *
+   * @param startMillis the start time of the entry, in milliseconds of the day
+   * @param endMillis   the end time of the entry, in milliseconds of the day
+   * @param text        the entry text, which is only valid during the call
+   */
+  void addSubtitleEntry(final int startMillis, final int endMillis, final CharSequence text) {
+    loadedEntries++;
+    entrySink.accept(startMillis, endMillis, text);
+  }
+
+  /**
+   * Returns the number of entries loaded so far.
+   *
+   * @return the number of loaded entries
+   */
+  int getLoadedEntriesCount() {
+    return loadedEntries;
+  }
+
+  /**
+   * Resets the current entry load context, creating it on the first call, so
+   * that it's empty and ready for the next entry to be loaded. The context is
+   * reused across the entries, rather than allocated for each one of them.
    *
    * @return the entry load context
    */
-  EntryLoadContext createEntryLoadContext() {
-    return currentEntryLoadContext = new EntryLoadContext(EntryLoadState.INITIAL);
+  EntryLoadContext resetEntryLoadContext() {
+    if (currentEntryLoadContext == null) {
+      currentEntryLoadContext = new EntryLoadContext(EntryLoadState.INITIAL);
+    } else {
+      currentEntryLoadContext.reset();
+    }
+    return currentEntryLoadContext;
   }
 
   /**
@@ -87,4 +203,20 @@ final class LoadContext {
   EntryLoadContext getCurrentEntryLoadContext() {
     return currentEntryLoadContext;
   }
+
+  /**
+   * The sink of the loaded entries, which is given the fields of each entry
+   */
+  @FunctionalInterface
+  interface EntrySink {
+
+    /**
+     * Accepts the fields of a loaded entry
+     *
+     * @param startMillis the start time of the entry, in milliseconds of the day
+     * @param endMillis   the end time of the entry, in milliseconds of the day
+     * @param text        the entry text, which is only valid during the call
+     */
+    void accept(int startMillis, int endMillis, CharSequence text);
+  }
 }
@@ -0,0 +1,131 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A scanner of the lines within a region of a file, which maps the file into
+ * memory and finds the line breaks directly on the raw bytes, without decoding
+ * them.
+ * <p>
+ * Regions bigger than the mapping window are mapped one window at a time, with
+ * each window starting at the beginning of a line, so the lines are always
+ * fully contained within the mapped buffer that is handed over to the consumer.
+ *
+ * @author david
+ */
+final class MappedLineScanner {
+
+  // the default size of the mapping window
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  // the line feed byte
+  private static final byte LF = '\n';
+
+  // private constructor
+  private MappedLineScanner() {}
+
+  /**
+   * The consumer of the scanned lines
+   */
+  @FunctionalInterface
+  interface LineConsumer {
+
+    /**
+     * Consumes a line, which excludes the line feed but might still contain a
+     * trailing carriage return.
+     *
+     * @param buffer   the mapped buffer containing the line
+     * @param start    the start index of the line within the buffer
+     * @param end      the end index (exclusive) of the line within the buffer
+     * @param position the position of the buffer start within the file
+     * @throws IOException if the line can't be consumed, such as when it can't
+     *                     be decoded
+     */
+    void accept(MappedByteBuffer buffer, int start, int end, long position) throws IOException;
+  }
+
+  /**
+   * Scans the lines of the specified region of the file
+   *
+   * @param channel  the file channel
+   * @param from     the start position of the region
+   * @param to       the end position (exclusive) of the region
+   * @param consumer the lines consumer
+   * @throws IOException if an error occurs while mapping the file, a line is
+   *                     bigger than the mapping window or can't be consumed
+   */
+  static void scan(final FileChannel channel, final long from, final long to,
+      final LineConsumer consumer) throws IOException {
+    scan(channel, from, to, DEFAULT_WINDOW_SIZE, consumer);
+  }
+
+  /**
+   * Scans the lines of the specified region of the file, with a specific mapping
+   * window size
+   *
+   * @param channel    the file channel
+   * @param from       the start position of the region
+   * @param to         the end position (exclusive) of the region
+   * @param windowSize the size of the mapping window
+   * @param consumer   the lines consumer
+   * @throws IOException if an error occurs while mapping the file, a line is
+   *                     bigger than the mapping window or can't be consumed
+   */
+  static void scan(final FileChannel channel, final long from, final long to,
+      final int windowSize, final LineConsumer consumer) throws IOException {
+    long position = from;
+    while (position < to) {
+      final int size = (int) Math.min(windowSize, to - position);
+      final boolean last = position + size == to;
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+
+      // find the line breaks within the window
+      int start = 0;
+      for (int i = 0; i < size; i++) {
+        if (buffer.get(i) == LF) {
+          consumer.accept(buffer, start, i, position);
+          start = i + 1;
+        }
+      }
+
+      if (last) {
+        // the last line might not be terminated
+        if (start < size) {
+          consumer.accept(buffer, start, size, position);
+        }
+      } else if (start == 0) {
+        throw new IOException("line at position " + position +
+            " is bigger than the mapping window of " + windowSize + " bytes");
+      }
+      position = last ? to : position + start;
+    }
+  }
+}
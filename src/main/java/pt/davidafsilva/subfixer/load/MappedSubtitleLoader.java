@@ -0,0 +1,211 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.config.Charsets;
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.ChunkedTrackParser.ChunkedParseException;
+import pt.davidafsilva.subfixer.load.ChunkedTrackParser.ParsedTrack;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET;
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET_DETECTION;
+import static pt.davidafsilva.subfixer.config.Configuration.LENIENT;
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * A subtitle loader which maps the subtitle file into memory and parses the
+ * entries straight from the raw bytes, rather than decoding each line of the
+ * file. Only the text of the entries is decoded.
+ * <p>
+ * The raw parsing is only possible for ASCII compatible charsets, such as
+ * UTF-8 or ISO-8859-1. Files with any other charset are loaded by the regular
+ * {@link SubtitleLoader}.
+ *
+ * @author david
+ */
+public final class MappedSubtitleLoader {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // private constructor
+  private MappedSubtitleLoader() {}
+
+  /**
+   * Checks whether or not files encoded with the specified charset can be
+   * parsed from their raw bytes.
+   *
+   * @param charset the charset
+   * @return {@code true} if the charset is ASCII compatible, {@code false}
+   * otherwise
+   */
+  public static boolean supports(final Charset charset) {
+    return Charsets.isAsciiCompatible(charset);
+  }
+
+  /**
+   * Returns the charset of the specified subtitle file, which is either the
+   * configured one or, when {@link Configuration#CHARSET_DETECTION detected},
+   * the one sniffed from its leading bytes
+   *
+   * @param subtitleFile the subtitle file path
+   * @return the charset of the file
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public static Charset charset(final String subtitleFile) throws IOException {
+    if (!CHARSET_DETECTION) {
+      return CHARSET;
+    }
+    try (final FileChannel channel = FileChannel.open(Paths.get(subtitleFile),
+        StandardOpenOption.READ)) {
+      return Charsets.detect(Charsets.head(channel));
+    }
+  }
+
+  /**
+   * Loads the entries associated with the specified subtitle file
+   *
+   * @param subtitleFile the subtitle file path
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public static SubtitleTrack load(final String subtitleFile) throws IOException {
+    return load(subtitleFile, null);
+  }
+
+  /**
+   * Loads the entries associated with the specified subtitle file, parsing
+   * chunks of the file concurrently on the given pool whenever the file is big
+   * enough. The loaded entries, or the reported errors, are exactly the same of
+   * the {@link #load(String) sequential} loading.
+   *
+   * @param subtitleFile the subtitle file path
+   * @param pool         the fork/join pool where the chunks are parsed
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public static SubtitleTrack load(final String subtitleFile, final ForkJoinPool pool)
+      throws IOException {
+    if (!supports(CHARSET)) {
+      LOGGER.info(() -> CHARSET + " is not ASCII compatible, falling back to the regular loader");
+      return SubtitleLoader.loadTrack(subtitleFile);
+    }
+    if (LENIENT) {
+      LOGGER.info("lenient loading, falling back to the regular loader");
+      return SubtitleLoader.loadTrack(subtitleFile);
+    }
+    if (Compression.of(subtitleFile) != Compression.NONE) {
+      LOGGER.info("compressed file, falling back to the regular loader");
+      return SubtitleLoader.loadTrack(subtitleFile);
+    }
+
+    try (final FileChannel channel = FileChannel.open(Paths.get(subtitleFile),
+        StandardOpenOption.READ)) {
+      // the charset of the file, detected from its leading bytes when configured so
+      Charset charset = CHARSET;
+      final long from;
+      if (CHARSET_DETECTION) {
+        final ByteBuffer head = Charsets.head(channel);
+        charset = Charsets.detect(head);
+        if (!supports(charset)) {
+          final Charset detected = charset;
+          LOGGER.info(() -> detected +
+              " is not ASCII compatible, falling back to the regular loader");
+          return SubtitleLoader.loadTrack(subtitleFile);
+        }
+        from = Charsets.bomLength(head);
+      } else {
+        from = Charsets.bomLength(channel, charset);
+      }
+
+      if (pool != null && ChunkedTrackParser.isWorthy(channel.size() - from,
+          pool.getParallelism())) {
+        try {
+          final ParsedTrack parsed = new ChunkedTrackParser(channel, charset, pool).parse(from);
+          record(parsed.lines, channel.size(), parsed.track.size());
+          return CHARSET_DETECTION
+              ? parsed.track.withCharset(Charsets.encoding(charset)) : parsed.track;
+        } catch (final ChunkedParseException e) {
+          LOGGER.log(Level.INFO, "unable to parse the file chunks, parsing it sequentially", e);
+        }
+      }
+      return load(channel, charset, from);
+    } catch (final IOException e) {
+      // log and rethrow
+      LOGGER.log(Level.SEVERE, "error reading file", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Loads, sequentially, the entries of the specified file channel
+   *
+   * @param channel the file channel
+   * @param charset the charset of the file
+   * @param from    the position where the content starts
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  private static SubtitleTrack load(final FileChannel channel, final Charset charset,
+      final long from) throws IOException {
+    final SubtitleTrack.Builder track = new SubtitleTrack.Builder(TextPool.getDefault());
+    if (CHARSET_DETECTION) {
+      track.setCharset(Charsets.encoding(charset));
+    }
+    final ByteEntryParser parser = new ByteEntryParser(track, charset);
+    MappedLineScanner.scan(channel, from, channel.size(), parser);
+    parser.finish();
+    record(parser.getLines(), channel.size(), track.size());
+    return track.build();
+  }
+
+  /**
+   * Records the loaded data
+   *
+   * @param lines   the number of lines read
+   * @param bytes   the number of bytes read
+   * @param entries the number of parsed entries
+   */
+  private static void record(final long lines, final long bytes, final long entries) {
+    final Metrics metrics = Metrics.getInstance();
+    metrics.add(Counter.LINES_READ, lines);
+    metrics.add(Counter.BYTES_READ, bytes);
+    metrics.add(Counter.ENTRIES_PARSED, entries);
+  }
+}
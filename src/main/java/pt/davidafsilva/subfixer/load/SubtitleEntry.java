@@ -29,18 +29,26 @@ package pt.davidafsilva.subfixer.load;
 import java.time.LocalTime;
 import java.util.Objects;
 
+import static pt.davidafsilva.subfixer.load.TimeFrameParser.MILLIS_PER_DAY;
+
 /**
  * The subtitle entry model, which contains the necessary information
  * about an individual (time-framed) entry.
  * Each entry is immutable.
+ * <p>
+ * The times are kept as milliseconds of the day, which are available either
+ * as primitive values or as {@link LocalTime} instances.
  *
  * @author david
  */
 public final class SubtitleEntry {
 
+  // the number of nanoseconds within a millisecond
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+
   // properties
-  private final LocalTime startTime;
-  private final LocalTime endTime;
+  private final int startMillis;
+  private final int endMillis;
   private final String text;
 
   /**
@@ -52,8 +60,20 @@ public final class SubtitleEntry {
    */
   SubtitleEntry(final LocalTime startTime, final LocalTime endTime,
       final String text) {
-    this.startTime = Objects.requireNonNull(startTime, "startTime");
-    this.endTime = Objects.requireNonNull(endTime, "endTime");
+    this(toMillis(Objects.requireNonNull(startTime, "startTime")),
+        toMillis(Objects.requireNonNull(endTime, "endTime")), text);
+  }
+
+  /**
+   * Creates an entry with the times specified as milliseconds of the day.
+   *
+   * @param startMillis the start time of the entry
+   * @param endMillis   the end time of the entry
+   * @param text        the entry text
+   */
+  SubtitleEntry(final int startMillis, final int endMillis, final String text) {
+    this.startMillis = requireMillisOfDay(startMillis, "startMillis");
+    this.endMillis = requireMillisOfDay(endMillis, "endMillis");
     this.text = Objects.requireNonNull(text, "text");
   }
 
@@ -62,14 +82,28 @@ public final class SubtitleEntry {
    *
    * @return the start time
    */
-  public LocalTime getStartTime() { return startTime; }
+  public LocalTime getStartTime() { return toLocalTime(startMillis); }
 
   /**
    * Returns the end time of the entry
    *
    * @return the end time
    */
-  public LocalTime getEndTime() { return endTime; }
+  public LocalTime getEndTime() { return toLocalTime(endMillis); }
+
+  /**
+   * Returns the start time of the entry, in milliseconds of the day
+   *
+   * @return the start time
+   */
+  public int getStartMillis() { return startMillis; }
+
+  /**
+   * Returns the end time of the entry, in milliseconds of the day
+   *
+   * @return the end time
+   */
+  public int getEndMillis() { return endMillis; }
 
   /**
    * Returns the text of the entry
@@ -89,4 +123,50 @@ public final class SubtitleEntry {
   public SubtitleEntry setTimeFrame(final LocalTime startTime, final LocalTime endTime) {
     return new SubtitleEntry(startTime, endTime, text);
   }
+
+  /**
+   * Creates a new subtitle entry with the specified start and end time,
+   * in milliseconds of the day, and text from this entry.
+   *
+   * @param startMillis the start time of the new entry
+   * @param endMillis   the end time of the new entry
+   * @return the newly created subtitle entry
+   */
+  public SubtitleEntry setTimeFrame(final int startMillis, final int endMillis) {
+    return new SubtitleEntry(startMillis, endMillis, text);
+  }
+
+  /**
+   * Converts the specified time into milliseconds of the day
+   *
+   * @param time the time to convert
+   * @return the milliseconds of the day
+   */
+  static int toMillis(final LocalTime time) {
+    return (int) (time.toNanoOfDay() / NANOS_PER_MILLI);
+  }
+
+  /**
+   * Converts the specified milliseconds of the day into a time
+   *
+   * @param millis the milliseconds of the day
+   * @return the time
+   */
+  static LocalTime toLocalTime(final int millis) {
+    return LocalTime.ofNanoOfDay(millis * NANOS_PER_MILLI);
+  }
+
+  /**
+   * Validates that the specified value is a valid millisecond of the day
+   *
+   * @param millis the value to validate
+   * @param name   the name of the value
+   * @return the validated value
+   */
+  private static int requireMillisOfDay(final int millis, final String name) {
+    if (millis < 0 || millis >= MILLIS_PER_DAY) {
+      throw new IllegalArgumentException(name + " is not within a day: " + millis);
+    }
+    return millis;
+  }
 }
@@ -0,0 +1,298 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.config.Charsets;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET;
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET_DETECTION;
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * A follower of a growing subtitle file, such as the ones written by live
+ * captioning, which loads the entries as they are appended to the file.
+ * <p>
+ * The follower remembers the offset of the bytes read so far, as well as the
+ * line and the entry being loaded, so each {@link #poll() poll} only reads and
+ * parses the newly appended bytes and returns the entries which were completed
+ * by them. An entry is only complete once its terminating empty line is
+ * appended, hence the last entry of a file which is no longer written to is
+ * never returned unless terminated.
+ * <p>
+ * The follower can {@link #await(long) wait} for the file to be modified, which
+ * relies on a {@link WatchService watch service} of the file directory, if
+ * available, or simply waits for the specified time, otherwise. The waiting can
+ * be {@link #cancel() cancelled} from any thread, which, unlike an interrupt,
+ * never disturbs a poll which is reading the file.
+ *
+ * @author david
+ */
+public final class SubtitleFollower implements Closeable {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the size of the read buffers
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // the followed file channel
+  private final FileChannel channel;
+  // the watch service of the file directory, if available
+  private final WatchService watcher;
+  // the lock waited on when there's no watch service
+  private final Object lock = new Object();
+  // whether or not the waiting was cancelled, for good
+  private volatile boolean cancelled;
+
+  // the read buffers and the decoder of the bytes, which, when detecting the
+  // charset, is the lenient UTF-8 one, since a growing file can't be sniffed
+  private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+  private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+  private final CharsetDecoder decoder = (CHARSET_DETECTION ? Charsets.LENIENT_UTF_8 : CHARSET)
+      .newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  // the entries completed by the current poll
+  private final List<SubtitleEntry> completed = new ArrayList<>();
+  // the load context, which keeps the state of the entry being loaded
+  private final LoadContext context = new LoadContext(completed::add);
+  // the line being read
+  private final StringBuilder line = new StringBuilder();
+  // the number of lines read
+  private int number;
+  // the offset of the bytes read so far
+  private long offset;
+
+  /**
+   * Creates the follower of the specified subtitle file, which is read from its
+   * beginning
+   *
+   * @param subtitleFile the subtitle file path
+   * @throws IOException if an error occurs while opening the source file
+   */
+  public SubtitleFollower(final String subtitleFile) throws IOException {
+    final Path file = Paths.get(subtitleFile).toAbsolutePath();
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.watcher = watch(file.getParent());
+    context.resetEntryLoadContext();
+  }
+
+  /**
+   * Reads and parses the bytes appended to the file since the last poll,
+   * returning the entries which were completed by them
+   *
+   * @return the completed entries, if any
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public List<SubtitleEntry> poll() throws IOException {
+    final long size = channel.size();
+    if (size < offset) {
+      final RuntimeException e = new IllegalStateException("the followed file was truncated");
+      LOGGER.log(Level.SEVERE, "invalid file size", e);
+      throw e;
+    }
+
+    // only the appended bytes are read
+    final int firstLine = number;
+    final long firstByte = offset;
+    while (offset < size) {
+      final int read = channel.read(bytes, offset);
+      if (read < 0) {
+        break;
+      }
+      offset += read;
+      bytes.flip();
+      CoderResult result;
+      do {
+        result = decoder.decode(bytes, chars, false);
+        chars.flip();
+        consumeLines();
+        chars.clear();
+      } while (result.isOverflow());
+      // keep the bytes of any incomplete character
+      bytes.compact();
+    }
+
+    // record the loaded data
+    final Metrics metrics = Metrics.getInstance();
+    metrics.add(Counter.LINES_READ, number - firstLine);
+    metrics.add(Counter.BYTES_READ, offset - firstByte);
+    metrics.add(Counter.ENTRIES_PARSED, completed.size());
+
+    if (completed.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<SubtitleEntry> entries = new ArrayList<>(completed);
+    completed.clear();
+    return entries;
+  }
+
+  /**
+   * Waits for the file to be modified, up to the specified time, unless the
+   * waiting was {@link #cancel() cancelled}
+   *
+   * @param timeoutMillis the maximum time to wait, in milliseconds
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void await(final long timeoutMillis) throws InterruptedException {
+    if (watcher == null) {
+      synchronized (lock) {
+        if (!cancelled) {
+          lock.wait(timeoutMillis);
+        }
+      }
+      return;
+    }
+    try {
+      final WatchKey key = watcher.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      if (key != null) {
+        // any change within the directory is worth a poll
+        key.pollEvents();
+        key.reset();
+      }
+    } catch (final ClosedWatchServiceException e) {
+      if (!cancelled) {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Cancels the waiting for the file to be modified: any ongoing wait returns
+   * right away, as does any later one
+   */
+  public void cancel() {
+    cancelled = true;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (final IOException e) {
+        LOGGER.log(Level.INFO, "unable to close the watch service", e);
+      }
+    }
+  }
+
+  /**
+   * Checks whether or not the waiting was cancelled
+   *
+   * @return {@code true} if cancelled, {@code false} otherwise
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Returns the offset of the bytes read so far
+   *
+   * @return the offset, in bytes
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      channel.close();
+    } finally {
+      if (watcher != null) {
+        watcher.close();
+      }
+    }
+  }
+
+  /**
+   * Consumes the complete lines of the decoded characters, keeping the
+   * incomplete one for the next poll
+   */
+  private void consumeLines() {
+    while (chars.hasRemaining()) {
+      final char c = chars.get();
+      if (c == '\n') {
+        SubtitleLoader.consume(context, line.toString(), ++number);
+        line.setLength(0);
+      } else {
+        line.append(c);
+      }
+    }
+  }
+
+  /**
+   * Creates the watch service of the specified directory, if supported
+   *
+   * @param directory the directory
+   * @return the watch service or {@code null} if not supported
+   */
+  private static WatchService watch(final Path directory) {
+    WatchService watcher = null;
+    try {
+      watcher = FileSystems.getDefault().newWatchService();
+      directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+          StandardWatchEventKinds.ENTRY_CREATE);
+      return watcher;
+    } catch (final IOException | UnsupportedOperationException e) {
+      LOGGER.log(Level.INFO, "unable to watch " + directory + ", polling it instead", e);
+      if (watcher != null) {
+        try {
+          watcher.close();
+        } catch (final IOException ignored) {
+          // nothing else to be done
+        }
+      }
+      return null;
+    }
+  }
+}
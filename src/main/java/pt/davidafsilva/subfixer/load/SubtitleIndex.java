@@ -0,0 +1,234 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable index of the time frames of a subtitle track, which answers
+ * which entries are on screen at a given time, or within a given time range,
+ * without scanning the whole track.
+ * <p>
+ * The entries are sorted by their start time and laid out as an implicit
+ * balanced search tree (the middle of each range being the root of its
+ * subtree), where each node is augmented with the maximum end time of its
+ * subtree. A query only descends into the subtrees which may contain matching
+ * entries, thus costing {@code O(log n + k)} for the usual case of {@code k}
+ * matching entries which barely overlap each other. Once built, the index is
+ * never modified and can be shared by any number of threads.
+ * <p>
+ * The time frames are the half-open intervals {@code [start, end)}, hence an
+ * entry is on screen from its start time up to, but excluding, its end time.
+ * Entries whose end time isn't after their start time (including the ones that
+ * wrap around midnight) are never matched.
+ *
+ * @author david
+ */
+public final class SubtitleIndex {
+
+  // the indexed track
+  private final SubtitleTrack track;
+  // the start and end times of the entries, sorted by the start time
+  private final int[] starts;
+  private final int[] ends;
+  // the position, within the track, of each of the sorted entries
+  private final int[] positions;
+  // the maximum end time of the subtree rooted at each of the sorted entries
+  private final int[] maxEnds;
+
+  /**
+   * Creates the index of the specified track
+   *
+   * @param track the subtitle track
+   */
+  private SubtitleIndex(final SubtitleTrack track) {
+    this.track = track;
+    final int size = track.size();
+
+    // sort the entries by their start time (and position, for equal starts)
+    final long[] sorted = new long[size];
+    for (int i = 0; i < size; i++) {
+      sorted[i] = (long) track.getStartMillis(i) << 32 | i;
+    }
+    Arrays.sort(sorted);
+
+    this.starts = new int[size];
+    this.ends = new int[size];
+    this.positions = new int[size];
+    for (int i = 0; i < size; i++) {
+      final int position = (int) sorted[i];
+      starts[i] = track.getStartMillis(position);
+      ends[i] = track.getEndMillis(position);
+      positions[i] = position;
+    }
+    this.maxEnds = new int[size];
+    augment(0, size);
+  }
+
+  /**
+   * Builds the index of the specified entries
+   *
+   * @param entries the subtitle entries, such as a loaded {@link SubtitleTrack track}
+   * @return the index of the entries
+   */
+  public static SubtitleIndex of(final List<SubtitleEntry> entries) {
+    Objects.requireNonNull(entries, "entries");
+    return new SubtitleIndex(entries instanceof SubtitleTrack ? (SubtitleTrack) entries :
+        SubtitleTrack.of(entries));
+  }
+
+  /**
+   * Returns the indexed track
+   *
+   * @return the subtitle track
+   */
+  public SubtitleTrack getTrack() {
+    return track;
+  }
+
+  /**
+   * Returns the entries which are on screen at the specified time, ordered by
+   * their start time
+   *
+   * @param millis the time, in milliseconds of the day
+   * @return the entries on screen
+   */
+  public List<SubtitleEntry> at(final int millis) {
+    return between(millis, millis + 1);
+  }
+
+  /**
+   * Returns the entries which are on screen at any time within the specified
+   * range, ordered by their start time
+   *
+   * @param fromMillis the start of the range (inclusive), in milliseconds of the day
+   * @param toMillis   the end of the range (exclusive), in milliseconds of the day
+   * @return the entries on screen
+   */
+  public List<SubtitleEntry> between(final int fromMillis, final int toMillis) {
+    final Matches matches = new Matches();
+    forEachBetween(fromMillis, toMillis, matches);
+    return matches;
+  }
+
+  /**
+   * Hands over the position, within the track, of each of the entries which are
+   * on screen at any time within the specified range to the given action,
+   * ordered by their start time. No objects are allocated by this query.
+   *
+   * @param fromMillis the start of the range (inclusive), in milliseconds of the day
+   * @param toMillis   the end of the range (exclusive), in milliseconds of the day
+   * @param action     the action that consumes the matching positions
+   */
+  public void forEachBetween(final int fromMillis, final int toMillis, final IntConsumer action) {
+    if (fromMillis < toMillis) {
+      search(0, starts.length, fromMillis, toMillis, action);
+    }
+  }
+
+  /**
+   * Searches the subtree of the specified range of sorted entries for the ones
+   * overlapping the given time range
+   *
+   * @param lo         the first sorted entry of the subtree (inclusive)
+   * @param hi         the last sorted entry of the subtree (exclusive)
+   * @param fromMillis the start of the time range (inclusive)
+   * @param toMillis   the end of the time range (exclusive)
+   * @param action     the action that consumes the matching positions
+   */
+  private void search(final int lo, final int hi, final int fromMillis, final int toMillis,
+      final IntConsumer action) {
+    if (lo >= hi) {
+      return;
+    }
+    final int mid = (lo + hi) >>> 1;
+    if (maxEnds[mid] <= fromMillis) {
+      // every entry of the subtree ends before the range
+      return;
+    }
+    search(lo, mid, fromMillis, toMillis, action);
+    if (starts[mid] >= toMillis) {
+      // the root and every entry to its right start after the range
+      return;
+    }
+    if (ends[mid] > fromMillis && ends[mid] > starts[mid]) {
+      action.accept(positions[mid]);
+    }
+    search(mid + 1, hi, fromMillis, toMillis, action);
+  }
+
+  /**
+   * Computes the maximum end time of the subtree of the specified range of
+   * sorted entries
+   *
+   * @param lo the first sorted entry of the subtree (inclusive)
+   * @param hi the last sorted entry of the subtree (exclusive)
+   * @return the maximum end time of the subtree
+   */
+  private int augment(final int lo, final int hi) {
+    if (lo >= hi) {
+      return Integer.MIN_VALUE;
+    }
+    final int mid = (lo + hi) >>> 1;
+    return maxEnds[mid] = Math.max(ends[mid], Math.max(augment(lo, mid), augment(mid + 1, hi)));
+  }
+
+  // the entries matched by a query, backed by their positions within the track
+  private final class Matches extends AbstractList<SubtitleEntry>
+      implements RandomAccess, IntConsumer {
+
+    // the matching positions
+    private int[] matched = new int[4];
+    private int size;
+
+    @Override
+    public void accept(final int position) {
+      if (size == matched.length) {
+        matched = Arrays.copyOf(matched, size << 1);
+      }
+      matched[size++] = position;
+    }
+
+    @Override
+    public SubtitleEntry get(final int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+      }
+      return track.get(matched[index]);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -26,22 +26,42 @@ package pt.davidafsilva.subfixer.load;
  * #L%
  */
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.function.BiConsumer;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
-import pt.davidafsilva.subfixer.load.EntryLoadContext.EntryLoadState;
+import pt.davidafsilva.subfixer.config.Charsets;
+import pt.davidafsilva.subfixer.config.Configuration;
+import pt.davidafsilva.subfixer.load.Diagnostic.Issue;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
 
 import static pt.davidafsilva.subfixer.config.Configuration.CHARSET;
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET_DETECTION;
+import static pt.davidafsilva.subfixer.config.Configuration.LENIENT;
 import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
 
 /**
@@ -55,23 +75,8 @@ public final class SubtitleLoader {
   // the logger
   private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
-  // the entry states consumers
-  private static final Map<EntryLoadState, BiConsumer<LoadContext, String>> STATE_COMSUMERS;
-  // the default NO-OP consumer (safe default)
-  private static final BiConsumer<LoadContext, String> DEFAULT_CONSUMER = (c, s) -> {
-    final RuntimeException e = new IllegalStateException("unsupported state");
-    LOGGER.log(Level.SEVERE, "invalid state", e);
-    throw e;
-  };
-
-  static {
-    final Map<EntryLoadState, BiConsumer<LoadContext, String>> consumers = new HashMap<>();
-    consumers.put(EntryLoadState.INITIAL, new ValidateEntryIndexLineConsumer());
-    consumers.put(EntryLoadState.TIME_FRAME, new EntryTimeFrameLineConsumer());
-    consumers.put(EntryLoadState.TEXT, new EntryTextLineConsumer()
-        .andThen(new EntryFinalLineConsumer()));
-    STATE_COMSUMERS = Collections.unmodifiableMap(consumers);
-  }
+  // the byte order mark, as decoded
+  private static final String BOM = "\uFEFF";
 
   // private constructor
   private SubtitleLoader() {}
@@ -84,40 +89,418 @@ public final class SubtitleLoader {
    * @throws IOException if an error occurs while reading the source file
    */
   public static List<SubtitleEntry> load(final String subtitleFile) throws IOException {
-    // creates a new load context
-    final LoadContext context = new LoadContext();
+    return loadTrack(subtitleFile);
+  }
 
-    // load the file
+  /**
+   * Loads the entries associated with the specified subtitle file into a
+   * compact subtitle track, leniently if {@link Configuration#LENIENT
+   * configured} so
+   *
+   * @param subtitleFile the subtitle file path
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public static SubtitleTrack loadTrack(final String subtitleFile) throws IOException {
+    return loadTrack(subtitleFile, LENIENT ? new ArrayList<>() : null);
+  }
+
+  /**
+   * Loads the entries associated with the specified subtitle file into a
+   * compact subtitle track. If a diagnostics list is given, the entries are
+   * loaded leniently: rather than failing, malformed lines are repaired or
+   * skipped and their issues are added to that list, so a single pass yields
+   * both the repaired track and the issues report.
+   * <p>
+   * Gzip compressed files are decompressed as they're read, whereas archives
+   * shall be {@link #loadArchive(String, TrackConsumer) loaded} entry by entry.
+   *
+   * @param subtitleFile the subtitle file path
+   * @param diagnostics  the list of the repaired issues, if loading leniently
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public static SubtitleTrack loadTrack(final String subtitleFile,
+      final List<Diagnostic> diagnostics) throws IOException {
     final Path file = Paths.get(subtitleFile);
+    final Compression compression = compression(subtitleFile);
+    if (CHARSET_DETECTION || compression != Compression.NONE) {
+      try (final InputStream in = compression.decompress(Files.newInputStream(file))) {
+        final SubtitleTrack track = loadTrack(in, diagnostics);
+        Metrics.getInstance().add(Counter.BYTES_READ, Files.size(file));
+        return track;
+      }
+    }
     try (final BufferedReader br = Files.newBufferedReader(file, CHARSET)) {
-      // prepare for the first entry being loaded
-      context.createEntryLoadContext();
+      final SubtitleTrack track = loadTrack(br, null, diagnostics);
+      Metrics.getInstance().add(Counter.BYTES_READ, Files.size(file));
+      return track;
+    } catch (final IOException e) {
+      // log and rethrow
+      LOGGER.log(Level.SEVERE, "error reading file", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Loads the entries of the subtitle content read from the specified input
+   * stream, which is not closed. When {@link Configuration#CHARSET_DETECTION
+   * detected}, the charset of the content is the one of the returned track.
+   *
+   * @param in the input stream of the subtitle content
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the input stream
+   */
+  public static SubtitleTrack loadTrack(final InputStream in) throws IOException {
+    return loadTrack(in, LENIENT ? new ArrayList<>() : null);
+  }
+
+  /**
+   * Loads the entries of the subtitle content read from the specified input
+   * stream, which is not closed, leniently if a diagnostics list is given.
+   *
+   * @param in          the input stream of the subtitle content
+   * @param diagnostics the list of the repaired issues, if loading leniently
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the input stream
+   * @see #loadTrack(String, List)
+   */
+  public static SubtitleTrack loadTrack(final InputStream in, final List<Diagnostic> diagnostics)
+      throws IOException {
+    try {
+      if (CHARSET_DETECTION) {
+        final BufferedInputStream buffered = new BufferedInputStream(in, Charsets.SNIFF_LENGTH);
+        final Charset charset = detect(buffered);
+        return loadTrack(new BufferedReader(new InputStreamReader(buffered, charset)),
+            Charsets.encoding(charset), diagnostics);
+      }
+      return loadTrack(new BufferedReader(new InputStreamReader(in, CHARSET)), null,
+          diagnostics);
+    } catch (final IOException e) {
+      // log and rethrow
+      LOGGER.log(Level.SEVERE, "error reading input stream", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Loads the entries of the subtitle content read from the specified reader
+   *
+   * @param br          the subtitle content reader
+   * @param charset     the charset of the content, if detected
+   * @param diagnostics the list of the repaired issues, if loading leniently
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the content
+   */
+  private static SubtitleTrack loadTrack(final BufferedReader br, final Charset charset,
+      final List<Diagnostic> diagnostics) throws IOException {
+    // creates a new load context
+    final SubtitleTrack.Builder track = new SubtitleTrack.Builder(TextPool.getDefault());
+    track.setCharset(charset);
+    // the entries are added straight to the track, rather than created one by one
+    final LoadContext.EntrySink sink = track::add;
+    final LoadContext context = new LoadContext(sink, diagnostics);
+
+    // prepare for the first entry being loaded
+    context.resetEntryLoadContext();
+
+    // read line by line
+    String line;
+    int number = 0;
+    while ((line = br.readLine()) != null) {
+      consume(context, line, ++number);
+    }
 
-      // read line by line
-      String line;
-      int number = 0;
-      while ((line = br.readLine()) != null) {
-        line = line.trim();
-        number++;
+    // consume after we exit the loop in order to fill the last entry if not
+    // processed, otherwise, nothing bad shall happen
+    finish(context);
 
-        // log the line read
-        LOGGER.info(String.format("line[%d]=%s", number, line));
+    // record the loaded data
+    final Metrics metrics = Metrics.getInstance();
+    metrics.add(Counter.LINES_READ, number);
+    metrics.add(Counter.ENTRIES_PARSED, track.size());
 
-        // apply the specific consumer
-        consume(context, line);
+    // return the loaded entries
+    return track.build();
+  }
+
+  /**
+   * Lazily loads the entries associated with the specified subtitle file.
+   * The file is read as the returned stream is consumed, and each entry is made
+   * available as soon as it's fully loaded, thus only the entry being loaded is
+   * kept in memory.
+   * <p>
+   * The returned stream holds the underlying file open, hence it shall be
+   * closed after being consumed. Errors while reading the file are reported
+   * as {@link UncheckedIOException unchecked I/O exceptions}. The entries are
+   * loaded leniently if {@link Configuration#LENIENT configured} so, in which
+   * case the repaired issues are only logged and counted.
+   *
+   * @param subtitleFile the subtitle file path
+   * @return the ordered stream of subtitle entries
+   * @throws IOException if an error occurs while opening the source file
+   */
+  public static Stream<SubtitleEntry> stream(final String subtitleFile) throws IOException {
+    final SubtitleReader reader = open(subtitleFile);
+    return stream(reader, reader.getSize());
+  }
+
+  /**
+   * Lazily loads the entries read from the specified subtitle reader, just
+   * like {@link #stream(String)} does. The reader is closed along with the
+   * returned stream.
+   *
+   * @param reader the subtitle reader, as {@link #open(String) opened}
+   * @param size   the size of the source, in bytes
+   * @return the ordered stream of subtitle entries
+   */
+  public static Stream<SubtitleEntry> stream(final SubtitleReader reader, final long size) {
+    return stream(reader, size, LENIENT ? new ArrayList<>() : null);
+  }
+
+  /**
+   * Lazily loads the entries read from the specified subtitle reader, just
+   * like {@link #stream(SubtitleReader, long)} does. If a diagnostics list is
+   * given, the entries are loaded leniently and the repaired issues are added
+   * to that list as the stream is consumed.
+   *
+   * @param reader      the subtitle reader, as {@link #open(String) opened}
+   * @param size        the size of the source, in bytes
+   * @param diagnostics the list of the repaired issues, if loading leniently
+   * @return the ordered stream of subtitle entries
+   */
+  public static Stream<SubtitleEntry> stream(final SubtitleReader reader, final long size,
+      final List<Diagnostic> diagnostics) {
+    final StreamingEntryIterator iterator = new StreamingEntryIterator(reader, size,
+        diagnostics);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(iterator::close);
+  }
+
+  /**
+   * Opens a reader of the lines of the specified subtitle file, decoded with
+   * the configured charset or, when {@link Configuration#CHARSET_DETECTION
+   * detected}, the one detected from its leading bytes, which is then the
+   * charset of the returned reader
+   *
+   * @param subtitleFile the subtitle file path
+   * @return the reader, which shall be closed
+   * @throws IOException if an error occurs while opening the source file
+   */
+  public static SubtitleReader open(final String subtitleFile) throws IOException {
+    return open(subtitleFile, CHARSET_DETECTION);
+  }
+
+  /**
+   * Opens a reader of the lines of the specified subtitle file
+   *
+   * @param subtitleFile the subtitle file path
+   * @param detect       whether or not the charset is detected from the file
+   * @return the reader, which shall be closed
+   * @throws IOException if an error occurs while opening the source file
+   * @see #open(String)
+   */
+  static SubtitleReader open(final String subtitleFile, final boolean detect)
+      throws IOException {
+    final Path file = Paths.get(subtitleFile);
+    final Compression compression = compression(subtitleFile);
+    final long size = Files.size(file);
+    if (!detect && compression == Compression.NONE) {
+      // reports malformed input, just like Files#newBufferedReader does
+      return new SubtitleReader(new InputStreamReader(Files.newInputStream(file),
+          CHARSET.newDecoder()), null, size);
+    }
+    final InputStream raw = Files.newInputStream(file);
+    try {
+      final InputStream in = compression.decompress(raw);
+      if (!detect) {
+        return new SubtitleReader(new InputStreamReader(in, CHARSET), null, size);
       }
+      final BufferedInputStream buffered = new BufferedInputStream(in, Charsets.SNIFF_LENGTH);
+      final Charset charset = detect(buffered);
+      return new SubtitleReader(new InputStreamReader(buffered, charset), charset, size);
+    } catch (final IOException e) {
+      raw.close();
+      throw e;
+    }
+  }
 
-      // consume after we exit the loop in order to fill the last entry if not
-      // processed, otherwise, nothing bad shall happen
-      consume(context, "");
+  /**
+   * Loads, one at a time, the tracks of the subtitle files within the
+   * specified zip archive, which are handed over to the given consumer in the
+   * order they're stored. The archive is read in a single pass, without
+   * extracting its entries, thus only the track being consumed is kept in
+   * memory.
+   *
+   * @param archiveFile the archive file path
+   * @param consumer    the consumer of the tracks
+   * @return the number of loaded tracks
+   * @throws IOException if an error occurs while reading the archive or while
+   *                     consuming its tracks
+   */
+  public static int loadArchive(final String archiveFile, final TrackConsumer consumer)
+      throws IOException {
+    final Path file = Paths.get(archiveFile);
+    try (final ZipInputStream zip = new ZipInputStream(new BufferedInputStream(
+        Files.newInputStream(file), Compression.BUFFER_SIZE))) {
+      int tracks = 0;
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        final SubtitleTrack track;
+        try {
+          track = loadTrack(zip);
+        } catch (final IllegalStateException e) {
+          throw new IllegalStateException(entry.getName() + ": " + e.getMessage(), e);
+        }
+        consumer.accept(entry.getName(), track);
+        tracks++;
+      }
+      Metrics.getInstance().add(Counter.BYTES_READ, Files.size(file));
+      return tracks;
     } catch (final IOException e) {
       // log and rethrow
-      LOGGER.log(Level.SEVERE, "error reading file", e);
+      LOGGER.log(Level.SEVERE, "error reading archive", e);
       throw e;
     }
+  }
 
-    // return the loaded entries
-    return context.getLoadedEntries();
+  /**
+   * Detects the compression of the specified subtitle file, which shall not be
+   * an archive
+   *
+   * @param subtitleFile the subtitle file path
+   * @return the compression of the file
+   * @throws IOException if an error occurs while reading the source file
+   */
+  private static Compression compression(final String subtitleFile) throws IOException {
+    final Compression compression = Compression.of(subtitleFile);
+    if (compression == Compression.ZIP) {
+      throw new IllegalStateException(subtitleFile + " is an archive of subtitle files");
+    }
+    return compression;
+  }
+
+  /**
+   * The consumer of the tracks loaded from an archive
+   */
+  @FunctionalInterface
+  public interface TrackConsumer {
+
+    /**
+     * Consumes the track of the specified archive entry
+     *
+     * @param name  the name of the archive entry
+     * @param track the subtitle track
+     * @throws IOException if an error occurs while consuming the track
+     */
+    void accept(String name, SubtitleTrack track) throws IOException;
+  }
+
+  /**
+   * Creates a parser of the lines of a subtitle file, which hands over each
+   * entry to the specified consumer as soon as it's fully loaded. The entries
+   * are loaded leniently if {@link Configuration#LENIENT configured} so, in
+   * which case the repaired issues are only logged and counted.
+   *
+   * @param entryConsumer the consumer of the loaded entries
+   * @return the line parser
+   */
+  public static LineParser parser(final Consumer<SubtitleEntry> entryConsumer) {
+    return parser(entryConsumer, LENIENT ? new ArrayList<>() : null);
+  }
+
+  /**
+   * Creates a parser of the lines of a subtitle file, just like {@link
+   * #parser(Consumer)} does. If a diagnostics list is given, the entries are
+   * loaded leniently and the repaired issues are added to that list as the
+   * lines are parsed.
+   *
+   * @param entryConsumer the consumer of the loaded entries
+   * @param diagnostics   the list of the repaired issues, if loading leniently
+   * @return the line parser
+   */
+  public static LineParser parser(final Consumer<SubtitleEntry> entryConsumer,
+      final List<Diagnostic> diagnostics) {
+    return new LineParser(new LoadContext(entryConsumer, diagnostics));
+  }
+
+  /**
+   * Detects the charset of the specified input stream from its leading bytes,
+   * which are buffered rather than read twice, skipping its byte order mark,
+   * if any
+   *
+   * @param in the buffered input stream
+   * @return the detected charset
+   * @throws IOException if an error occurs while reading the input stream
+   */
+  static Charset detect(final BufferedInputStream in) throws IOException {
+    final byte[] head = new byte[Charsets.SNIFF_LENGTH];
+    in.mark(head.length);
+    int length = 0;
+    int read;
+    while (length < head.length && (read = in.read(head, length, head.length - length)) > 0) {
+      length += read;
+    }
+    in.reset();
+
+    final ByteBuffer buffer = ByteBuffer.wrap(head, 0, length);
+    final Charset charset = Charsets.detect(buffer);
+    final long bom = Charsets.bomLength(buffer);
+    if (in.skip(bom) != bom) {
+      throw new IOException("unable to skip the byte order mark");
+    }
+    LOGGER.fine(() -> "detected charset: " + charset);
+    return charset;
+  }
+
+  /**
+   * Consumes the specified line read from the source file
+   *
+   * @param context the current load context
+   * @param line    the raw line read
+   * @param number  the line number
+   */
+  static void consume(final LoadContext context, final String line, final int number) {
+    // the byte order mark, if any, is not part of the content
+    final String trimmed = (number == 1 && line.startsWith(BOM) ? line.substring(1) : line).trim();
+
+    // log the line read, without formatting it unless it's actually logged
+    if (LOGGER.isLoggable(Level.INFO)) {
+      LOGGER.info(String.format("line[%d]=%s", number, trimmed));
+    }
+
+    // apply the specific consumer
+    context.setLineNumber(number);
+    consume(context, trimmed);
+  }
+
+  /**
+   * Finishes the loading, filling the last entry if not processed yet. When
+   * loading leniently, an entry truncated by the end of the content is skipped.
+   *
+   * @param context the current load context
+   */
+  private static void finish(final LoadContext context) {
+    if (!context.isLenient()) {
+      consume(context, "");
+      return;
+    }
+    switch (context.getCurrentEntryLoadContext().getCurrentLoadState()) {
+      case TIME_FRAME:
+        context.report(Issue.TRUNCATED_ENTRY);
+        context.resetEntryLoadContext();
+        break;
+      case TEXT:
+        context.getCurrentEntryLoadContext().nextState();
+        EntryFinalLineConsumer.complete(context);
+        break;
+      default:
+        break;
+    }
   }
 
   /**
@@ -127,8 +510,164 @@ public final class SubtitleLoader {
    * @param line    the line read
    */
   private static void consume(final LoadContext context, final String line) {
-    STATE_COMSUMERS.getOrDefault(context.getCurrentEntryLoadContext()
-        .getCurrentLoadState(), DEFAULT_CONSUMER)
-        .accept(context, line);
+    // dispatch on the state, without any lookup
+    switch (context.getCurrentEntryLoadContext().getCurrentLoadState()) {
+      case INITIAL:
+        Consumers.INDEX.accept(context, line);
+        break;
+      case TIME_FRAME:
+        Consumers.TIME_FRAME.accept(context, line);
+        break;
+      case TEXT:
+        Consumers.TEXT.accept(context, line);
+        Consumers.FINAL.accept(context, line);
+        break;
+      default:
+        final RuntimeException e = new IllegalStateException("unsupported state");
+        LOGGER.log(Level.SEVERE, "invalid state", e);
+        throw e;
+    }
+  }
+
+  // the lazy holder of the line consumers, only built when the first line is read
+  private static final class Consumers {
+
+    // the entry states consumers
+    private static final ValidateEntryIndexLineConsumer INDEX =
+        new ValidateEntryIndexLineConsumer();
+    private static final EntryTimeFrameLineConsumer TIME_FRAME = new EntryTimeFrameLineConsumer();
+    private static final EntryTextLineConsumer TEXT = new EntryTextLineConsumer();
+    private static final EntryFinalLineConsumer FINAL = new EntryFinalLineConsumer();
+  }
+
+  /**
+   * The parser of the lines of a subtitle file, which are fed one at a time,
+   * in order, and shall be followed by a call to {@link #finish()}.
+   */
+  public static final class LineParser {
+
+    // the load context
+    private final LoadContext context;
+    // the line number
+    private int number;
+
+    /**
+     * Creates the parser with the specified load context
+     *
+     * @param context the load context
+     */
+    private LineParser(final LoadContext context) {
+      this.context = context;
+      context.resetEntryLoadContext();
+    }
+
+    /**
+     * Parses the next line
+     *
+     * @param line the raw line read
+     * @throws IllegalStateException if the line is malformed, unless lenient
+     */
+    public void accept(final String line) {
+      consume(context, line, ++number);
+    }
+
+    /**
+     * Finishes the parsing, filling the last entry if not processed yet, and
+     * records the loaded data
+     *
+     * @throws IllegalStateException if the last entry is malformed, unless lenient
+     */
+    public void finish() {
+      SubtitleLoader.finish(context);
+      final Metrics metrics = Metrics.getInstance();
+      metrics.add(Counter.LINES_READ, number);
+      metrics.add(Counter.ENTRIES_PARSED, context.getLoadedEntriesCount());
+    }
+  }
+
+  // the iterator which loads the entries on demand
+  private static final class StreamingEntryIterator implements Iterator<SubtitleEntry> {
+
+    // the source reader
+    private final BufferedReader reader;
+    // the source size, in bytes
+    private final long size;
+    // the entries that were loaded but not yet consumed
+    private final Queue<SubtitleEntry> pending = new ArrayDeque<>(1);
+    // the load context
+    private final LoadContext context;
+    // the line number
+    private int number;
+    // whether or not the source was fully read
+    private boolean exhausted;
+
+    /**
+     * Creates the iterator for the specified source reader
+     *
+     * @param reader      the source reader
+     * @param size        the source size, in bytes
+     * @param diagnostics the list of the repaired issues, if loading leniently
+     */
+    private StreamingEntryIterator(final BufferedReader reader, final long size,
+        final List<Diagnostic> diagnostics) {
+      this.reader = reader;
+      this.size = size;
+      this.context = new LoadContext(pending::add, diagnostics);
+      context.resetEntryLoadContext();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (pending.isEmpty() && !exhausted) {
+        final String line = readLine();
+        if (line == null) {
+          // fill the last entry if not processed yet
+          exhausted = true;
+          finish(context);
+        } else {
+          consume(context, line, ++number);
+        }
+      }
+      return !pending.isEmpty();
+    }
+
+    @Override
+    public SubtitleEntry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return pending.remove();
+    }
+
+    /**
+     * Reads the next line from the source
+     *
+     * @return the line read or {@code null} if the end of the source was reached
+     */
+    private String readLine() {
+      try {
+        return reader.readLine();
+      } catch (final IOException e) {
+        LOGGER.log(Level.SEVERE, "error reading file", e);
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Closes the underlying source reader
+     */
+    private void close() {
+      // record the loaded data
+      final Metrics metrics = Metrics.getInstance();
+      metrics.add(Counter.LINES_READ, number);
+      metrics.add(Counter.BYTES_READ, size);
+      metrics.add(Counter.ENTRIES_PARSED, context.getLoadedEntriesCount());
+      try {
+        reader.close();
+      } catch (final IOException e) {
+        LOGGER.log(Level.SEVERE, "error closing file", e);
+        throw new UncheckedIOException(e);
+      }
+    }
   }
 }
@@ -0,0 +1,82 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Optional;
+
+import pt.davidafsilva.subfixer.config.Charsets;
+
+/**
+ * A reader of the lines of a subtitle file, which also tells the size of the
+ * file and the charset the content shall be encoded with, when it was detected
+ * from the file.
+ *
+ * @author david
+ */
+public final class SubtitleReader extends BufferedReader {
+
+  // the charset for encoding the content, if detected
+  private final Charset charset;
+  // the size of the source, in bytes
+  private final long size;
+
+  /**
+   * Creates the reader of the specified content
+   *
+   * @param in      the content reader
+   * @param charset the charset the content was decoded with, if detected
+   * @param size    the size of the source, in bytes
+   */
+  SubtitleReader(final Reader in, final Charset charset, final long size) {
+    super(in);
+    this.charset = charset == null ? null : Charsets.encoding(charset);
+    this.size = size;
+  }
+
+  /**
+   * Returns the size of the source, which is the size of the file as stored,
+   * i.e. before being decompressed
+   *
+   * @return the size of the source, in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the charset the content shall be encoded with, which is the one of
+   * its source, if it was detected
+   *
+   * @return the charset of the source, if known
+   */
+  public Optional<Charset> getCharset() {
+    return Optional.ofNullable(charset);
+  }
+}
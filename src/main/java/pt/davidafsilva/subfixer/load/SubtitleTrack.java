@@ -0,0 +1,467 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.IntUnaryOperator;
+
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+/**
+ * A compact, column oriented, storage of subtitle entries.
+ * <p>
+ * Rather than keeping an object per entry, the track keeps the start and end
+ * times of all of the entries within primitive arrays and their text within a
+ * single shared text buffer. The track is immutable and it is also a (read-only)
+ * {@link List} of {@link SubtitleEntry entries}, which are created on demand.
+ *
+ * @author david
+ */
+public final class SubtitleTrack extends AbstractList<SubtitleEntry> implements RandomAccess {
+
+  // the number of entries
+  private final int size;
+  // the start times, in milliseconds of the day
+  private final int[] startMillis;
+  // the end times, in milliseconds of the day
+  private final int[] endMillis;
+  // the references of the entries text
+  private final long[] textReferences;
+  // the length of the entries text
+  private final int[] textLengths;
+  // the text storage
+  private final TextBuffer text;
+  // the charset of the source, if known
+  private final Charset charset;
+
+  /**
+   * Creates a track with the specified columns, which might be bigger than the
+   * actual number of entries.
+   *
+   * @param size           the number of entries
+   * @param startMillis    the start times
+   * @param endMillis      the end times
+   * @param textReferences the text references
+   * @param textLengths    the text lengths
+   * @param text           the text storage
+   * @param charset        the charset of the source, if known
+   */
+  private SubtitleTrack(final int size, final int[] startMillis, final int[] endMillis,
+      final long[] textReferences, final int[] textLengths, final TextBuffer text,
+      final Charset charset) {
+    this.size = size;
+    this.startMillis = startMillis;
+    this.endMillis = endMillis;
+    this.textReferences = textReferences;
+    this.textLengths = textLengths;
+    this.text = text;
+    this.charset = charset;
+  }
+
+  /**
+   * Creates a track with the specified entries
+   *
+   * @param entries the entries
+   * @return the track
+   */
+  public static SubtitleTrack of(final List<SubtitleEntry> entries) {
+    if (entries instanceof SubtitleTrack) {
+      return (SubtitleTrack) entries;
+    }
+    final Builder builder = new Builder();
+    entries.forEach(builder::add);
+    return builder.build();
+  }
+
+  @Override
+  public int size() { return size; }
+
+  @Override
+  public SubtitleEntry get(final int index) {
+    return new SubtitleEntry(getStartMillis(index), getEndMillis(index), getText(index));
+  }
+
+  /**
+   * Returns the charset the track shall be encoded with, which is the one of
+   * its source, if it was detected
+   *
+   * @return the charset of the source, if known
+   */
+  public Optional<Charset> getCharset() {
+    return Optional.ofNullable(charset);
+  }
+
+  /**
+   * Creates a new track with the same entries of this track and the specified
+   * source charset. The entries are shared with this track.
+   *
+   * @param charset the charset of the source
+   * @return the new track
+   */
+  SubtitleTrack withCharset(final Charset charset) {
+    return new SubtitleTrack(size, startMillis, endMillis, textReferences, textLengths, text,
+        charset);
+  }
+
+  /**
+   * Returns the start time of the entry at the specified index
+   *
+   * @param index the entry index
+   * @return the start time, in milliseconds of the day
+   */
+  public int getStartMillis(final int index) {
+    return startMillis[checkIndex(index)];
+  }
+
+  /**
+   * Returns the end time of the entry at the specified index
+   *
+   * @param index the entry index
+   * @return the end time, in milliseconds of the day
+   */
+  public int getEndMillis(final int index) {
+    return endMillis[checkIndex(index)];
+  }
+
+  /**
+   * Returns the text of the entry at the specified index
+   *
+   * @param index the entry index
+   * @return the entry text
+   */
+  public String getText(final int index) {
+    return text.toString(textReferences[checkIndex(index)], textLengths[index]);
+  }
+
+  /**
+   * Returns the length of the text of the entry at the specified index
+   *
+   * @param index the entry index
+   * @return the entry text length
+   */
+  public int getTextLength(final int index) {
+    return textLengths[checkIndex(index)];
+  }
+
+  /**
+   * Copies the text of the entry at the specified index into the given array,
+   * which must have room for {@link #getTextLength(int) the text}.
+   *
+   * @param index  the entry index
+   * @param target the target array
+   * @param offset the offset within the target array
+   */
+  public void getTextChars(final int index, final char[] target, final int offset) {
+    text.getChars(textReferences[checkIndex(index)], textLengths[index], target, offset);
+  }
+
+  /**
+   * Creates a new track with the times of every entry mapped by the specified
+   * function. The text of the entries is shared with this track.
+   *
+   * @param mapper the time mapping function, which shall return a valid
+   *               millisecond of the day
+   * @return the new track
+   */
+  public SubtitleTrack mapTimes(final IntUnaryOperator mapper) {
+    final int[] starts = new int[size];
+    final int[] ends = new int[size];
+    for (int i = 0; i < size; i++) {
+      starts[i] = mapper.applyAsInt(startMillis[i]);
+      ends[i] = mapper.applyAsInt(endMillis[i]);
+    }
+    return new SubtitleTrack(size, starts, ends, textReferences, textLengths, text, charset);
+  }
+
+  /**
+   * Creates a new track with the times of this track transformed by the
+   * specified transformation, in a single pass over the primitive times. The
+   * entries dropped by a {@link TimeTransform#isTrimming() trimming}
+   * transformation are left out, while the text of the remaining entries is
+   * shared with this track.
+   *
+   * @param transform the time transformation
+   * @return the new track
+   */
+  public SubtitleTrack transform(final TimeTransform transform) {
+    if (!transform.isTrimming()) {
+      return mapTimes(transform);
+    }
+
+    final int[] starts = new int[size];
+    final int[] ends = new int[size];
+    final long[] references = new long[size];
+    final int[] lengths = new int[size];
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      final long start = transform.applyAsLong(startMillis[i]);
+      final long end = transform.applyAsLong(endMillis[i]);
+      if (start < end) {
+        starts[kept] = TimeTransform.toMillisOfDay(start);
+        ends[kept] = TimeTransform.toMillisOfDay(end);
+        references[kept] = textReferences[i];
+        lengths[kept] = textLengths[i];
+        kept++;
+      }
+    }
+    return new SubtitleTrack(kept, starts, ends, references, lengths, text, charset);
+  }
+
+  /**
+   * Validates the specified entry index
+   *
+   * @param index the entry index
+   * @return the validated index
+   */
+  private int checkIndex(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+    return index;
+  }
+
+  /**
+   * The track builder, which accumulates the entries as they are loaded.
+   */
+  static final class Builder {
+
+    // the initial capacity
+    private static final int INITIAL_CAPACITY = 64;
+
+    // the text storage
+    private final TextBuffer text;
+    // the shared text pool, if any, and the local index (plus one) of its linked chunks
+    private final TextPool pool;
+    private int[] linkedChunks = new int[0];
+    // the number of characters shared with the text pool
+    private long pooledChars;
+    // the charset of the source, if known
+    private Charset charset;
+
+    // the columns
+    private int size;
+    private int[] startMillis = new int[INITIAL_CAPACITY];
+    private int[] endMillis = new int[INITIAL_CAPACITY];
+    private long[] textReferences = new long[INITIAL_CAPACITY];
+    private int[] textLengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * Creates a builder with its own text storage
+     */
+    Builder() {
+      this(new TextBuffer());
+    }
+
+    /**
+     * Creates a builder with its own text storage, which shares the repeated
+     * texts through the specified pool
+     *
+     * @param pool the text pool, if any
+     */
+    Builder(final TextPool pool) {
+      this(new TextBuffer(), pool);
+    }
+
+    /**
+     * Creates a builder with the specified text storage
+     *
+     * @param text the text storage
+     */
+    Builder(final TextBuffer text) {
+      this(text, null);
+    }
+
+    /**
+     * Creates a builder with the specified text storage and text pool
+     *
+     * @param text the text storage
+     * @param pool the text pool, if any
+     */
+    private Builder(final TextBuffer text, final TextPool pool) {
+      this.text = Objects.requireNonNull(text, "text");
+      this.pool = pool;
+    }
+
+    /**
+     * Adds the specified entry to the track
+     *
+     * @param entry the entry
+     */
+    void add(final SubtitleEntry entry) {
+      add(entry.getStartMillis(), entry.getEndMillis(), entry.getText());
+    }
+
+    /**
+     * Adds an entry to the track
+     *
+     * @param startMillis the start time, in milliseconds of the day
+     * @param endMillis   the end time, in milliseconds of the day
+     * @param text        the entry text
+     */
+    void add(final int startMillis, final int endMillis, final CharSequence text) {
+      final long pooled = pool == null ? -1 : pool(text);
+      add(startMillis, endMillis, pooled < 0 ? this.text.append(text) : pooled, text.length());
+    }
+
+    /**
+     * Adds an entry to the track, with the text read from the specified buffer
+     *
+     * @param startMillis the start time, in milliseconds of the day
+     * @param endMillis   the end time, in milliseconds of the day
+     * @param text        the buffer with the entry text, at its current position
+     * @param textLength  the entry text length
+     */
+    void add(final int startMillis, final int endMillis, final CharBuffer text,
+        final int textLength) {
+      final long pooled = pool == null ? -1 : pool(text.subSequence(0, textLength));
+      if (pooled < 0) {
+        add(startMillis, endMillis, this.text.append(text, textLength), textLength);
+      } else {
+        text.position(text.position() + textLength);
+        add(startMillis, endMillis, pooled, textLength);
+      }
+    }
+
+    /**
+     * Shares the specified text through the text pool, linking the pool chunk
+     * which holds it, if not linked yet
+     *
+     * @param text the text
+     * @return the local reference of the pooled text or {@code -1} if not pooled
+     */
+    private long pool(final CharSequence text) {
+      long reference = pool.lookup(text);
+      if (reference >= 0) {
+        pooledChars += text.length();
+      } else if ((reference = pool.admit(text)) < 0) {
+        return -1;
+      }
+
+      final int chunk = TextBuffer.chunk(reference);
+      if (chunk >= linkedChunks.length) {
+        linkedChunks = Arrays.copyOf(linkedChunks, chunk + 1);
+      }
+      if (linkedChunks[chunk] == 0) {
+        linkedChunks[chunk] = this.text.link(pool.chunk(chunk)) + 1;
+      }
+      return TextBuffer.reference(linkedChunks[chunk] - 1, TextBuffer.offset(reference));
+    }
+
+    /**
+     * Adds an entry, whose text is already stored, to the track
+     *
+     * @param startMillis   the start time, in milliseconds of the day
+     * @param endMillis     the end time, in milliseconds of the day
+     * @param textReference the entry text reference
+     * @param textLength    the entry text length
+     */
+    private void add(final int startMillis, final int endMillis, final long textReference,
+        final int textLength) {
+      if (size == this.startMillis.length) {
+        final int capacity = size + (size >> 1);
+        this.startMillis = Arrays.copyOf(this.startMillis, capacity);
+        this.endMillis = Arrays.copyOf(this.endMillis, capacity);
+        this.textReferences = Arrays.copyOf(this.textReferences, capacity);
+        this.textLengths = Arrays.copyOf(this.textLengths, capacity);
+      }
+      this.startMillis[size] = startMillis;
+      this.endMillis[size] = endMillis;
+      this.textReferences[size] = textReference;
+      this.textLengths[size] = textLength;
+      size++;
+    }
+
+    /**
+     * Adds all of the entries of the specified builder, which shall no longer be
+     * used, to the track. The text of the entries is adopted rather than copied.
+     *
+     * @param other the builder whose entries are added
+     */
+    void addAll(final Builder other) {
+      final int capacity = size + other.size;
+      if (capacity > startMillis.length) {
+        this.startMillis = Arrays.copyOf(this.startMillis, capacity);
+        this.endMillis = Arrays.copyOf(this.endMillis, capacity);
+        this.textReferences = Arrays.copyOf(this.textReferences, capacity);
+        this.textLengths = Arrays.copyOf(this.textLengths, capacity);
+      }
+      System.arraycopy(other.startMillis, 0, startMillis, size, other.size);
+      System.arraycopy(other.endMillis, 0, endMillis, size, other.size);
+      System.arraycopy(other.textLengths, 0, textLengths, size, other.size);
+      final long shift = text.adopt(other.text);
+      pooledChars += other.pooledChars;
+      for (int i = 0; i < other.size; i++) {
+        textReferences[size + i] = other.textReferences[i] + shift;
+      }
+      size = capacity;
+    }
+
+    /**
+     * Sets the charset of the source of the track, which is the charset the
+     * track shall be encoded with
+     *
+     * @param charset the charset of the source
+     */
+    void setCharset(final Charset charset) {
+      this.charset = charset;
+    }
+
+    /**
+     * Returns the number of entries added so far
+     *
+     * @return the number of entries
+     */
+    int size() {
+      return size;
+    }
+
+    /**
+     * Builds the track with the entries added so far. The columns are trimmed
+     * to the number of entries, hence the track neither retains the spare
+     * capacity of the builder nor shares its columns, which may keep growing.
+     *
+     * @return the track
+     */
+    SubtitleTrack build() {
+      if (pooledChars > 0) {
+        Metrics.getInstance().add(Counter.TEXT_BYTES_SAVED, pooledChars * Character.BYTES);
+        pooledChars = 0;
+      }
+      return new SubtitleTrack(size, Arrays.copyOf(startMillis, size),
+          Arrays.copyOf(endMillis, size), Arrays.copyOf(textReferences, size),
+          Arrays.copyOf(textLengths, size), text, charset);
+    }
+  }
+}
@@ -0,0 +1,253 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * An append only text storage, which keeps the text of many entries within a
+ * few large character chunks rather than on individual strings.
+ * <p>
+ * Each appended text is identified by a reference, made of the chunk index and
+ * the offset of the text within that chunk, and by its length. A text never
+ * spans more than one chunk. Appending is thread safe and the appended text is
+ * never moved nor modified, hence it can be freely shared. A buffer may also
+ * link the chunks of another buffer, such as the one of a {@link TextPool text
+ * pool}, to reference their text without copying it.
+ *
+ * @author david
+ */
+final class TextBuffer {
+
+  // the size of the first chunk
+  private static final int INITIAL_CHUNK_SIZE = 1 << 10;
+  // the maximum size of the chunks (unless a single text is bigger)
+  private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+  // the text chunks
+  private volatile char[][] chunks = new char[0][];
+  // the index of the chunk being appended to, if any
+  private int current = -1;
+  // the position at the chunk being appended to
+  private int position;
+  // the total number of characters stored
+  private long length;
+
+  /**
+   * Appends the specified text to this buffer
+   *
+   * @param text the text to append
+   * @return the reference of the stored text
+   */
+  synchronized long append(final CharSequence text) {
+    final int textLength = text.length();
+    final char[] target = reserve(textLength);
+    final int chunk = current;
+
+    // copy the text
+    if (text instanceof String) {
+      ((String) text).getChars(0, textLength, target, position);
+    } else if (text instanceof StringBuilder) {
+      ((StringBuilder) text).getChars(0, textLength, target, position);
+    } else {
+      for (int i = 0; i < textLength; i++) {
+        target[position + i] = text.charAt(i);
+      }
+    }
+
+    final long reference = reference(chunk, position);
+    position += textLength;
+    length += textLength;
+    return reference;
+  }
+
+  /**
+   * Appends the specified number of characters of the source buffer, starting
+   * at its current position, to this buffer
+   *
+   * @param source     the source characters
+   * @param textLength the number of characters to append
+   * @return the reference of the stored text
+   */
+  synchronized long append(final CharBuffer source, final int textLength) {
+    final char[] target = reserve(textLength);
+    final int chunk = current;
+    source.get(target, position, textLength);
+
+    final long reference = reference(chunk, position);
+    position += textLength;
+    length += textLength;
+    return reference;
+  }
+
+  /**
+   * Adopts all of the chunks of the specified buffer, which shall no longer be
+   * appended to, as the last chunks of this buffer. The references of the
+   * adopted text are shifted by the returned amount.
+   *
+   * @param other the buffer whose chunks are adopted
+   * @return the amount to add to the references of the adopted text
+   */
+  synchronized long adopt(final TextBuffer other) {
+    synchronized (other) {
+      final char[][] existing = chunks;
+      final char[][] adopted = other.chunks;
+      final char[][] updated = Arrays.copyOf(existing, existing.length + adopted.length);
+      System.arraycopy(adopted, 0, updated, existing.length, adopted.length);
+      if (other.current >= 0) {
+        current = existing.length + other.current;
+        position = other.position;
+      }
+      length += other.length;
+      chunks = updated;
+      return reference(existing.length, 0);
+    }
+  }
+
+  /**
+   * Links the specified chunk, owned by another buffer, as a chunk of this
+   * buffer, so its text can be referenced without being copied. The linked
+   * chunk is never appended to by this buffer.
+   *
+   * @param chunk the chunk to link
+   * @return the index of the linked chunk within this buffer
+   */
+  synchronized int link(final char[] chunk) {
+    final char[][] existing = chunks;
+    final char[][] updated = Arrays.copyOf(existing, existing.length + 1);
+    updated[existing.length] = chunk;
+    chunks = updated;
+    return existing.length;
+  }
+
+  /**
+   * Returns the chunk with the specified index
+   *
+   * @param chunk the chunk index
+   * @return the chunk
+   */
+  char[] chunk(final int chunk) {
+    return chunks[chunk];
+  }
+
+  /**
+   * Returns the total number of characters stored at this buffer
+   *
+   * @return the number of characters
+   */
+  synchronized long length() {
+    return length;
+  }
+
+  /**
+   * Creates a string with the referenced text
+   *
+   * @param reference the text reference
+   * @param length    the text length
+   * @return the text
+   */
+  String toString(final long reference, final int length) {
+    return new String(chunks[chunk(reference)], offset(reference), length);
+  }
+
+  /**
+   * Copies the referenced text into the specified array
+   *
+   * @param reference the text reference
+   * @param length    the text length
+   * @param target    the target array
+   * @param offset    the offset within the target array
+   */
+  void getChars(final long reference, final int length, final char[] target, final int offset) {
+    System.arraycopy(chunks[chunk(reference)], offset(reference), target, offset, length);
+  }
+
+  /**
+   * Reserves room for the specified text length at the chunk being appended to,
+   * allocating a new chunk if needed
+   *
+   * @param textLength the length of the text that needs to be stored
+   * @return the chunk being appended to
+   */
+  private char[] reserve(final int textLength) {
+    final char[][] existing = chunks;
+    if (current < 0 || existing[current].length - position < textLength) {
+      return newChunk(existing, textLength);
+    }
+    return existing[current];
+  }
+
+  /**
+   * Allocates a new chunk, with enough room for the specified text length
+   *
+   * @param existing   the existing chunks
+   * @param textLength the length of the text that needs to be stored
+   * @return the new chunk
+   */
+  private char[] newChunk(final char[][] existing, final int textLength) {
+    final int previousSize = current < 0 ? INITIAL_CHUNK_SIZE / 2 : existing[current].length;
+    final int size = Math.max(textLength, Math.min(MAX_CHUNK_SIZE, previousSize * 2));
+    final char[][] updated = Arrays.copyOf(existing, existing.length + 1);
+    updated[existing.length] = new char[size];
+    current = existing.length;
+    position = 0;
+    chunks = updated;
+    return updated[current];
+  }
+
+  /**
+   * Creates the text reference for the specified chunk and offset
+   *
+   * @param chunk  the chunk index
+   * @param offset the offset within the chunk
+   * @return the reference
+   */
+  static long reference(final int chunk, final int offset) {
+    return ((long) chunk << 32) | offset;
+  }
+
+  /**
+   * Returns the chunk index of the specified reference
+   *
+   * @param reference the text reference
+   * @return the chunk index
+   */
+  static int chunk(final long reference) {
+    return (int) (reference >>> 32);
+  }
+
+  /**
+   * Returns the chunk offset of the specified reference
+   *
+   * @param reference the text reference
+   * @return the offset within the chunk
+   */
+  static int offset(final long reference) {
+    return (int) reference;
+  }
+}
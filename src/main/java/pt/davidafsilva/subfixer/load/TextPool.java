@@ -0,0 +1,216 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pt.davidafsilva.subfixer.config.Configuration;
+
+/**
+ * A shared, size bounded, pool of the text of the subtitle entries, which
+ * allows the repeated texts (such as {@code [MUSIC]} or the credits) of all the
+ * loaded tracks to share the same storage, across files.
+ * <p>
+ * The pooled texts are stored within a {@link TextBuffer text buffer} owned by
+ * the pool, whose chunks are linked, rather than copied, by the tracks which
+ * reference them. Only short texts are pooled, as those are the ones which are
+ * usually repeated, and only once they're seen for the second time, so the
+ * one-off texts don't fill the pool. No more texts are pooled once the pool
+ * reaches its maximum size, although the pooled ones keep being shared. The
+ * pool is safe to be used concurrently by many loaders.
+ *
+ * @author david
+ */
+public final class TextPool {
+
+  // the maximum length of the pooled texts
+  static final int MAX_TEXT_LENGTH = 256;
+  // the number of characters within a megabyte of text
+  private static final long CHARS_PER_MEGABYTE = 1024 * 1024 / Character.BYTES;
+  // the number of remembered texts which were seen once (a power of two)
+  private static final int SIGHTINGS = 4096;
+
+  // the storage of the pooled texts
+  private final TextBuffer storage = new TextBuffer();
+  // the pooled texts, keyed by their content
+  private final ConcurrentMap<Key, Key> texts = new ConcurrentHashMap<>();
+  // the hashes of the texts which were seen once, but not pooled yet. The
+  // updates may race, which at most pools a text on its first or third sighting
+  private final int[] sightings = new int[SIGHTINGS];
+  // the maximum number of pooled characters
+  private final long maxChars;
+
+  /**
+   * Creates a text pool with the specified maximum size
+   *
+   * @param maxChars the maximum number of pooled characters
+   */
+  public TextPool(final long maxChars) {
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Returns the text pool shared by the loaders, as configured by the
+   * {@link Configuration#TEXT_POOL text pool} size
+   *
+   * @return the shared text pool or {@code null} if disabled
+   */
+  public static TextPool getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  /**
+   * Returns the number of pooled characters
+   *
+   * @return the number of characters
+   */
+  public long size() {
+    return storage.length();
+  }
+
+  /**
+   * Looks up the specified text within the pool
+   *
+   * @param text the text
+   * @return the reference of the pooled text, within the pool storage, or
+   * {@code -1} if not pooled
+   */
+  long lookup(final CharSequence text) {
+    if (text.length() > MAX_TEXT_LENGTH) {
+      return -1;
+    }
+    final Key pooled = texts.get(new Key(text, -1));
+    return pooled == null ? -1 : pooled.reference;
+  }
+
+  /**
+   * Adds the specified text to the pool, if it was already seen and there's
+   * still room for it. The texts are admitted one at a time, so the pool never
+   * exceeds its maximum size and each text is stored once.
+   *
+   * @param text the text
+   * @return the reference of the pooled text, within the pool storage, or
+   * {@code -1} if not pooled
+   */
+  long admit(final CharSequence text) {
+    final int length = text.length();
+    if (length > MAX_TEXT_LENGTH) {
+      return -1;
+    }
+    final Key probe = new Key(text, -1);
+    final int slot = (probe.hash ^ probe.hash >>> 16) & (SIGHTINGS - 1);
+    if (sightings[slot] != probe.hash) {
+      // first sighting, remember it only
+      sightings[slot] = probe.hash;
+      return -1;
+    }
+    synchronized (this) {
+      final Key pooled = texts.get(probe);
+      if (pooled != null) {
+        return pooled.reference;
+      } else if (storage.length() + length > maxChars) {
+        return -1;
+      }
+      final long reference = storage.append(text);
+      final Key key = new Key(CharBuffer.wrap(storage.chunk(TextBuffer.chunk(reference)),
+          TextBuffer.offset(reference), length), reference);
+      texts.put(key, key);
+      return reference;
+    }
+  }
+
+  /**
+   * Returns the chunk of the pool storage with the specified index
+   *
+   * @param chunk the chunk index
+   * @return the chunk
+   */
+  char[] chunk(final int chunk) {
+    return storage.chunk(chunk);
+  }
+
+  // the key of a pooled text, compared by its content
+  private static final class Key {
+
+    // the text and its hash code
+    private final CharSequence text;
+    private final int hash;
+    // the reference of the text, within the pool storage
+    private final long reference;
+
+    /**
+     * Creates the key for the specified text
+     *
+     * @param text      the text
+     * @param reference the reference of the text, within the pool storage
+     */
+    private Key(final CharSequence text, final long reference) {
+      this.text = text;
+      this.reference = reference;
+      int h = 0;
+      for (int i = 0; i < text.length(); i++) {
+        h = 31 * h + text.charAt(i);
+      }
+      this.hash = h;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      if (hash != other.hash || text.length() != other.text.length()) {
+        return false;
+      }
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) != other.text.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  // the lazy holder of the shared text pool
+  private static final class DefaultHolder {
+
+    // the shared text pool, if enabled
+    private static final TextPool INSTANCE = Configuration.TEXT_POOL > 0 ?
+        new TextPool(Configuration.TEXT_POOL * CHARS_PER_MEGABYTE) : null;
+  }
+}
@@ -0,0 +1,269 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * An allocation free parser for the entry time frames with the fixed layout
+ * {@code HH:mm:ss,SSS --> HH:mm:ss,SSS}, which produces the times as
+ * milliseconds of the day.
+ * <p>
+ * Since a time frame is made of two times, the parsed time frame is packed
+ * into a single {@code long} value, from which the times can be extracted with
+ * {@link #startMillis(long)} and {@link #endMillis(long)}. Any input that does
+ * not strictly follow the layout is reported as {@link #INVALID}, in which case
+ * the caller shall fall back to the (lenient) formatter based parsing.
+ *
+ * @author david
+ */
+public final class TimeFrameParser {
+
+  // the number of milliseconds within a day
+  public static final int MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+  // the value returned for an irregular time frame
+  public static final long INVALID = -1L;
+
+  // the length of a time (HH:mm:ss,SSS)
+  static final int TIME_LENGTH = 12;
+  // the separator between the start and end times
+  static final String SEPARATOR = " --> ";
+  // the length of a time frame
+  static final int TIME_FRAME_LENGTH = 2 * TIME_LENGTH + SEPARATOR.length();
+
+  // private constructor
+  private TimeFrameParser() {}
+
+  /**
+   * Parses the specified time frame
+   *
+   * @param timeFrame the time frame text, without any surrounding white space
+   * @return the packed time frame or {@link #INVALID} if the time frame does not
+   * follow the expected layout
+   */
+  public static long parse(final CharSequence timeFrame) {
+    if (timeFrame.length() != TIME_FRAME_LENGTH) {
+      return INVALID;
+    }
+
+    // validate the separator
+    for (int i = 0; i < SEPARATOR.length(); i++) {
+      if (timeFrame.charAt(TIME_LENGTH + i) != SEPARATOR.charAt(i)) {
+        return INVALID;
+      }
+    }
+
+    // parse both times
+    final int start = parseTime(timeFrame, 0);
+    final int end = parseTime(timeFrame, TIME_LENGTH + SEPARATOR.length());
+    return start < 0 || end < 0 ? INVALID : pack(start, end);
+  }
+
+  /**
+   * Parses the time frame encoded, with an ASCII compatible charset, at the
+   * specified region of the buffer.
+   *
+   * @param buffer the buffer with the encoded time frame
+   * @param offset the offset of the time frame within the buffer
+   * @param length the length of the time frame, without any surrounding white
+   *               space
+   * @return the packed time frame or {@link #INVALID} if the time frame does not
+   * follow the expected layout
+   */
+  public static long parse(final ByteBuffer buffer, final int offset, final int length) {
+    if (length != TIME_FRAME_LENGTH) {
+      return INVALID;
+    }
+
+    // validate the separator
+    for (int i = 0; i < SEPARATOR.length(); i++) {
+      if (buffer.get(offset + TIME_LENGTH + i) != SEPARATOR.charAt(i)) {
+        return INVALID;
+      }
+    }
+
+    // parse both times
+    final int start = parseTime(buffer, offset);
+    final int end = parseTime(buffer, offset + TIME_LENGTH + SEPARATOR.length());
+    return start < 0 || end < 0 ? INVALID : pack(start, end);
+  }
+
+  /**
+   * Parses an encoded time with the {@code HH:mm:ss,SSS} layout, starting at the
+   * specified offset.
+   *
+   * @param buffer the buffer containing the time
+   * @param offset the offset of the time within the buffer
+   * @return the milliseconds of the day or {@code -1} if the time is invalid
+   */
+  static int parseTime(final ByteBuffer buffer, final int offset) {
+    if (buffer.get(offset + 2) != ':' || buffer.get(offset + 5) != ':' ||
+        buffer.get(offset + 8) != ',') {
+      return -1;
+    }
+    return toMillis(
+        digits(buffer.get(offset), buffer.get(offset + 1)),
+        digits(buffer.get(offset + 3), buffer.get(offset + 4)),
+        digits(buffer.get(offset + 6), buffer.get(offset + 7)),
+        digits(buffer.get(offset + 9), buffer.get(offset + 10), buffer.get(offset + 11)));
+  }
+
+  /**
+   * Parses a time with the {@code HH:mm:ss,SSS} layout, starting at the
+   * specified offset.
+   *
+   * @param text   the text containing the time
+   * @param offset the offset of the time within the text
+   * @return the milliseconds of the day or {@code -1} if the time is invalid
+   */
+  static int parseTime(final CharSequence text, final int offset) {
+    if (text.charAt(offset + 2) != ':' || text.charAt(offset + 5) != ':' ||
+        text.charAt(offset + 8) != ',') {
+      return -1;
+    }
+    return toMillis(
+        digits(text.charAt(offset), text.charAt(offset + 1)),
+        digits(text.charAt(offset + 3), text.charAt(offset + 4)),
+        digits(text.charAt(offset + 6), text.charAt(offset + 7)),
+        digits(text.charAt(offset + 9), text.charAt(offset + 10), text.charAt(offset + 11)));
+  }
+
+  /**
+   * Converts the time fields into milliseconds of the day
+   *
+   * @param hours   the hour of the day
+   * @param minutes the minute of the hour
+   * @param seconds the second of the minute
+   * @param millis  the milliseconds of the second
+   * @return the milliseconds of the day or {@code -1} if any field is invalid
+   */
+  static int toMillis(final int hours, final int minutes, final int seconds, final int millis) {
+    if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 ||
+        seconds < 0 || seconds > 59 || millis < 0) {
+      return -1;
+    }
+    return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+  }
+
+  /**
+   * Converts two decimal digits into its numeric value
+   *
+   * @param d1 the most significant digit
+   * @param d2 the least significant digit
+   * @return the numeric value or a negative value if any of them is not a digit
+   */
+  static int digits(final int d1, final int d2) {
+    final int v1 = d1 - '0';
+    final int v2 = d2 - '0';
+    return (v1 | v2) < 0 || v1 > 9 || v2 > 9 ? -1 : v1 * 10 + v2;
+  }
+
+  /**
+   * Converts three decimal digits into its numeric value
+   *
+   * @param d1 the most significant digit
+   * @param d2 the middle digit
+   * @param d3 the least significant digit
+   * @return the numeric value or a negative value if any of them is not a digit
+   */
+  static int digits(final int d1, final int d2, final int d3) {
+    final int v1 = digits(d1, d2);
+    final int v3 = d3 - '0';
+    return v1 < 0 || v3 < 0 || v3 > 9 ? -1 : v1 * 10 + v3;
+  }
+
+  /**
+   * Formats the packed time frame, with the fixed layout, into the given bytes
+   *
+   * @param timeFrame the packed time frame
+   * @param target    the target bytes, with room for {@link #TIME_FRAME_LENGTH}
+   *                  bytes after the offset
+   * @param offset    the offset within the target bytes
+   */
+  static void format(final long timeFrame, final byte[] target, final int offset) {
+    formatTime(startMillis(timeFrame), target, offset);
+    for (int i = 0; i < SEPARATOR.length(); i++) {
+      target[offset + TIME_LENGTH + i] = (byte) SEPARATOR.charAt(i);
+    }
+    formatTime(endMillis(timeFrame), target, offset + TIME_LENGTH + SEPARATOR.length());
+  }
+
+  /**
+   * Formats the time, with the {@code HH:mm:ss,SSS} layout, into the given bytes
+   *
+   * @param millis the time, in milliseconds of the day
+   * @param target the target bytes
+   * @param offset the offset within the target bytes
+   */
+  private static void formatTime(final int millis, final byte[] target, final int offset) {
+    final int seconds = millis / 1000;
+    target[offset] = (byte) ('0' + seconds / 36000);
+    target[offset + 1] = (byte) ('0' + seconds / 3600 % 10);
+    target[offset + 2] = ':';
+    target[offset + 3] = (byte) ('0' + seconds / 600 % 6);
+    target[offset + 4] = (byte) ('0' + seconds / 60 % 10);
+    target[offset + 5] = ':';
+    target[offset + 6] = (byte) ('0' + seconds % 60 / 10);
+    target[offset + 7] = (byte) ('0' + seconds % 10);
+    target[offset + 8] = ',';
+    target[offset + 9] = (byte) ('0' + millis % 1000 / 100);
+    target[offset + 10] = (byte) ('0' + millis % 100 / 10);
+    target[offset + 11] = (byte) ('0' + millis % 10);
+  }
+
+  /**
+   * Packs the specified times into a time frame
+   *
+   * @param startMillis the start time, in milliseconds of the day
+   * @param endMillis   the end time, in milliseconds of the day
+   * @return the packed time frame
+   */
+  public static long pack(final int startMillis, final int endMillis) {
+    return ((long) startMillis << 32) | (endMillis & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the start time of the packed time frame
+   *
+   * @param timeFrame the packed time frame
+   * @return the start time, in milliseconds of the day
+   */
+  public static int startMillis(final long timeFrame) {
+    return (int) (timeFrame >>> 32);
+  }
+
+  /**
+   * Returns the end time of the packed time frame
+   *
+   * @param timeFrame the packed time frame
+   * @return the end time, in milliseconds of the day
+   */
+  public static int endMillis(final long timeFrame) {
+    return (int) timeFrame;
+  }
+}
@@ -0,0 +1,434 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.config.Charsets;
+import pt.davidafsilva.subfixer.load.EntryLoadContext.EntryLoadState;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET;
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET_DETECTION;
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * Shifts the time frames of a subtitle file in place, without loading its
+ * entries. The file is mapped into memory and only the bytes of the time frame
+ * lines are rewritten, while everything else, including the text of the
+ * entries, is handed over to the output as is, without being copied through the
+ * JVM heap nor any charset round trip. The text within the current mapping is
+ * gathered, as views of the mapped buffer interleaved with the rewritten time
+ * frames, into a single write per batch of entries, whereas any other bytes of
+ * the file are transferred straight from the file channel. The text is still
+ * checked for malformed bytes, but only its non ASCII lines are actually
+ * decoded.
+ * <p>
+ * The file is validated with the same rules, and errors, of the
+ * {@link SubtitleLoader}, although the output preceding an error will already
+ * have been written. Just like the {@link MappedSubtitleLoader}, it requires an
+ * ASCII compatible charset.
+ *
+ * @author david
+ */
+public final class TimeFrameShifter {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the size of the buffer where the text lines are decoded into, when checked
+  private static final int CHECK_BUFFER_SIZE = 1024;
+  // the maximum number of entries gathered into a single write
+  private static final int BATCH_SIZE = 512;
+  // the size of the buffer where the batch is coalesced, for non gathering outputs
+  private static final int COALESCE_BUFFER_SIZE = 64 * 1024;
+
+  // the source file channel
+  private final FileChannel source;
+  // the output channel
+  private final WritableByteChannel out;
+  // the time shift function
+  private final IntUnaryOperator shift;
+  // the charset of the source file
+  private final Charset charset;
+  // the decoder of the text lines and the buffer where they're decoded into
+  private final CharsetDecoder decoder;
+  private final CharBuffer decoded = CharBuffer.allocate(CHECK_BUFFER_SIZE);
+  // the formatted time frame
+  private final byte[] timeFrame = new byte[TimeFrameParser.TIME_FRAME_LENGTH];
+  // the formatted time frames of the batch and their views
+  private final ByteBuffer timeFrames = ByteBuffer.allocateDirect(
+      BATCH_SIZE * TimeFrameParser.TIME_FRAME_LENGTH);
+  private final ByteBuffer[] timeFrameViews = new ByteBuffer[BATCH_SIZE];
+  // the views of the current mapping, for the text of the batch
+  private final ByteBuffer[] textViews = new ByteBuffer[BATCH_SIZE];
+  private MappedByteBuffer mapping;
+  // the buffers of the batch, to be written at once, and the number of entries
+  private final ByteBuffer[] batch = new ByteBuffer[2 * BATCH_SIZE];
+  private int batchLength;
+  private int batchEntries;
+  // the buffer where the batch is coalesced, if the output can't gather it
+  private final ByteBuffer coalesced;
+
+  // the current state
+  private EntryLoadState state = EntryLoadState.INITIAL;
+  // the number of shifted entries
+  private int entries;
+  // the number of scanned lines
+  private int lines;
+  // the number of written bytes
+  private long written;
+  // whether or not the current entry has any text
+  private boolean hasText;
+  // the position of the source file up to which the bytes were already copied
+  private long copied;
+
+  /**
+   * Creates the shifter for the specified source
+   *
+   * @param source the source file channel
+   * @param out    the output channel
+   * @param shift   the time shift function
+   * @param charset the charset of the source file
+   */
+  private TimeFrameShifter(final FileChannel source, final WritableByteChannel out,
+      final IntUnaryOperator shift, final Charset charset) {
+    this.source = source;
+    this.out = Objects.requireNonNull(out, "out");
+    this.shift = Objects.requireNonNull(shift, "shift");
+    this.charset = charset;
+    this.decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    this.coalesced = out instanceof GatheringByteChannel ? null :
+        ByteBuffer.allocate(COALESCE_BUFFER_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      timeFrames.limit((i + 1) * timeFrame.length).position(i * timeFrame.length);
+      timeFrameViews[i] = timeFrames.slice();
+    }
+  }
+
+  /**
+   * Shifts the time frames of the specified subtitle file, writing the result to
+   * the given output channel
+   *
+   * @param subtitleFile the subtitle file path
+   * @param shift        the time shift function, which maps a time in
+   *                     milliseconds of the day into the shifted one
+   * @param out          the output channel
+   * @return the number of shifted entries
+   * @throws IOException if an error occurs while reading the source file or
+   *                     writing the output
+   */
+  public static long shift(final String subtitleFile, final IntUnaryOperator shift,
+      final WritableByteChannel out) throws IOException {
+    try (final FileChannel channel = FileChannel.open(Paths.get(subtitleFile),
+        StandardOpenOption.READ)) {
+      // the byte order mark, if any, is copied along with the first entry
+      Charset charset = CHARSET;
+      final long from;
+      if (CHARSET_DETECTION) {
+        final ByteBuffer head = Charsets.head(channel);
+        charset = Charsets.detect(head);
+        if (!MappedSubtitleLoader.supports(charset)) {
+          throw new IOException(charset + " is not ASCII compatible");
+        }
+        from = Charsets.bomLength(head);
+      } else {
+        from = Charsets.bomLength(channel, charset);
+      }
+      final TimeFrameShifter shifter = new TimeFrameShifter(channel, out, shift, charset);
+      MappedLineScanner.scan(channel, from, channel.size(), shifter::accept);
+      return shifter.finish(channel.size());
+    } catch (final IOException e) {
+      // log and rethrow
+      LOGGER.log(Level.SEVERE, "error shifting file", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Consumes a line of the file
+   *
+   * @param mapped   the mapped buffer containing the line
+   * @param start    the start index of the line
+   * @param end      the end index (exclusive) of the line
+   * @param position the position of the mapped buffer within the file
+   * @throws IOException if the line can't be decoded or an error occurs while
+   *                     writing the output
+   * @see MappedLineScanner.LineConsumer
+   */
+  private void accept(final MappedByteBuffer mapped, final int start, final int end,
+      final long position) throws IOException {
+    lines++;
+
+    // trim the line
+    int from = start;
+    int to = end;
+    while (from < to && (mapped.get(from) & 0xFF) <= ' ') {
+      from++;
+    }
+    while (to > from && (mapped.get(to - 1) & 0xFF) <= ' ') {
+      to--;
+    }
+
+    switch (state) {
+      case INITIAL:
+        if (from < to) {
+          ByteEntryParser.validateIndex(mapped, from, to, entries, charset);
+          state = EntryLoadState.TIME_FRAME;
+        }
+        break;
+      case TIME_FRAME:
+        rewriteTimeFrame(mapped, from, to, position);
+        state = EntryLoadState.TEXT;
+        break;
+      case TEXT:
+        if (from < to) {
+          checkText(mapped, from, to);
+          hasText = true;
+        } else {
+          completeEntry();
+        }
+        break;
+      default:
+        throw new IllegalStateException("unsupported state");
+    }
+  }
+
+  /**
+   * Rewrites the specified time frame line, adding it to the batch along with
+   * all of the bytes which precede it
+   *
+   * @param mapped   the mapped buffer containing the line
+   * @param from     the start index of the (trimmed) line
+   * @param to       the end index (exclusive) of the (trimmed) line
+   * @param position the position of the mapped buffer within the file
+   * @throws IOException if the line can't be decoded or an error occurs while
+   *                     writing the output
+   */
+  private void rewriteTimeFrame(final MappedByteBuffer mapped, final int from, final int to,
+      final long position) throws IOException {
+    long frame = TimeFrameParser.parse(mapped, from, to - from);
+    if (frame == TimeFrameParser.INVALID) {
+      frame = EntryTimeFrameLineConsumer.parseIrregular(
+          ByteEntryParser.decode(mapped, from, to, charset), entries + 1);
+    }
+    TimeFrameParser.format(TimeFrameParser.pack(
+        shift.applyAsInt(TimeFrameParser.startMillis(frame)),
+        shift.applyAsInt(TimeFrameParser.endMillis(frame))), timeFrame, 0);
+
+    // the batch never spans more than one mapping
+    if (mapped != mapping) {
+      flush();
+      mapping = mapped;
+      Arrays.fill(textViews, null);
+    }
+    // anything before the current mapping is transferred straight from the file
+    if (copied < position) {
+      transfer(position);
+    }
+
+    final int textStart = (int) (copied - position);
+    if (textStart < from) {
+      if (textViews[batchEntries] == null) {
+        textViews[batchEntries] = mapped.duplicate();
+      }
+      final ByteBuffer text = textViews[batchEntries];
+      text.limit(from).position(textStart);
+      batch[batchLength++] = text;
+    }
+    final ByteBuffer formatted = timeFrameViews[batchEntries++];
+    formatted.clear();
+    formatted.put(timeFrame).flip();
+    batch[batchLength++] = formatted;
+    copied = position + to;
+    if (batchEntries == BATCH_SIZE) {
+      flush();
+    }
+  }
+
+  /**
+   * Checks that the specified text line can be decoded, just as it would be
+   * when loading the entries. The leading ASCII bytes are always decodable,
+   * thus only the remaining ones are decoded, if any.
+   *
+   * @param mapped the mapped buffer containing the line
+   * @param from   the start index of the (trimmed) line
+   * @param to     the end index (exclusive) of the (trimmed) line
+   * @throws CharacterCodingException if the line can't be decoded
+   */
+  private void checkText(final MappedByteBuffer mapped, final int from, final int to)
+      throws CharacterCodingException {
+    int ascii = from;
+    while (ascii < to && mapped.get(ascii) >= 0) {
+      ascii++;
+    }
+    if (ascii == to) {
+      return;
+    }
+
+    final ByteBuffer line = mapped.duplicate();
+    line.limit(to).position(ascii);
+    decoder.reset();
+    CoderResult result;
+    do {
+      decoded.clear();
+      result = decoder.decode(line, decoded, true);
+    } while (result.isOverflow());
+    if (result.isError()) {
+      result.throwException();
+    }
+  }
+
+  /**
+   * Completes the current entry
+   */
+  private void completeEntry() {
+    if (!hasText) {
+      throw EntryFinalLineConsumer.noTextError(entries);
+    }
+    entries++;
+    hasText = false;
+    state = EntryLoadState.INITIAL;
+  }
+
+  /**
+   * Finishes the shifting, copying the remaining bytes of the file
+   *
+   * @param size the size of the file
+   * @return the number of shifted entries
+   * @throws IOException if an error occurs while writing the output
+   */
+  private long finish(final long size) throws IOException {
+    if (state == EntryLoadState.TEXT) {
+      completeEntry();
+    }
+    transfer(size);
+
+    // record the shifted data
+    final Metrics metrics = Metrics.getInstance();
+    metrics.add(Counter.LINES_READ, lines);
+    metrics.add(Counter.BYTES_READ, size);
+    metrics.add(Counter.BYTES_WRITTEN, written);
+    metrics.add(Counter.ENTRIES_SHIFTED, entries);
+    return entries;
+  }
+
+  /**
+   * Transfers the not yet copied bytes of the file, up to the specified
+   * position, directly to the output
+   *
+   * @param position the end position (exclusive) of the transfer
+   * @throws IOException if an error occurs while transferring the bytes
+   */
+  private void transfer(final long position) throws IOException {
+    flush();
+    while (copied < position) {
+      final long transferred = source.transferTo(copied, position - copied, out);
+      copied += transferred;
+      written += transferred;
+    }
+  }
+
+  /**
+   * Writes the buffers of the batch to the output, gathering them into a single
+   * write whenever the output supports it or coalescing them otherwise, since
+   * such outputs are usually streams where each write is rather costly
+   *
+   * @throws IOException if an error occurs while writing the output
+   */
+  private void flush() throws IOException {
+    if (coalesced == null) {
+      final GatheringByteChannel gathering = (GatheringByteChannel) out;
+      int offset = 0;
+      while (offset < batchLength) {
+        written += gathering.write(batch, offset, batchLength - offset);
+        while (offset < batchLength && !batch[offset].hasRemaining()) {
+          offset++;
+        }
+      }
+    } else {
+      for (int i = 0; i < batchLength; i++) {
+        if (batch[i].remaining() > coalesced.remaining()) {
+          drain();
+        }
+        if (batch[i].remaining() > coalesced.capacity()) {
+          write(batch[i]);
+        } else {
+          coalesced.put(batch[i]);
+        }
+      }
+      drain();
+    }
+    Arrays.fill(batch, 0, batchLength, null);
+    batchLength = 0;
+    batchEntries = 0;
+  }
+
+  /**
+   * Writes the coalesced bytes to the output
+   *
+   * @throws IOException if an error occurs while writing the output
+   */
+  private void drain() throws IOException {
+    coalesced.flip();
+    write(coalesced);
+    coalesced.clear();
+  }
+
+  /**
+   * Writes all of the remaining bytes of the specified buffer to the output
+   *
+   * @param bytes the bytes to write
+   * @throws IOException if an error occurs while writing the output
+   */
+  private void write(final ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      written += out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.time.Duration;
+import java.util.function.IntUnaryOperator;
+
+import static pt.davidafsilva.subfixer.load.TimeFrameParser.MILLIS_PER_DAY;
+
+/**
+ * An immutable timing transformation of the subtitle entries, which composes
+ * any number of delays, linear scales (such as frame rate conversions), clamps
+ * and trims into a single function of the form:
+ * <pre>
+ *   t' = min(max(round(scale * t + offset), min), max)
+ * </pre>
+ * which is then wrapped around midnight, so a whole chain of timing operations
+ * costs a single multiplication and a couple of comparisons per time. The
+ * operations are applied on an unbounded timeline, hence the times only wrap
+ * around midnight once, after all of them, and are only rounded once.
+ * <p>
+ * Clamping pins the times within a range, whereas trimming also drops the
+ * entries which are left without any duration, i.e. the ones which were
+ * entirely out of the range.
+ *
+ * @author david
+ */
+public final class TimeTransform implements IntUnaryOperator {
+
+  // the identity transformation
+  private static final TimeTransform IDENTITY = new TimeTransform(1, 0, Long.MIN_VALUE,
+      Long.MAX_VALUE, false);
+
+  // the linear part of the transformation
+  private final double scale;
+  private final double offset;
+  // the range of the transformed times
+  private final long min;
+  private final long max;
+  // whether or not the entries without any duration are dropped
+  private final boolean trim;
+
+  /**
+   * Creates the transformation with the specified parameters
+   *
+   * @param scale  the scale factor
+   * @param offset the offset, in milliseconds
+   * @param min    the minimum transformed time, in milliseconds
+   * @param max    the maximum transformed time, in milliseconds
+   * @param trim   whether or not the entries without any duration are dropped
+   */
+  private TimeTransform(final double scale, final double offset, final long min, final long max,
+      final boolean trim) {
+    this.scale = scale;
+    this.offset = offset;
+    this.min = min;
+    this.max = max;
+    this.trim = trim;
+  }
+
+  /**
+   * Returns the identity transformation, which leaves the times untouched
+   *
+   * @return the identity transformation
+   */
+  public static TimeTransform identity() {
+    return IDENTITY;
+  }
+
+  /**
+   * Composes this transformation with a delay of the specified amount
+   *
+   * @param millis the delay, in milliseconds (negative to advance the times)
+   * @return the composed transformation
+   */
+  public TimeTransform delay(final long millis) {
+    return then(new TimeTransform(1, millis, Long.MIN_VALUE, Long.MAX_VALUE, false));
+  }
+
+  /**
+   * Composes this transformation with the specified delay. Any sub-millisecond
+   * precision is rounded towards the past.
+   *
+   * @param delay the delay (negative to advance the times)
+   * @return the composed transformation
+   */
+  public TimeTransform delay(final Duration delay) {
+    return delay(delay.getSeconds() * 1000 + delay.getNano() / 1_000_000);
+  }
+
+  /**
+   * Composes this transformation with a linear scale of the specified factor
+   *
+   * @param factor the scale factor, which must be positive
+   * @return the composed transformation
+   * @throws IllegalArgumentException if the factor is not positive
+   */
+  public TimeTransform scale(final double factor) {
+    if (!(factor > 0) || Double.isInfinite(factor)) {
+      throw new IllegalArgumentException("invalid scale factor: " + factor);
+    }
+    return then(new TimeTransform(factor, 0, Long.MIN_VALUE, Long.MAX_VALUE, false));
+  }
+
+  /**
+   * Composes this transformation with the conversion between the specified
+   * frame rates, such as from {@code 23.976} to {@code 25} frames per second
+   *
+   * @param from the source frame rate
+   * @param to   the target frame rate
+   * @return the composed transformation
+   * @throws IllegalArgumentException if any of the frame rates is not positive
+   */
+  public TimeTransform framerate(final double from, final double to) {
+    if (!(from > 0) || !(to > 0)) {
+      throw new IllegalArgumentException("invalid frame rates: " + from + " -> " + to);
+    }
+    return scale(from / to);
+  }
+
+  /**
+   * Composes this transformation with the clamping of the times within the
+   * specified range
+   *
+   * @param min the minimum time, in milliseconds
+   * @param max the maximum time, in milliseconds
+   * @return the composed transformation
+   * @throws IllegalArgumentException if the range is empty
+   */
+  public TimeTransform clamp(final long min, final long max) {
+    return then(range(min, max, false));
+  }
+
+  /**
+   * Composes this transformation with the trimming of the entries to the
+   * specified range: the times are clamped within the range and the entries
+   * which are entirely out of it are dropped.
+   *
+   * @param from the start of the range, in milliseconds
+   * @param to   the end of the range, in milliseconds
+   * @return the composed transformation
+   * @throws IllegalArgumentException if the range is empty
+   */
+  public TimeTransform trim(final long from, final long to) {
+    return then(range(from, to, true));
+  }
+
+  /**
+   * Composes this transformation with the specified one, which is applied to
+   * the times transformed by this one
+   *
+   * @param next the next transformation
+   * @return the composed transformation
+   */
+  public TimeTransform then(final TimeTransform next) {
+    // clamping before an increasing linear function is the same as clamping
+    // after it with the transformed range, and nested clamps are a single
+    // clamp with the inner range clamped by the outer one
+    return new TimeTransform(next.scale * scale, next.scale * offset + next.offset,
+        clamp(next.linear(min), next.min, next.max), clamp(next.linear(max), next.min, next.max),
+        trim || next.trim);
+  }
+
+  /**
+   * Checks whether or not this transformation drops the entries without any
+   * duration
+   *
+   * @return {@code true} if trimming, {@code false} otherwise
+   */
+  public boolean isTrimming() {
+    return trim;
+  }
+
+  /**
+   * Transforms the specified time, without wrapping it around midnight
+   *
+   * @param millis the time, in milliseconds
+   * @return the transformed time, in milliseconds
+   */
+  public long applyAsLong(final long millis) {
+    return clamp(linear(millis), min, max);
+  }
+
+  /**
+   * Transforms the specified time of the day, wrapping it around midnight
+   *
+   * @param millis the time, in milliseconds of the day
+   * @return the transformed time, in milliseconds of the day
+   */
+  @Override
+  public int applyAsInt(final int millis) {
+    return toMillisOfDay(applyAsLong(millis));
+  }
+
+  /**
+   * Wraps the specified transformed time around midnight
+   *
+   * @param millis the transformed time, in milliseconds
+   * @return the time, in milliseconds of the day
+   */
+  public static int toMillisOfDay(final long millis) {
+    return (int) Math.floorMod(millis, (long) MILLIS_PER_DAY);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("t -> clamp(%s * t + %s, %d, %d)%s", scale, offset, min, max,
+        trim ? ", trimmed" : "");
+  }
+
+  /**
+   * Applies the linear part of this transformation to the specified time. The
+   * unbounded times are kept unbounded.
+   *
+   * @param millis the time, in milliseconds
+   * @return the transformed time, in milliseconds
+   */
+  private long linear(final long millis) {
+    if (millis == Long.MIN_VALUE || millis == Long.MAX_VALUE) {
+      return millis;
+    }
+    return Math.round(scale * millis + offset);
+  }
+
+  /**
+   * Creates the transformation which clamps the times within the specified
+   * range
+   *
+   * @param min  the minimum time, in milliseconds
+   * @param max  the maximum time, in milliseconds
+   * @param trim whether or not the entries without any duration are dropped
+   * @return the range transformation
+   * @throws IllegalArgumentException if the range is empty
+   */
+  private static TimeTransform range(final long min, final long max, final boolean trim) {
+    if (min > max) {
+      throw new IllegalArgumentException("invalid range: [" + min + ", " + max + "]");
+    }
+    return new TimeTransform(1, 0, min, max, trim);
+  }
+
+  /**
+   * Clamps the specified value within the given range
+   *
+   * @param value the value
+   * @param min   the minimum value
+   * @param max   the maximum value
+   * @return the clamped value
+   */
+  private static long clamp(final long value, final long min, final long max) {
+    return Math.min(Math.max(value, min), max);
+  }
+}
@@ -0,0 +1,538 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * An on-disk cache of the parsed subtitle tracks, which allows the same
+ * subtitle file to be fixed over and over without parsing its text again.
+ * <p>
+ * Each track is stored in a compact binary file, within the cache directory,
+ * with the charset and the columns of the track (start times, end times and
+ * text lengths) followed by the text of all the entries. The cached track is keyed by the
+ * path, size, modification time and CRC32 checksum of the subtitle file, as
+ * well as the charset it was decoded with, and is discarded as soon as any of
+ * those no longer match. The cache files are loaded with a single mapped read.
+ * <p>
+ * The cache directory is bounded in size: whenever a track is stored, the least
+ * recently used cache files are evicted until the directory fits its maximum
+ * size. A cache hit refreshes the modification time of the cache file, which is
+ * what determines its usage recency.
+ * <p>
+ * The cache never fails the loading of a track: unreadable, corrupt or stale
+ * cache files are simply loaded from the source again.
+ *
+ * @author david
+ */
+public final class TrackCache {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the magic number and version of the cache file format
+  private static final int MAGIC = 0x53554246;
+  private static final int VERSION = 2;
+  // the extension of the cache files
+  private static final String EXTENSION = ".track";
+  // the size of the I/O buffers
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // the size of the windows used to checksum the subtitle files
+  private static final int CHECKSUM_WINDOW = 64 * 1024 * 1024;
+
+  /**
+   * The loader of the subtitle tracks which are not cached
+   */
+  @FunctionalInterface
+  public interface TrackLoader {
+
+    /**
+     * Loads the track of the specified subtitle file
+     *
+     * @param subtitleFile the subtitle file path
+     * @return the subtitle track
+     * @throws IOException if an error occurs while reading the source file
+     */
+    SubtitleTrack load(String subtitleFile) throws IOException;
+  }
+
+  // the cache directory
+  private final Path directory;
+  // the maximum size of the cache directory, in bytes
+  private final long maxBytes;
+  // the charset of the subtitle files
+  private final Charset charset;
+
+  /**
+   * Creates a cache at the specified directory
+   *
+   * @param directory the cache directory, which is created if needed
+   * @param maxBytes  the maximum size of the cache directory, in bytes
+   * @param charset   the charset of the subtitle files
+   */
+  public TrackCache(final Path directory, final long maxBytes, final Charset charset) {
+    this.directory = Objects.requireNonNull(directory, "directory");
+    this.maxBytes = maxBytes;
+    this.charset = Objects.requireNonNull(charset, "charset");
+  }
+
+  /**
+   * Loads the track of the specified subtitle file from the cache or, if not
+   * cached or stale, with the given loader, storing the loaded track in the
+   * cache.
+   *
+   * @param subtitleFile the subtitle file path
+   * @param loader       the loader of the tracks which are not cached
+   * @return the subtitle track
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public SubtitleTrack load(final String subtitleFile, final TrackLoader loader)
+      throws IOException {
+    final Path source = Paths.get(subtitleFile).toAbsolutePath().normalize();
+    final Key key = key(source);
+    final Path cacheFile = directory.resolve(fileName(key.path));
+
+    final SubtitleTrack cached = read(cacheFile, key);
+    if (cached != null) {
+      Metrics.getInstance().add(Counter.CACHE_HITS, 1);
+      return cached;
+    }
+
+    Metrics.getInstance().add(Counter.CACHE_MISSES, 1);
+    final SubtitleTrack track = loader.load(subtitleFile);
+    // only cache the track if the source was not modified while being loaded
+    if (key.matches(attributes(source))) {
+      write(cacheFile, key, track);
+    }
+    return track;
+  }
+
+  /**
+   * Reads the cached track from the specified cache file, if it matches the
+   * given key
+   *
+   * @param cacheFile the cache file
+   * @param key       the key of the subtitle file
+   * @return the cached track or {@code null} if not cached or stale
+   */
+  private SubtitleTrack read(final Path cacheFile, final Key key) {
+    try (final FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return null;
+      }
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !key.equals(readKey(buffer))) {
+        LOGGER.fine(() -> "stale cache file " + cacheFile);
+        return null;
+      }
+
+      // read the source charset, the columns and the text
+      final String charsetName = readString(buffer);
+      final int entries = readCount(buffer, 3 * Integer.BYTES);
+      if (entries < 0) {
+        LOGGER.fine(() -> "stale cache file " + cacheFile);
+        return null;
+      }
+      final int[] startMillis = new int[entries];
+      final int[] endMillis = new int[entries];
+      final int[] textLengths = new int[entries];
+      final IntBuffer columns = buffer.asIntBuffer();
+      columns.get(startMillis).get(endMillis).get(textLengths);
+      buffer.position(buffer.position() + columns.position() * Integer.BYTES);
+      final CharBuffer text = buffer.asCharBuffer();
+      if (!fits(textLengths, text.remaining())) {
+        LOGGER.fine(() -> "stale cache file " + cacheFile);
+        return null;
+      }
+
+      final SubtitleTrack.Builder track = new SubtitleTrack.Builder(TextPool.getDefault());
+      track.setCharset(charsetName.isEmpty() ? null : Charset.forName(charsetName));
+      for (int i = 0; i < entries; i++) {
+        track.add(startMillis[i], endMillis[i], text, textLengths[i]);
+      }
+
+      // refresh the usage recency of the cache file
+      Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+      Metrics.getInstance().add(Counter.BYTES_READ, size);
+      return track.build();
+    } catch (final NoSuchFileException e) {
+      return null;
+    } catch (final IOException | BufferUnderflowException | IllegalArgumentException e) {
+      LOGGER.log(Level.WARNING, "unable to read cache file " + cacheFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the specified track to the cache, evicting the least recently used
+   * cache files if needed
+   *
+   * @param cacheFile the cache file
+   * @param key       the key of the subtitle file
+   * @param track     the subtitle track
+   */
+  private void write(final Path cacheFile, final Key key, final SubtitleTrack track) {
+    Path temporary = null;
+    try {
+      Files.createDirectories(directory);
+      temporary = Files.createTempFile(directory, "track", ".tmp");
+      try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        writeKey(buffer, key);
+        writeString(buffer, track.getCharset().map(Charset::name).orElse(""));
+        buffer.putInt(track.size());
+        for (int i = 0; i < track.size(); i++) {
+          ensure(channel, buffer, Integer.BYTES).putInt(track.getStartMillis(i));
+        }
+        for (int i = 0; i < track.size(); i++) {
+          ensure(channel, buffer, Integer.BYTES).putInt(track.getEndMillis(i));
+        }
+        for (int i = 0; i < track.size(); i++) {
+          ensure(channel, buffer, Integer.BYTES).putInt(track.getTextLength(i));
+        }
+        char[] text = new char[0];
+        for (int i = 0; i < track.size(); i++) {
+          final int length = track.getTextLength(i);
+          if (text.length < length) {
+            text = new char[length];
+          }
+          track.getTextChars(i, text, 0);
+          for (int c = 0; c < length; c++) {
+            ensure(channel, buffer, Character.BYTES).putChar(text[c]);
+          }
+        }
+        flush(channel, buffer);
+      }
+      Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      evict();
+    } catch (final IOException e) {
+      LOGGER.log(Level.WARNING, "unable to write cache file " + cacheFile, e);
+      if (temporary != null) {
+        try {
+          Files.deleteIfExists(temporary);
+        } catch (final IOException ignored) {
+          // nothing else to be done
+        }
+      }
+    }
+  }
+
+  /**
+   * Evicts the least recently used cache files until the cache directory fits
+   * its maximum size
+   *
+   * @throws IOException if an error occurs while listing the cache directory
+   */
+  private void evict() throws IOException {
+    final Map<Path, BasicFileAttributes> files = new HashMap<>();
+    long total = 0;
+    try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+        "*" + EXTENSION)) {
+      for (final Path file : stream) {
+        try {
+          final BasicFileAttributes fileAttributes = attributes(file);
+          files.put(file, fileAttributes);
+          total += fileAttributes.size();
+        } catch (final NoSuchFileException e) {
+          // concurrently evicted
+        }
+      }
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+
+    final List<Path> byRecency = new ArrayList<>(files.keySet());
+    byRecency.sort(Comparator.comparing(file -> files.get(file).lastModifiedTime()));
+    for (int i = 0; i < byRecency.size() && total > maxBytes; i++) {
+      final Path file = byRecency.get(i);
+      if (Files.deleteIfExists(file)) {
+        LOGGER.fine(() -> "evicted cache file " + file);
+      }
+      total -= files.get(file).size();
+    }
+  }
+
+  /**
+   * Computes the key of the specified subtitle file
+   *
+   * @param source the subtitle file path
+   * @return the key
+   * @throws IOException if an error occurs while reading the source file
+   */
+  private Key key(final Path source) throws IOException {
+    final BasicFileAttributes attributes = attributes(source);
+    final CRC32 checksum = new CRC32();
+    try (final FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      for (long position = 0; position < size; position += CHECKSUM_WINDOW) {
+        checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(CHECKSUM_WINDOW, size - position)));
+      }
+    }
+    return new Key(source.toString(), charset.name(), attributes.size(),
+        attributes.lastModifiedTime().toMillis(), checksum.getValue());
+  }
+
+  /**
+   * Reads the key stored at the specified buffer
+   *
+   * @param buffer the buffer
+   * @return the key
+   */
+  private static Key readKey(final ByteBuffer buffer) {
+    return new Key(readString(buffer), readString(buffer), buffer.getLong(), buffer.getLong(),
+        buffer.getLong());
+  }
+
+  /**
+   * Writes the specified key at the given buffer
+   *
+   * @param buffer the buffer
+   * @param key    the key
+   */
+  private static void writeKey(final ByteBuffer buffer, final Key key) {
+    writeString(buffer, key.path);
+    writeString(buffer, key.charset);
+    buffer.putLong(key.size).putLong(key.lastModified).putLong(key.checksum);
+  }
+
+  /**
+   * Reads the number of elements, with the specified size, which follow it at
+   * the given buffer, before anything is allocated for them
+   *
+   * @param buffer      the buffer
+   * @param elementSize the size of each element, in bytes
+   * @return the number of elements or {@code -1} if they don't fit within the
+   * remaining bytes of the buffer
+   */
+  private static int readCount(final ByteBuffer buffer, final int elementSize) {
+    final int count = buffer.getInt();
+    return count >= 0 && count <= buffer.remaining() / elementSize ? count : -1;
+  }
+
+  /**
+   * Checks whether or not the specified text lengths add up exactly to the
+   * given number of characters
+   *
+   * @param textLengths the text lengths
+   * @param chars       the number of characters
+   * @return {@code true} if the lengths match the characters, {@code false}
+   * otherwise
+   */
+  private static boolean fits(final int[] textLengths, final int chars) {
+    long total = 0;
+    for (final int length : textLengths) {
+      if (length < 0) {
+        return false;
+      }
+      total += length;
+    }
+    return total == chars;
+  }
+
+  /**
+   * Reads a string, prefixed with its length, from the specified buffer
+   *
+   * @param buffer the buffer
+   * @return the string
+   * @throws BufferUnderflowException if the string exceeds the buffer
+   */
+  private static String readString(final ByteBuffer buffer) {
+    final int length = readCount(buffer, Byte.BYTES);
+    if (length < 0) {
+      throw new BufferUnderflowException();
+    }
+    final byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the specified string, prefixed with its length, at the given buffer
+   *
+   * @param buffer the buffer
+   * @param string the string
+   */
+  private static void writeString(final ByteBuffer buffer, final String string) {
+    final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > buffer.remaining() - Integer.BYTES - 3 * Long.BYTES) {
+      throw new IllegalArgumentException("path is too long to be cached: " + string);
+    }
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  /**
+   * Ensures that the specified buffer has room for the given number of bytes,
+   * flushing it to the channel if needed
+   *
+   * @param channel the channel
+   * @param buffer  the buffer
+   * @param bytes   the number of bytes
+   * @return the buffer
+   * @throws IOException if an error occurs while writing to the channel
+   */
+  private static ByteBuffer ensure(final FileChannel channel, final ByteBuffer buffer,
+      final int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush(channel, buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * Writes all of the buffered bytes to the specified channel
+   *
+   * @param channel the channel
+   * @param buffer  the buffer
+   * @throws IOException if an error occurs while writing to the channel
+   */
+  private static void flush(final FileChannel channel, final ByteBuffer buffer)
+      throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Reads the basic attributes of the specified file
+   *
+   * @param file the file
+   * @return the file attributes
+   * @throws IOException if an error occurs while reading the attributes
+   */
+  private static BasicFileAttributes attributes(final Path file) throws IOException {
+    return Files.readAttributes(file, BasicFileAttributes.class);
+  }
+
+  /**
+   * Returns the name of the cache file for the specified subtitle file path
+   *
+   * @param path the subtitle file path
+   * @return the cache file name
+   */
+  private static String fileName(final String path) {
+    final CRC32 checksum = new CRC32();
+    checksum.update(path.getBytes(StandardCharsets.UTF_8));
+    return String.format("%08x%08x%s", checksum.getValue(), path.hashCode(), EXTENSION);
+  }
+
+  // the identity of a subtitle file
+  private static final class Key {
+
+    // the absolute path and the charset the file is decoded with
+    private final String path;
+    private final String charset;
+    // the size, modification time and checksum of the file contents
+    private final long size;
+    private final long lastModified;
+    private final long checksum;
+
+    /**
+     * Creates the key of a subtitle file
+     *
+     * @param path         the absolute path of the file
+     * @param charset      the charset of the file
+     * @param size         the size of the file
+     * @param lastModified the modification time of the file
+     * @param checksum     the checksum of the file contents
+     */
+    private Key(final String path, final String charset, final long size,
+        final long lastModified, final long checksum) {
+      this.path = path;
+      this.charset = charset;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.checksum = checksum;
+    }
+
+    /**
+     * Checks whether or not the specified attributes still match the ones of
+     * this key
+     *
+     * @param attributes the current attributes of the file
+     * @return {@code true} if matching, {@code false} otherwise
+     */
+    private boolean matches(final BasicFileAttributes attributes) {
+      return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) o;
+      return size == key.size && lastModified == key.lastModified && checksum == key.checksum &&
+          path.equals(key.path) && charset.equals(key.charset);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, charset, size, lastModified, checksum);
+    }
+  }
+}
@@ -30,6 +30,8 @@ import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import pt.davidafsilva.subfixer.load.Diagnostic.Issue;
+
 import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
 
 /**
@@ -43,6 +45,9 @@ final class ValidateEntryIndexLineConsumer implements BiConsumer<LoadContext, St
   // the logger
   private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
+  // the maximum number of digits of an index parsed leniently
+  private static final int MAX_INDEX_DIGITS = 9;
+
   @Override
   public void accept(final LoadContext loadContext, final String line) {
     if (line.isEmpty()) {
@@ -50,18 +55,96 @@ final class ValidateEntryIndexLineConsumer implements BiConsumer<LoadContext, St
       return;
     }
 
+    if (loadContext.isLenient()) {
+      acceptLeniently(loadContext, line);
+      return;
+    }
+
     // first entry line, let's check if we have our entry index
+    validateIndex(line, loadContext.getLoadedEntriesCount());
+
+    // jump to the next state
+    loadContext.getCurrentEntryLoadContext().nextState();
+  }
+
+  /**
+   * Consumes the first (non-empty) line of the entry being leniently loaded,
+   * which is either its index, its time frame, when the index is missing, or a
+   * line to be skipped up to the next entry
+   *
+   * @param loadContext the load context
+   * @param line        the line
+   */
+  private static void acceptLeniently(final LoadContext loadContext, final String line) {
+    final EntryLoadContext entry = loadContext.getCurrentEntryLoadContext();
+    final int index = parseIndex(line, 0, line.length());
+    if (index >= 0) {
+      // the entries are renumbered anyway
+      if (index != loadContext.getLoadedEntriesCount() + 1) {
+        loadContext.report(Issue.UNEXPECTED_INDEX);
+      }
+      loadContext.setResyncing(false);
+      entry.nextState();
+      return;
+    }
+
+    final long timeFrame = EntryTimeFrameLineConsumer.tryParse(line);
+    if (timeFrame != TimeFrameParser.INVALID) {
+      // resync on the time frame of the entry
+      loadContext.report(Issue.MISSING_INDEX);
+      loadContext.setResyncing(false);
+      entry.nextState();
+      entry.setTimeFrame(TimeFrameParser.startMillis(timeFrame),
+          TimeFrameParser.endMillis(timeFrame));
+      entry.nextState();
+    } else if (!loadContext.isResyncing()) {
+      // a single issue for all of the skipped lines
+      loadContext.report(Issue.UNEXPECTED_LINE);
+      loadContext.setResyncing(true);
+    }
+  }
+
+  /**
+   * Parses the entry index within the specified range of characters, without
+   * failing for anything else
+   *
+   * @param chars the characters
+   * @param from  the start of the range (inclusive)
+   * @param to    the end of the range (exclusive)
+   * @return the index or {@code -1} if the range doesn't contain an index
+   */
+  static int parseIndex(final CharSequence chars, final int from, final int to) {
+    if (from == to || to - from > MAX_INDEX_DIGITS) {
+      return -1;
+    }
+    int index = 0;
+    for (int i = from; i < to; i++) {
+      final char c = chars.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      index = index * 10 + c - '0';
+    }
+    return index;
+  }
+
+  /**
+   * Validates that the specified line contains the index of the entry that
+   * follows the already loaded ones.
+   *
+   * @param line          the (non-empty) index line
+   * @param loadedEntries the number of entries loaded so far
+   * @throws IllegalStateException if the line does not contain the expected index
+   */
+  static void validateIndex(final String line, final int loadedEntries) {
     try {
-      if (loadContext.getLoadedEntries().size() + 1 != Integer.parseInt(line)) {
+      if (loadedEntries + 1 != Integer.parseInt(line)) {
         final RuntimeException e = new IllegalStateException("unable to load subtitle file: " +
-            "expected entry " + loadContext.getLoadedEntries().size() + 1 +
+            "expected entry " + loadedEntries + 1 +
             ", got " + line);
         LOGGER.log(Level.SEVERE, "unexpected subtitle entry header sequence", e);
         throw e;
       }
-
-      // jump to the next state
-      loadContext.getCurrentEntryLoadContext().nextState();
     } catch (final NumberFormatException e) {
       // houston, we've a problem?
       final RuntimeException e2 = new IllegalStateException("unable to load subtitle file: " +
@@ -0,0 +1,302 @@
+package pt.davidafsilva.subfixer.metrics;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * The pipeline metrics: the amount of data that was read, parsed and written,
+ * the time spent on each stage of the pipeline and the errors by type.
+ * <p>
+ * The metrics are recorded with {@link LongAdder adders}, which are cheap to
+ * update concurrently, and are meant to be updated once per file or stage,
+ * rather than once per line or entry. They can be exposed through JMX and
+ * reported at the end of the run.
+ *
+ * @author david
+ */
+public final class Metrics implements MetricsMXBean {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the name of the management bean
+  public static final String OBJECT_NAME = "pt.davidafsilva.subfixer:type=Metrics";
+
+  // the number of nanoseconds within a millisecond
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * The recorded counters
+   */
+  public enum Counter {
+    LINES_READ, BYTES_READ, BYTES_WRITTEN, ENTRIES_PARSED, ENTRIES_SHIFTED, ENTRIES_PRINTED,
+    CACHE_HITS, CACHE_MISSES, TEXT_BYTES_SAVED, ISSUES_REPAIRED
+  }
+
+  /**
+   * The timed stages of the pipeline
+   */
+  public enum Stage {
+    LOAD, DELAY, PRINT, SHIFT, STREAM, FOLLOW, PIPELINE
+  }
+
+  // the counters
+  private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+  // the time (in nanoseconds) and number of executions of the stages
+  private final Map<Stage, LongAdder> stageNanos = new EnumMap<>(Stage.class);
+  private final Map<Stage, LongAdder> stageCounts = new EnumMap<>(Stage.class);
+  // the errors by type
+  private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+  // private constructor
+  private Metrics() {
+    for (final Counter counter : Counter.values()) {
+      counters.put(counter, new LongAdder());
+    }
+    for (final Stage stage : Stage.values()) {
+      stageNanos.put(stage, new LongAdder());
+      stageCounts.put(stage, new LongAdder());
+    }
+  }
+
+  /**
+   * Returns the singleton instance of the metrics
+   *
+   * @return the metrics instance
+   */
+  public static Metrics getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Adds the specified amount to the given counter
+   *
+   * @param counter the counter
+   * @param amount  the amount to add
+   */
+  public void add(final Counter counter, final long amount) {
+    counters.get(counter).add(amount);
+  }
+
+  /**
+   * Returns the current value of the specified counter
+   *
+   * @param counter the counter
+   * @return the counter value
+   */
+  public long get(final Counter counter) {
+    return counters.get(counter).sum();
+  }
+
+  /**
+   * Returns the current time, to be used as the start time of a stage
+   *
+   * @return the current time, in nanoseconds
+   * @see #record(Stage, long)
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records an execution of the specified stage, which started at the given
+   * time
+   *
+   * @param stage      the stage
+   * @param startNanos the start time of the stage, as returned by {@link #start()}
+   */
+  public void record(final Stage stage, final long startNanos) {
+    stageNanos.get(stage).add(System.nanoTime() - startNanos);
+    stageCounts.get(stage).increment();
+  }
+
+  /**
+   * Records the specified error, by the type of its underlying cause
+   *
+   * @param error the error
+   */
+  public void error(final Throwable error) {
+    final Throwable cause = error.getCause() == null ? error : error.getCause();
+    errors.computeIfAbsent(cause.getClass().getSimpleName(), t -> new LongAdder()).increment();
+  }
+
+  /**
+   * Registers the metrics on the platform management server, if not registered
+   * yet
+   */
+  public void register() {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+    } catch (final JMException e) {
+      LOGGER.log(Level.SEVERE, "unable to register the metrics", e);
+    }
+  }
+
+  /**
+   * Creates the human readable report of the metrics
+   *
+   * @return the metrics report
+   */
+  public String report() {
+    final StringBuilder report = new StringBuilder("metrics:").append(System.lineSeparator());
+    for (final Counter counter : Counter.values()) {
+      report.append(String.format("  %-16s %d%n", name(counter), get(counter)));
+    }
+    for (final Stage stage : Stage.values()) {
+      final long count = stageCounts.get(stage).sum();
+      if (count > 0) {
+        report.append(String.format("  %-16s %.3f ms (%d runs)%n", name(stage),
+            (double) stageNanos.get(stage).sum() / NANOS_PER_MILLI, count));
+      }
+    }
+    final Map<String, Long> errorsByType = getErrors();
+    if (!errorsByType.isEmpty()) {
+      report.append("  errors").append(System.lineSeparator());
+      errorsByType.forEach((type, count) ->
+          report.append(String.format("    %s: %d%n", type, count)));
+    }
+    return report.toString();
+  }
+
+  @Override
+  public long getLinesRead() {
+    return get(Counter.LINES_READ);
+  }
+
+  @Override
+  public long getBytesRead() {
+    return get(Counter.BYTES_READ);
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return get(Counter.BYTES_WRITTEN);
+  }
+
+  @Override
+  public long getEntriesParsed() {
+    return get(Counter.ENTRIES_PARSED);
+  }
+
+  @Override
+  public long getEntriesShifted() {
+    return get(Counter.ENTRIES_SHIFTED);
+  }
+
+  @Override
+  public long getEntriesPrinted() {
+    return get(Counter.ENTRIES_PRINTED);
+  }
+
+  @Override
+  public long getCacheHits() {
+    return get(Counter.CACHE_HITS);
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return get(Counter.CACHE_MISSES);
+  }
+
+  @Override
+  public long getTextBytesSaved() {
+    return get(Counter.TEXT_BYTES_SAVED);
+  }
+
+  @Override
+  public long getIssuesRepaired() {
+    return get(Counter.ISSUES_REPAIRED);
+  }
+
+  @Override
+  public Map<String, Long> getStageTimes() {
+    final Map<String, Long> times = new TreeMap<>();
+    stageNanos.forEach((stage, nanos) -> times.put(name(stage), nanos.sum() / NANOS_PER_MILLI));
+    return Collections.unmodifiableMap(times);
+  }
+
+  @Override
+  public Map<String, Long> getStageCounts() {
+    final Map<String, Long> counts = new TreeMap<>();
+    stageCounts.forEach((stage, count) -> counts.put(name(stage), count.sum()));
+    return Collections.unmodifiableMap(counts);
+  }
+
+  @Override
+  public Map<String, Long> getErrors() {
+    final Map<String, Long> byType = new TreeMap<>();
+    errors.forEach((type, count) -> byType.put(type, count.sum()));
+    return Collections.unmodifiableMap(byType);
+  }
+
+  @Override
+  public void reset() {
+    counters.values().forEach(LongAdder::reset);
+    stageNanos.values().forEach(LongAdder::reset);
+    stageCounts.values().forEach(LongAdder::reset);
+    errors.clear();
+  }
+
+  /**
+   * Returns the display name of the specified constant
+   *
+   * @param constant the enum constant
+   * @return the display name
+   */
+  private static String name(final Enum<?> constant) {
+    return constant.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+  }
+
+  // the singleton holder entity
+  private static final class Holder {
+
+    // the instance of the metrics
+    private static final Metrics INSTANCE = new Metrics();
+  }
+}
@@ -0,0 +1,134 @@
+package pt.davidafsilva.subfixer.metrics;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Map;
+
+/**
+ * The management interface of the pipeline {@link Metrics metrics}.
+ *
+ * @author david
+ */
+public interface MetricsMXBean {
+
+  /**
+   * Returns the number of lines read from the subtitle files
+   *
+   * @return the number of lines
+   */
+  long getLinesRead();
+
+  /**
+   * Returns the number of bytes read from the subtitle files
+   *
+   * @return the number of bytes
+   */
+  long getBytesRead();
+
+  /**
+   * Returns the number of bytes written to the outputs
+   *
+   * @return the number of bytes
+   */
+  long getBytesWritten();
+
+  /**
+   * Returns the number of parsed entries
+   *
+   * @return the number of entries
+   */
+  long getEntriesParsed();
+
+  /**
+   * Returns the number of shifted entries
+   *
+   * @return the number of entries
+   */
+  long getEntriesShifted();
+
+  /**
+   * Returns the number of printed entries
+   *
+   * @return the number of entries
+   */
+  long getEntriesPrinted();
+
+  /**
+   * Returns the number of tracks loaded from the parse cache
+   *
+   * @return the number of cache hits
+   */
+  long getCacheHits();
+
+  /**
+   * Returns the number of tracks which were not cached, or were stale
+   *
+   * @return the number of cache misses
+   */
+  long getCacheMisses();
+
+  /**
+   * Returns the number of bytes of text saved by sharing the repeated texts
+   * through the text pool
+   *
+   * @return the number of bytes
+   */
+  long getTextBytesSaved();
+
+  /**
+   * Returns the number of issues repaired while leniently loading the entries
+   *
+   * @return the number of issues
+   */
+  long getIssuesRepaired();
+
+  /**
+   * Returns the accumulated time of each pipeline stage, in milliseconds
+   *
+   * @return the time of each stage
+   */
+  Map<String, Long> getStageTimes();
+
+  /**
+   * Returns the number of executions of each pipeline stage
+   *
+   * @return the executions of each stage
+   */
+  Map<String, Long> getStageCounts();
+
+  /**
+   * Returns the number of errors by type
+   *
+   * @return the errors by type
+   */
+  Map<String, Long> getErrors();
+
+  /**
+   * Resets all of the metrics
+   */
+  void reset();
+}
@@ -0,0 +1,252 @@
+package pt.davidafsilva.subfixer.server;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.davidafsilva.subfixer.command.CommandExecutionException;
+import pt.davidafsilva.subfixer.command.CommandExecutor;
+import pt.davidafsilva.subfixer.command.FixSubtitleContentCommand;
+import pt.davidafsilva.subfixer.metrics.Metrics;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static pt.davidafsilva.subfixer.config.Configuration.CHARSET;
+import static pt.davidafsilva.subfixer.config.Configuration.LOGGER_NAME;
+
+/**
+ * The handler of the fix requests: a {@code POST} with the subtitle content as
+ * the request body and the delay pattern as the {@code delay} query parameter,
+ * answered with the fixed subtitle content.
+ * <p>
+ * The handler runs on the server dispatcher thread, which only hands the
+ * request over to the workers executor. Requests which can't be accepted by
+ * the executor are immediately rejected with a {@code 503} status. The requests
+ * refused by the dispatcher are answered without a body and their connection
+ * is closed, as their own body is never read.
+ *
+ * @author david
+ */
+final class FixHandler implements HttpHandler {
+
+  // the logger
+  private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+  // the maximum size of the subtitle content
+  static final int MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+
+  // the status codes
+  static final int OK = 200;
+  private static final int BAD_REQUEST = 400;
+  private static final int METHOD_NOT_ALLOWED = 405;
+  private static final int PAYLOAD_TOO_LARGE = 413;
+  private static final int UNPROCESSABLE_ENTITY = 422;
+  private static final int INTERNAL_ERROR = 500;
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  // the delay query parameter
+  private static final String DELAY_PARAMETER = "delay=";
+  // the content type of the responses
+  private static final String TEXT_CONTENT_TYPE = "text/plain; charset=";
+
+  // the workers executor
+  private final Executor workers;
+  // the latencies of the handled requests
+  private final LatencyRecorder latencies;
+  // the number of rejected requests
+  private final LongAdder rejected;
+
+  /**
+   * Creates the handler
+   *
+   * @param workers   the workers executor
+   * @param latencies the latencies of the handled requests
+   * @param rejected  the number of rejected requests
+   */
+  FixHandler(final Executor workers, final LatencyRecorder latencies, final LongAdder rejected) {
+    this.workers = workers;
+    this.latencies = latencies;
+    this.rejected = rejected;
+  }
+
+  @Override
+  public void handle(final HttpExchange exchange) throws IOException {
+    final long start = System.nanoTime();
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      refuse(exchange, METHOD_NOT_ALLOWED);
+      return;
+    }
+    final String delay = delay(exchange.getRequestURI().getRawQuery());
+    if (delay == null) {
+      refuse(exchange, BAD_REQUEST);
+      return;
+    }
+
+    try {
+      workers.execute(() -> fix(exchange, delay, start));
+    } catch (final RejectedExecutionException e) {
+      rejected.increment();
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      refuse(exchange, SERVICE_UNAVAILABLE);
+    }
+  }
+
+  /**
+   * Refuses the request on the dispatcher thread, with a response without a
+   * body. Sending a body would make the server drain the request body, which
+   * blocks the dispatcher until a slow client sends it, hence the connection
+   * is closed instead.
+   *
+   * @param exchange the request exchange
+   * @param status   the response status
+   * @throws IOException if an error occurs while sending the response
+   */
+  private static void refuse(final HttpExchange exchange, final int status) throws IOException {
+    exchange.getResponseHeaders().set("Connection", "close");
+    exchange.sendResponseHeaders(status, -1);
+    exchange.close();
+  }
+
+  /**
+   * Fixes the subtitle content of the request
+   *
+   * @param exchange the request exchange
+   * @param delay    the delay pattern
+   * @param start    the time at which the request was received, in nanoseconds
+   */
+  private void fix(final HttpExchange exchange, final String delay, final long start) {
+    try {
+      final byte[] content = read(exchange.getRequestBody());
+      if (content == null) {
+        respond(exchange, PAYLOAD_TOO_LARGE, "the subtitle content is too large");
+        return;
+      }
+      Metrics.getInstance().add(Counter.BYTES_READ, content.length);
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+      try {
+        CommandExecutor.getInstance().execute(new FixSubtitleContentCommand(delay, out),
+            new ByteArrayInputStream(content));
+      } catch (final CommandExecutionException e) {
+        Metrics.getInstance().error(e);
+        respond(exchange, UNPROCESSABLE_ENTITY, e.getLocalizedMessage());
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", TEXT_CONTENT_TYPE + CHARSET.name());
+      exchange.sendResponseHeaders(OK, out.size());
+      try (final OutputStream body = exchange.getResponseBody()) {
+        out.writeTo(body);
+      }
+    } catch (final IOException | RuntimeException e) {
+      LOGGER.log(Level.SEVERE, "unable to handle the fix request", e);
+      Metrics.getInstance().error(e);
+      try {
+        respond(exchange, INTERNAL_ERROR, "unexpected error: " + e.getLocalizedMessage());
+      } catch (final IOException | RuntimeException suppressed) {
+        LOGGER.log(Level.SEVERE, "unable to send the error response", suppressed);
+      }
+    } finally {
+      exchange.close();
+      latencies.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Reads all of the request body, up to the maximum content length
+   *
+   * @param in the request body
+   * @return the request body or {@code null} if it's too large
+   * @throws IOException if an error occurs while reading the body
+   */
+  private static byte[] read(final InputStream in) throws IOException {
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      if (content.size() + read > MAX_CONTENT_LENGTH) {
+        return null;
+      }
+      content.write(buffer, 0, read);
+    }
+    return content.toByteArray();
+  }
+
+  /**
+   * Extracts the delay pattern from the specified query
+   *
+   * @param query the raw request query
+   * @return the delay pattern or {@code null} if not specified
+   */
+  private static String delay(final String query) {
+    if (query == null) {
+      return null;
+    }
+    for (final String parameter : query.split("&")) {
+      if (parameter.startsWith(DELAY_PARAMETER) && parameter.length() > DELAY_PARAMETER.length()) {
+        try {
+          return URLDecoder.decode(parameter.substring(DELAY_PARAMETER.length()),
+              StandardCharsets.UTF_8.name());
+        } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sends a plain text response, closing the exchange
+   *
+   * @param exchange the request exchange
+   * @param status   the response status
+   * @param message  the response message
+   * @throws IOException if an error occurs while sending the response
+   */
+  static void respond(final HttpExchange exchange, final int status, final String message)
+      throws IOException {
+    final byte[] body = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", TEXT_CONTENT_TYPE + "UTF-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (final OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package pt.davidafsilva.subfixer.server;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A recorder of the request latencies, which keeps a sliding window with the
+ * latencies of the most recent requests, from which the percentiles are
+ * computed on demand.
+ *
+ * @author david
+ */
+final class LatencyRecorder {
+
+  // the default size of the sliding window
+  static final int DEFAULT_WINDOW_SIZE = 8192;
+
+  // the reported percentiles
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+  // the number of nanoseconds within a millisecond
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  // the latencies window, in nanoseconds
+  private final long[] window;
+  // the total number of recorded latencies
+  private long count;
+
+  /**
+   * Creates a recorder with the default window size
+   */
+  LatencyRecorder() {
+    this(DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Creates a recorder with the specified window size
+   *
+   * @param windowSize the size of the sliding window
+   */
+  LatencyRecorder(final int windowSize) {
+    this.window = new long[windowSize];
+  }
+
+  /**
+   * Records the latency of a request
+   *
+   * @param nanos the latency, in nanoseconds
+   */
+  synchronized void record(final long nanos) {
+    window[(int) (count++ % window.length)] = nanos;
+  }
+
+  /**
+   * Returns the total number of recorded latencies
+   *
+   * @return the number of latencies
+   */
+  synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Creates the human readable report of the latencies
+   *
+   * @return the latencies report
+   */
+  String report() {
+    final long[] sorted = sorted();
+    final StringBuilder report = new StringBuilder(String.format(
+        "latency (last %d of %d requests):%n", sorted.length, getCount()));
+    for (final double percentile : PERCENTILES) {
+      report.append(String.format("  p%-15s %.3f ms%n", format(percentile),
+          percentile(sorted, percentile) / NANOS_PER_MILLI));
+    }
+    report.append(String.format("  %-16s %.3f ms%n", "max",
+        percentile(sorted, 100) / NANOS_PER_MILLI));
+    return report.toString();
+  }
+
+  /**
+   * Returns a sorted copy of the latencies within the window
+   *
+   * @return the sorted latencies
+   */
+  private synchronized long[] sorted() {
+    final long[] sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Returns the specified percentile of the sorted latencies, with the nearest
+   * rank method
+   *
+   * @param sorted     the sorted latencies
+   * @param percentile the percentile
+   * @return the latency, or {@code 0} if there's none
+   */
+  private static long percentile(final long[] sorted, final double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+  }
+
+  /**
+   * Formats the specified percentile, without trailing zeros
+   *
+   * @param percentile the percentile
+   * @return the formatted percentile
+   */
+  private static String format(final double percentile) {
+    return percentile == Math.rint(percentile) ?
+        String.valueOf((long) percentile) : String.valueOf(percentile);
+  }
+}
@@ -0,0 +1,165 @@
+package pt.davidafsilva.subfixer.server;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.davidafsilva.subfixer.metrics.Metrics;
+
+/**
+ * A long running subtitle fixing server, which keeps the fix pipeline warm
+ * behind a local HTTP endpoint:
+ * <ul>
+ * <li>{@code POST /fix?delay=<delay pattern>} fixes the subtitle content of the
+ * request body</li>
+ * <li>{@code GET /stats} reports the latency percentiles and the pipeline
+ * metrics</li>
+ * </ul>
+ * The requests are fixed by a fixed number of workers, with a bounded queue of
+ * pending requests. Once the queue is full, the requests are rejected with a
+ * {@code 503} status.
+ *
+ * @author david
+ */
+public final class SubtitleServer {
+
+  // the request paths
+  static final String FIX_PATH = "/fix";
+  static final String STATS_PATH = "/stats";
+
+  // the http server
+  private final HttpServer server;
+  // the workers executor
+  private final ThreadPoolExecutor workers;
+  // the latencies of the fix requests
+  private final LatencyRecorder latencies = new LatencyRecorder();
+  // the number of rejected requests
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Creates the server, bound to the specified address
+   *
+   * @param address       the server address
+   * @param threads       the number of workers
+   * @param queueCapacity the capacity of the pending requests queue
+   * @throws IOException if the server can't be bound to the address
+   */
+  public SubtitleServer(final InetSocketAddress address, final int threads,
+      final int queueCapacity) throws IOException {
+    this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.server = HttpServer.create(address, 0);
+    server.createContext(FIX_PATH, new FixHandler(workers, latencies, rejected));
+    server.createContext(STATS_PATH, this::stats);
+    // the handlers run on the dispatcher thread, handing the work over to the workers
+    server.setExecutor(null);
+  }
+
+  /**
+   * Starts the server
+   */
+  public void start() {
+    workers.prestartAllCoreThreads();
+    server.start();
+  }
+
+  /**
+   * Stops the server, waiting up to the specified time for the requests being
+   * handled
+   *
+   * @param delay the maximum time to wait, in seconds
+   */
+  public void stop(final int delay) {
+    server.stop(delay);
+    workers.shutdown();
+    try {
+      workers.awaitTermination(delay, TimeUnit.SECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the address the server is bound to
+   *
+   * @return the server address
+   */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /**
+   * Creates the human readable report of the server statistics
+   *
+   * @return the statistics report
+   */
+  public String report() {
+    return latencies.report() +
+        String.format("  %-16s %d%n  %-16s %d%n", "rejected", rejected.sum(), "queued",
+            workers.getQueue().size()) +
+        Metrics.getInstance().report();
+  }
+
+  /**
+   * Handles the statistics requests
+   *
+   * @param exchange the request exchange
+   * @throws IOException if an error occurs while sending the response
+   */
+  private void stats(final HttpExchange exchange) throws IOException {
+    try {
+      FixHandler.respond(exchange, FixHandler.OK, report());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  // the factory of the worker threads
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    // the worker counter
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "subfixer-server-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -84,6 +84,11 @@ public final class ApplicationTest {
             Optional.of(Application.USAGE.replaceAll("%n", lineSeparator())),
             Optional.empty()
         },
+        {
+            new String[]{"--batch", "PT1m", "output"},
+            Optional.of(Application.USAGE.replaceAll("%n", lineSeparator())),
+            Optional.empty()
+        },
         {
             new String[]{"PT1m", subtitleFile("1entry_invalidIndex.srt")},
             Optional.of(String.format(Application.COMMAND_ERROR, "unable to load subtitle file: " +
@@ -0,0 +1,169 @@
+package pt.davidafsilva.subfixer.batch;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import pt.davidafsilva.subfixer.command.CommandExecutor;
+import pt.davidafsilva.subfixer.command.FixSubtitleCommand;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The batch processing unit tests, which fix the files of a temporary
+ * directory.
+ *
+ * @author david
+ */
+public final class BatchProcessorTest {
+
+  // the input and output directories
+  private Path root;
+  private Path input;
+  private Path output;
+  // the expected content of the fixed files
+  private byte[] fixed;
+
+  @Before
+  public void createFiles() throws IOException {
+    root = Files.createTempDirectory("batch");
+    input = Files.createDirectories(root.resolve("input"));
+    output = root.resolve("output");
+    final Path subtitle = Paths.get(BatchProcessorTest.class.getResource("/3entry.srt").getPath());
+    Files.copy(subtitle, input.resolve("a.srt"));
+    Files.copy(subtitle, Files.createDirectories(input.resolve("season")).resolve("b.srt"));
+    Files.write(input.resolve("season").resolve("broken.srt"),
+        "1\ninvalid time frame\ntext\n\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(input.resolve("notes.txt"), "not a subtitle".getBytes(StandardCharsets.UTF_8));
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    CommandExecutor.getInstance().execute(new FixSubtitleCommand("PT1S", expected),
+        subtitle.toString());
+    fixed = expected.toByteArray();
+  }
+
+  @After
+  public void deleteFiles() throws IOException {
+    try (final Stream<Path> files = Files.walk(root)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testDirectory() throws IOException {
+    final List<BatchResult> results = process(input.toString());
+
+    // every subtitle file is fixed into the same relative path, unless broken
+    assertEquals(Arrays.asList("a.srt", "season/b.srt", "season/broken.srt"), files(results));
+    assertTrue(results.get(0).isSuccess());
+    assertEquals(3, results.get(0).getEntries());
+    assertArrayEquals(fixed, Files.readAllBytes(output.resolve("a.srt")));
+    assertTrue(results.get(1).isSuccess());
+    assertArrayEquals(fixed, Files.readAllBytes(output.resolve("season").resolve("b.srt")));
+
+    // the broken file does not affect the other ones, nor is its output written
+    assertFalse(results.get(2).isSuccess());
+    assertTrue(results.get(2).getError().isPresent());
+    assertFalse(Files.exists(output.resolve("season").resolve("broken.srt")));
+  }
+
+  @Test
+  public void testGlob() throws IOException {
+    final List<BatchResult> results = process(input + "/season/b*.srt");
+
+    // the files are written relative to the directory preceding the glob
+    assertEquals(Arrays.asList("season/b.srt", "season/broken.srt"), files(results));
+    assertTrue(results.get(0).isSuccess());
+    assertFalse(results.get(1).isSuccess());
+    assertArrayEquals(fixed, Files.readAllBytes(output.resolve("b.srt")));
+    assertFalse(Files.exists(output.resolve("broken.srt")));
+  }
+
+  @Test
+  public void testMixedInputs() throws IOException {
+    final List<BatchResult> results = process(input.resolve("a.srt").toString(),
+        input + "/**/b*.srt");
+
+    // the results are ordered by file, whatever the order they were fixed in
+    assertEquals(Arrays.asList("a.srt", "season/b.srt", "season/broken.srt"), files(results));
+    assertEquals(2, results.stream().filter(BatchResult::isSuccess).count());
+    assertArrayEquals(fixed, Files.readAllBytes(output.resolve("a.srt")));
+    assertArrayEquals(fixed, Files.readAllBytes(output.resolve("season").resolve("b.srt")));
+  }
+
+  @Test
+  public void testGlobBase() {
+    assertEquals(0, BatchInputResolver.baseLength("*.srt", "/"));
+    assertEquals("shows/".length(), BatchInputResolver.baseLength("shows/**/*.srt", "/"));
+    assertEquals("C:\\shows\\".length(),
+        BatchInputResolver.baseLength("C:\\shows\\s?\\*.srt", "\\"));
+    assertEquals("C:\\shows/".length(),
+        BatchInputResolver.baseLength("C:\\shows/s?/*.srt", "\\"));
+  }
+
+  /**
+   * Processes the specified inputs, with two threads, into the output directory
+   *
+   * @param inputs the inputs
+   * @return the results
+   * @throws IOException if an error occurs while resolving the inputs
+   */
+  private List<BatchResult> process(final String... inputs) throws IOException {
+    return new BatchProcessor("PT1S", output, 2).process(Arrays.asList(inputs));
+  }
+
+  /**
+   * Returns the portable paths of the files of the specified results, relative
+   * to the input directory
+   *
+   * @param results the results
+   * @return the relative paths
+   */
+  private List<String> files(final List<BatchResult> results) {
+    return Collections.unmodifiableList(results.stream()
+        .map(result -> input.relativize(result.getFile()).toString().replace('\\', '/'))
+        .collect(Collectors.toList()));
+  }
+}
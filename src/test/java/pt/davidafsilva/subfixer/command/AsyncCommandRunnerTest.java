@@ -0,0 +1,136 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The asynchronous command execution unit tests.
+ *
+ * @author david
+ */
+public final class AsyncCommandRunnerTest {
+
+  @Test
+  public void testAsyncExecution() throws Exception {
+    final AtomicInteger completed = new AtomicInteger();
+    final CommandListener listener = new CommandListener() {
+      @Override
+      public void completed(final Function<?, ?> command, final Object input,
+          final long elapsedNanos, final Throwable failure) {
+        completed.incrementAndGet();
+      }
+    };
+    CommandExecutor.getInstance().addListener(listener);
+    try {
+      final String file = AsyncCommandRunnerTest.class.getResource("/3entry.srt").getPath();
+      final List<CompletableFuture<List<SubtitleEntry>>> futures =
+          CommandExecutor.getInstance().executeAllAsync(new LoadSubtitleEntriesCommand(),
+              Collections.nCopies(100, file));
+      for (final CompletableFuture<List<SubtitleEntry>> future : futures) {
+        assertEquals(3, future.get().size());
+      }
+      assertEquals(100, completed.get());
+
+      // a running command is interrupted once cancelled
+      final CountDownLatch running = new CountDownLatch(1);
+      final CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+      final CompletableFuture<Void> future = CommandExecutor.getInstance().executeAsync(
+          ignored -> {
+            running.countDown();
+            try {
+              Thread.sleep(60_000);
+              interrupted.complete(false);
+            } catch (final InterruptedException e) {
+              interrupted.complete(true);
+            }
+            return null;
+          }, null);
+      running.await();
+      future.cancel(true);
+      assertEquals(true, interrupted.get(10, TimeUnit.SECONDS));
+    } finally {
+      CommandExecutor.getInstance().removeListener(listener);
+    }
+  }
+
+  @Test
+  public void testInFlightLimit() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final AsyncCommandRunner runner = new AsyncCommandRunner(executor, 2);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger inFlight = new AtomicInteger();
+      final AtomicInteger maxInFlight = new AtomicInteger();
+      final Function<Integer, Integer> blocking = value -> {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          release.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        inFlight.decrementAndGet();
+        return value;
+      };
+      final CompletableFuture<Integer> first = runner.submit(blocking, 1);
+      final CompletableFuture<Integer> second = runner.submit(blocking, 2);
+
+      // the queued commands wait for a permit and, once cancelled, are never run
+      final AtomicInteger runs = new AtomicInteger();
+      final CompletableFuture<Integer> cancelled = runner.submit(value -> {
+        runs.incrementAndGet();
+        return value;
+      }, 3);
+      final CompletableFuture<Integer> queued = runner.submit(blocking, 4);
+      assertTrue(cancelled.cancel(true));
+      release.countDown();
+
+      assertEquals(1, (int) first.get(10, TimeUnit.SECONDS));
+      assertEquals(2, (int) second.get(10, TimeUnit.SECONDS));
+      assertEquals(4, (int) queued.get(10, TimeUnit.SECONDS));
+      assertEquals(0, runs.get());
+      assertTrue(maxInFlight.get() <= 2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
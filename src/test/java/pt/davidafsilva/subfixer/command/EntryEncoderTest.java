@@ -0,0 +1,135 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * The entry encoder unit tests.
+ *
+ * @author david
+ */
+public final class EntryEncoderTest {
+
+  // the line separator
+  private static final String NL = System.lineSeparator();
+
+  /**
+   * Loads a track from the specified content
+   *
+   * @param content the subtitle content
+   * @return the loaded track
+   * @throws IOException if an error occurs while loading the track
+   */
+  private static SubtitleTrack track(final String content) throws IOException {
+    return SubtitleLoader.loadTrack(new ByteArrayInputStream(
+        content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Encodes each entry of the track, finishing the encoder after each one of
+   * them
+   *
+   * @param track   the track
+   * @param charset the output charset
+   * @return the encoded bytes
+   */
+  private static byte[] encode(final SubtitleTrack track, final Charset charset) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final EntryEncoder encoder = new EntryEncoder(out, charset);
+    for (int i = 0; i < track.size(); i++) {
+      encoder.encode(i + 1, track.get(i));
+      encoder.finish();
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testTimeFormat() throws IOException {
+    final SubtitleTrack track = track("1\n00:00:01,000 --> 00:00:01,500\na\n\n" +
+        "2\n00:00:10,010 --> 01:02:03,100\nb\n\n");
+    assertEquals("1" + NL + "00:00:01,000 --> 00:00:01,500" + NL + "a" + NL + NL +
+            "2" + NL + "00:00:10,010 --> 01:02:03,100" + NL + "b" + NL + NL,
+        new String(encode(track, StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testAsciiHeader() throws IOException {
+    final SubtitleTrack track = track("1\n00:00:01,000 --> 00:00:02,000\nolá, não é\n\n" +
+        "2\n00:00:03,000 --> 00:00:04,000\nsegunda\nlinha\n\n");
+    final String expected = "1" + NL + "00:00:01,000 --> 00:00:02,000" + NL + "olá, não é" +
+        NL + NL + "2" + NL + "00:00:03,000 --> 00:00:04,000" + NL + "segunda" + NL + "linha" +
+        NL + NL;
+    // the header is written directly, while the text is encoded with the charset
+    for (final Charset charset : new Charset[]{StandardCharsets.UTF_8,
+        StandardCharsets.ISO_8859_1, Charset.forName("windows-1252")}) {
+      assertArrayEquals(charset.name(), expected.getBytes(charset), encode(track, charset));
+
+      // a tiny buffer, drained within the headers, to a channel
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final EntryEncoder encoder = new EntryEncoder(Channels.newChannel(out),
+          ByteBuffer.allocate(16), charset);
+      for (int i = 0; i < track.size(); i++) {
+        encoder.encode(i + 1, track, i);
+      }
+      encoder.finish();
+      assertArrayEquals(charset.name(), expected.getBytes(charset), out.toByteArray());
+      assertEquals(charset.name(), out.size(), EntryEncoder.encodedLength(track, charset));
+    }
+  }
+
+  @Test
+  public void testUtf16() throws IOException {
+    final SubtitleTrack track = track("1\n00:00:01,000 --> 00:00:02,000\nolá\n\n" +
+        "2\n00:00:03,000 --> 00:00:04,000\nadeus\n\n");
+    final String expected = "1" + NL + "00:00:01,000 --> 00:00:02,000" + NL + "olá" + NL + NL +
+        "2" + NL + "00:00:03,000 --> 00:00:04,000" + NL + "adeus" + NL + NL;
+
+    // a single byte order mark, at the start of the output, even across finishes
+    final byte[] encoded = encode(track, StandardCharsets.UTF_16);
+    assertEquals((byte) 0xFE, encoded[0]);
+    assertEquals((byte) 0xFF, encoded[1]);
+    final String decoded = new String(encoded, StandardCharsets.UTF_16BE);
+    assertEquals('﻿' + expected, decoded);
+    assertFalse(decoded.substring(1).contains("﻿"));
+  }
+}
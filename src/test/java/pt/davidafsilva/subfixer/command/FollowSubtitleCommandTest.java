@@ -0,0 +1,86 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The follow command unit tests.
+ *
+ * @author david
+ */
+public final class FollowSubtitleCommandTest {
+
+  @Test
+  public void testStop() throws IOException, InterruptedException, ExecutionException,
+      TimeoutException {
+    final Path file = Files.createTempFile("follow", ".srt");
+    final String nl = System.lineSeparator();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // a poll interval long enough for the stop to be the only way out
+    final FollowSubtitleCommand command = new FollowSubtitleCommand("PT1S", out, 60000);
+    try {
+      Files.write(file, ("1" + nl + "00:00:01,000 --> 00:00:02,000" + nl + "first" + nl + nl)
+          .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      final CompletableFuture<Long> followed = CompletableFuture.supplyAsync(
+          () -> command.apply(file.toString()));
+
+      // wait for the entry to be printed, while the command keeps following the file
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      synchronized (out) {
+        while (out.size() == 0 && System.nanoTime() < deadline) {
+          out.wait(10);
+        }
+      }
+      command.stop();
+      assertEquals(1L, (long) followed.get(30, TimeUnit.SECONDS));
+      assertTrue(out.toString("UTF-8").contains("00:00:02,000 --> 00:00:03,000"));
+
+      // a command stopped before it starts doesn't follow the file at all
+      final FollowSubtitleCommand stopped = new FollowSubtitleCommand("PT1S",
+          new ByteArrayOutputStream(), 60000);
+      stopped.stop();
+      assertEquals(0L, (long) stopped.apply(file.toString()));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
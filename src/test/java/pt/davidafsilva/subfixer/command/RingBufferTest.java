@@ -0,0 +1,93 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The ring buffer unit tests.
+ *
+ * @author david
+ */
+public final class RingBufferTest {
+
+  @Test
+  public void testBounds() {
+    // the capacity is rounded up to a power of two
+    final RingBuffer<Integer> buffer = new RingBuffer<>(3);
+    assertNull(buffer.poll());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(4));
+
+    // the items wrap around the slots, in order
+    assertEquals(0, (int) buffer.poll());
+    assertTrue(buffer.offer(4));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(i, (int) buffer.poll());
+    }
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  public void testHandOver() throws Exception {
+    final int items = 1_000_000;
+    final RingBuffer<Integer> buffer = new RingBuffer<>(64);
+    final CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+      for (int i = 0; i < items; i++) {
+        while (!buffer.offer(i)) {
+          Thread.yield();
+        }
+      }
+    });
+
+    // the consumer sees every item, in the order they were offered
+    for (int i = 0; i < items; i++) {
+      Integer item;
+      while ((item = buffer.poll()) == null) {
+        Thread.yield();
+      }
+      assertEquals(i, (int) item);
+    }
+    producer.get(10, TimeUnit.SECONDS);
+    assertNull(buffer.poll());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCapacity() {
+    new RingBuffer<>(0);
+  }
+}
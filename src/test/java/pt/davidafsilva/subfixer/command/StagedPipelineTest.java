@@ -0,0 +1,101 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import pt.davidafsilva.subfixer.load.SubtitleEntry;
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * The pipelined command execution unit tests.
+ *
+ * @author david
+ */
+public final class StagedPipelineTest {
+
+  @Test
+  public void testPipelinedExecution() throws IOException {
+    final StringBuilder content = new StringBuilder();
+    for (int i = 1; i <= 5000; i++) {
+      content.append(i).append("\n00:00:01,000 --> 00:00:02,")
+          .append(String.format("%03d", i % 1000)).append("\nentry ").append(i).append("\n\n");
+    }
+    final String[] lines = content.toString().split("\n", -1);
+
+    // the lines are read, parsed and collected on three different threads
+    final List<SubtitleEntry> entries = new ArrayList<>();
+    final PipelineStage<String[], String> reader = downstream -> all -> {
+      for (final String line : all) {
+        downstream.accept(line);
+      }
+    };
+    final PipelineStage<String, SubtitleEntry> parser = downstream -> {
+      final SubtitleLoader.LineParser lineParser = SubtitleLoader.parser(downstream::accept);
+      return new PipelineStage.Sink<String>() {
+        @Override
+        public void accept(final String line) {
+          lineParser.accept(line);
+        }
+
+        @Override
+        public void finish() {
+          lineParser.finish();
+        }
+      };
+    };
+    final PipelineStage<SubtitleEntry, Void> collector = ignored -> entries::add;
+    assertEquals(5000, CommandExecutor.getInstance().executePipelined(reader, parser, collector,
+        lines));
+    final List<SubtitleEntry> expected = SubtitleLoader.loadTrack(new ByteArrayInputStream(
+        content.toString().getBytes(StandardCharsets.UTF_8)));
+    assertEquals(expected.size(), entries.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getStartMillis(), entries.get(i).getStartMillis());
+      assertEquals(expected.get(i).getEndMillis(), entries.get(i).getEndMillis());
+      assertEquals(expected.get(i).getText(), entries.get(i).getText());
+    }
+
+    // the failure of any stage is rethrown on the calling thread
+    lines[4 * 4000] = "invalid";
+    try {
+      CommandExecutor.getInstance().executePipelined(reader, parser, collector, lines);
+      fail("should have failed");
+    } catch (final CommandExecutionException e) {
+      assertEquals(IllegalStateException.class, e.getCause().getClass());
+    }
+  }
+}
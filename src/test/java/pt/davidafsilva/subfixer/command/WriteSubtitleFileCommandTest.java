@@ -0,0 +1,123 @@
+package pt.davidafsilva.subfixer.command;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import pt.davidafsilva.subfixer.load.SubtitleLoader;
+import pt.davidafsilva.subfixer.load.SubtitleTrack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * The subtitle file write unit tests.
+ *
+ * @author david
+ */
+public final class WriteSubtitleFileCommandTest {
+
+  @Test
+  public void testWriteFile() throws IOException {
+    final Path directory = Files.createTempDirectory("write");
+    final Path file = directory.resolve("fixed.srt");
+    try {
+      final SubtitleTrack track = SubtitleLoader.loadTrack(new ByteArrayInputStream(
+          "1\n00:00:01,000 --> 00:00:02,000\nolá, não é\n\n".getBytes(StandardCharsets.UTF_8)));
+      final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      new PrintSubtitleEntriesCommand(expected).apply(track);
+
+      // an existing (bigger) file is fully replaced, with no temporary file left behind
+      Files.write(file, new byte[4096]);
+      new WriteSubtitleFileCommand(file).apply(track);
+      assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file));
+      assertEquals(1, count(directory));
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  public void testFailedWrite() throws IOException {
+    final Path directory = Files.createTempDirectory("write");
+    final Path file = directory.resolve("fixed.srt");
+    try {
+      // the target is left untouched and the temporary file is deleted
+      final byte[] original = "original".getBytes(StandardCharsets.UTF_8);
+      Files.write(file, original);
+      try {
+        WriteSubtitleFileCommand.write(file, 1024, channel -> {
+          channel.write(ByteBuffer.wrap(new byte[512]));
+          throw new IOException("disk full");
+        });
+        fail("should have failed");
+      } catch (final CommandExecutionException e) {
+        assertEquals(IOException.class, e.getCause().getClass());
+      }
+      assertArrayEquals(original, Files.readAllBytes(file));
+      assertEquals(1, count(directory));
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /**
+   * Counts the files within the specified directory
+   *
+   * @param directory the directory
+   * @return the number of files
+   * @throws IOException if an error occurs while listing the directory
+   */
+  private static long count(final Path directory) throws IOException {
+    try (final Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  /**
+   * Deletes the specified directory, along with its files
+   *
+   * @param directory the directory
+   * @throws IOException if an error occurs while walking the directory
+   */
+  private static void delete(final Path directory) throws IOException {
+    try (final Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static pt.davidafsilva.subfixer.load.SubtitleLoaderTest.assertEntries;
+import static pt.davidafsilva.subfixer.load.SubtitleLoaderTest.subtitleFile;
+
+/**
+ * The chunked track parser unit tests.
+ *
+ * @author david
+ */
+public final class ChunkedTrackParserTest {
+
+  /**
+   * Generates the content of consecutive entries, with some multi-line texts
+   *
+   * @param first the index of the first entry
+   * @param last  the index of the last entry
+   * @param nl    the line separator
+   * @return the generated entries
+   */
+  private static String entries(final int first, final int last, final String nl) {
+    final StringBuilder content = new StringBuilder();
+    for (int i = first; i <= last; i++) {
+      content.append(i).append(nl)
+          .append(time(i * 100)).append(" --> ").append(time(i * 100 + 50)).append(nl).append("entry ").append(i).append(nl);
+      if (i % 3 == 0) {
+        content.append("second line ").append(i).append(nl);
+      }
+      content.append(nl);
+    }
+    return content.toString();
+  }
+
+  /**
+   * Formats the specified time of the day
+   *
+   * @param millis the milliseconds of the day
+   * @return the formatted time
+   */
+  private static String time(final int millis) {
+    return String.format("%02d:%02d:%02d,%03d", millis / 3600000, millis / 60000 % 60,
+        millis / 1000 % 60, millis % 1000);
+  }
+
+  /**
+   * Pads the text of the last entry until the content has the given length
+   *
+   * @param entries the content of the entries, separated by line feeds
+   * @param length  the target length
+   * @return the padded content
+   */
+  private static String padded(final String entries, final int length) {
+    final StringBuilder padded = new StringBuilder(entries);
+    while (padded.length() < length) {
+      padded.insert(entries.length() - 2, 'x');
+    }
+    return padded.toString();
+  }
+
+  /**
+   * Returns the message of the error reported by the given load
+   *
+   * @param load the load
+   * @return the error message
+   * @throws Exception if the load fails with an unexpected error
+   */
+  private static String loadError(final Callable<?> load) throws Exception {
+    try {
+      load.call();
+    } catch (final IllegalStateException e) {
+      return e.getMessage();
+    }
+    throw new AssertionError("expected a load error");
+  }
+
+  @Test
+  public void testChunkedParse() throws Exception {
+    final String file = subtitleFile("3entry.srt");
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    final Path generated = Files.createTempFile("chunked", ".srt");
+    try {
+      try (final FileChannel channel = FileChannel.open(Paths.get(file))) {
+        // tiny chunks, one per entry
+        assertEntries(SubtitleLoader.load(file),
+            new ChunkedTrackParser(channel, StandardCharsets.UTF_8, pool, 32).parse().track);
+      }
+      assertEntries(SubtitleLoader.load(file), MappedSubtitleLoader.load(file, pool));
+
+      // many chunks of multi-line entries, split at the entry boundaries of either separator
+      for (final String nl : new String[]{"\n", "\r\n"}) {
+        Files.write(generated, entries(1, 3000, nl).getBytes(StandardCharsets.UTF_8));
+        try (final FileChannel channel = FileChannel.open(generated)) {
+          assertEntries(SubtitleLoader.load(generated.toString()),
+              new ChunkedTrackParser(channel, StandardCharsets.UTF_8, pool, 4096).parse().track);
+        }
+      }
+
+      // two chunks, each with consecutive indices, where the second one skips an index:
+      // the middle of the file is the end of the last text line of the first chunk
+      String first = entries(1, 100, "\n");
+      String second = entries(102, 200, "\n");
+      first = padded(first, second.length() + 4);
+      second = padded(second, first.length() - 4);
+      Files.write(generated, (first + second).getBytes(StandardCharsets.UTF_8));
+      try (final FileChannel channel = FileChannel.open(generated)) {
+        new ChunkedTrackParser(channel, StandardCharsets.UTF_8, pool, channel.size() / 2).parse();
+        fail("expected a chunked parse error");
+      } catch (final ChunkedTrackParser.ChunkedParseException e) {
+        assertEquals("unexpected first index 102 at " + first.length(),
+            e.getCause().getMessage());
+      }
+      final String expected = loadError(() -> SubtitleLoader.load(generated.toString()));
+      assertEquals(expected, loadError(() -> MappedSubtitleLoader.load(generated.toString())));
+
+      // a file big enough to be parsed in chunks, with a skipped index in a later chunk,
+      // falls back to the sequential parsing and reports the same error
+      final int entries = (int) (2 * ChunkedTrackParser.MIN_CHUNK_SIZE / 60);
+      try (final Writer writer = Files.newBufferedWriter(generated, StandardCharsets.UTF_8)) {
+        writer.write(entries(1, entries - 100, "\r\n"));
+        writer.write(entries(entries - 98, entries, "\r\n"));
+      }
+      assertTrue(ChunkedTrackParser.isWorthy(Files.size(generated), pool.getParallelism()));
+      assertEquals(loadError(() -> SubtitleLoader.load(generated.toString())),
+          loadError(() -> MappedSubtitleLoader.load(generated.toString(), pool)));
+    } finally {
+      pool.shutdown();
+      Files.delete(generated);
+    }
+  }
+}
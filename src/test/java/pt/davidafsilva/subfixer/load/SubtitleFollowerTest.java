@@ -0,0 +1,95 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The subtitle follower unit tests.
+ *
+ * @author david
+ */
+public final class SubtitleFollowerTest {
+
+  @Test
+  public void testFollower() throws IOException, InterruptedException {
+    final Path file = Files.createTempFile("follow", ".srt");
+    final String nl = System.lineSeparator();
+    try (final SubtitleFollower follower = new SubtitleFollower(file.toString())) {
+      assertEquals(0, follower.poll().size());
+
+      // the second entry is still being written
+      Files.write(file, ("1" + nl + "00:00:01,000 --> 00:00:02,000" + nl + "first" + nl + nl +
+          "2" + nl + "00:00:03,000 --> 00:00:04,000" + nl + "sec").getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.APPEND);
+      final List<SubtitleEntry> first = follower.poll();
+      assertEquals(1, first.size());
+      assertEquals("first", first.get(0).getText());
+
+      // only the appended bytes are parsed
+      final long offset = follower.getOffset();
+      Files.write(file, ("ond" + nl + "line" + nl + nl).getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.APPEND);
+      final List<SubtitleEntry> second = follower.poll();
+      assertEquals(1, second.size());
+      assertEquals(3000, second.get(0).getStartMillis());
+      assertEquals("second" + nl + "line", second.get(0).getText());
+      assertEquals(offset + 7 + 3 * nl.length(), follower.getOffset());
+      assertEquals(0, follower.poll().size());
+
+      // a cancel wakes up a pending wait, and any subsequent one returns immediately
+      final Thread canceller = new Thread(() -> {
+        try {
+          Thread.sleep(100);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        follower.cancel();
+      });
+      final long start = System.nanoTime();
+      canceller.start();
+      follower.await(60000);
+      follower.await(60000);
+      canceller.join();
+      assertTrue(follower.isCancelled());
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
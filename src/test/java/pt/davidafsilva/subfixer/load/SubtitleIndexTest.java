@@ -0,0 +1,74 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The subtitle index unit tests.
+ *
+ * @author david
+ */
+public final class SubtitleIndexTest {
+
+  @Test
+  public void testSubtitleIndex() {
+    final Random random = new Random(42);
+    final SubtitleTrack.Builder builder = new SubtitleTrack.Builder();
+    for (int i = 0; i < 2000; i++) {
+      final int start = random.nextInt(100000);
+      builder.add(start, start + random.nextInt(3000), "entry " + i);
+    }
+    final SubtitleTrack track = builder.build();
+    final SubtitleIndex index = SubtitleIndex.of(track);
+    for (int i = 0; i < 500; i++) {
+      final int from = random.nextInt(110000);
+      final int to = from + random.nextInt(2) * random.nextInt(5000) + 1;
+      final List<String> expected = new ArrayList<>();
+      for (int entry = 0; entry < track.size(); entry++) {
+        if (track.getStartMillis(entry) < to && track.getEndMillis(entry) > from &&
+            track.getEndMillis(entry) > track.getStartMillis(entry)) {
+          expected.add(track.getText(entry));
+        }
+      }
+      final List<String> actual = index.between(from, to).stream()
+          .map(SubtitleEntry::getText)
+          .collect(Collectors.toList());
+      expected.sort(null);
+      actual.sort(null);
+      assertEquals(expected, actual);
+    }
+    assertEquals(1, SubtitleIndex.of(track.subList(0, 1)).at(track.getStartMillis(0)).size());
+  }
+}
@@ -0,0 +1,565 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import pt.davidafsilva.subfixer.command.DelaySubtitleCommand;
+import pt.davidafsilva.subfixer.command.DelaySubtitleStreamCommand;
+import pt.davidafsilva.subfixer.command.PrintSubtitleEntriesStreamCommand;
+import pt.davidafsilva.subfixer.config.Charsets;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The subtitle loader unit tests.
+ *
+ * @author david
+ */
+public final class SubtitleLoaderTest {
+
+  /**
+   * Returns the subtitle file full path
+   *
+   * @param file the subtitle file name
+   * @return the file full path
+   */
+  static String subtitleFile(final String file) {
+    return SubtitleLoaderTest.class.getResource("/" + file).getPath();
+  }
+
+  /**
+   * Asserts that both lists contain the same entries, in the same order
+   *
+   * @param expected the expected entries
+   * @param actual   the actual entries
+   */
+  static void assertEntries(final List<SubtitleEntry> expected,
+      final List<SubtitleEntry> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getStartTime(), actual.get(i).getStartTime());
+      assertEquals(expected.get(i).getEndTime(), actual.get(i).getEndTime());
+      assertEquals(expected.get(i).getText(), actual.get(i).getText());
+    }
+  }
+
+  @Test
+  public void testStreamMatchesLoad() throws IOException {
+    final String file = subtitleFile("3entry.srt");
+    try (final Stream<SubtitleEntry> stream = SubtitleLoader.stream(file)) {
+      assertEntries(SubtitleLoader.load(file), stream.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testMappedMatchesLoad() throws IOException {
+    final String file = subtitleFile("3entry.srt");
+    assertEntries(SubtitleLoader.load(file), MappedSubtitleLoader.load(file));
+
+    // tiny mapping windows, forcing the lines to be re-mapped
+    final SubtitleTrack.Builder track = new SubtitleTrack.Builder();
+    try (final FileChannel channel = FileChannel.open(Paths.get(file))) {
+      final ByteEntryParser parser = new ByteEntryParser(track, StandardCharsets.UTF_8);
+      MappedLineScanner.scan(channel, 0, channel.size(), 48, parser);
+      parser.finish();
+    }
+    assertEntries(SubtitleLoader.load(file), track.build());
+  }
+
+  @Test
+  public void testMappedLoadErrors() throws IOException {
+    for (final String file : new String[]{"1entry_invalidIndex.srt", "1entry_noIndex.srt",
+        "1entry_invalidTimeFrameFormat.srt", "1entry_invalidTimeFrameDateTime.srt",
+        "1entry_noText.srt"}) {
+      String expected = null;
+      try {
+        SubtitleLoader.load(subtitleFile(file));
+      } catch (final IllegalStateException e) {
+        expected = e.getMessage();
+      }
+      try {
+        MappedSubtitleLoader.load(subtitleFile(file));
+        fail("expected an error for " + file);
+      } catch (final IllegalStateException e) {
+        assertEquals(expected, e.getMessage());
+      }
+    }
+
+    // malformed text is reported rather than replaced, by every loader
+    final Path malformed = Files.createTempFile("malformed", ".srt");
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      Files.write(malformed, ("1\n00:00:01,000 --> 00:00:02,000\nol\u00E1\n\n")
+          .getBytes(StandardCharsets.ISO_8859_1));
+      String expected = null;
+      try {
+        SubtitleLoader.load(malformed.toString());
+        fail("expected a malformed input error");
+      } catch (final MalformedInputException e) {
+        expected = e.getMessage();
+      }
+      try {
+        MappedSubtitleLoader.load(malformed.toString());
+        fail("expected a malformed input error");
+      } catch (final MalformedInputException e) {
+        assertEquals(expected, e.getMessage());
+      }
+      try {
+        TimeFrameShifter.shift(malformed.toString(), millis -> millis,
+            Channels.newChannel(new ByteArrayOutputStream()));
+        fail("expected a malformed input error");
+      } catch (final MalformedInputException e) {
+        assertEquals(expected, e.getMessage());
+      }
+      try (final FileChannel channel = FileChannel.open(malformed)) {
+        new ChunkedTrackParser(channel, StandardCharsets.UTF_8, pool, 8).parse();
+        fail("expected a chunked parse error");
+      } catch (final ChunkedTrackParser.ChunkedParseException e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+          cause = cause.getCause();
+        }
+        assertTrue(cause instanceof MalformedInputException);
+      }
+    } finally {
+      pool.shutdown();
+      Files.delete(malformed);
+    }
+  }
+
+  @Test
+  public void testByteOrderMark() throws IOException {
+    final String file = subtitleFile("3entry.srt");
+    final Path bom = Files.createTempFile("bom", ".srt");
+    try (final OutputStream out = Files.newOutputStream(bom)) {
+      out.write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+      Files.copy(Paths.get(file), out);
+    }
+    try {
+      // the byte order mark is skipped by every loader
+      assertEntries(SubtitleLoader.load(file), SubtitleLoader.load(bom.toString()));
+      assertEntries(SubtitleLoader.load(file), MappedSubtitleLoader.load(bom.toString()));
+
+      // and kept, as is, by the shifter
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertEquals(3, TimeFrameShifter.shift(bom.toString(), millis -> millis,
+          Channels.newChannel(out)));
+      assertArrayEquals(Files.readAllBytes(bom), out.toByteArray());
+    } finally {
+      Files.delete(bom);
+    }
+  }
+
+  @Test
+  public void testTrack() throws IOException {
+    final SubtitleTrack track = SubtitleLoader.loadTrack(subtitleFile("3entry.srt"));
+    assertEquals(3, track.size());
+    assertEquals(245704, track.getStartMillis(0));
+    assertEquals("que pode ter relação..." + System.lineSeparator() +
+        "- Cala-te sobre o maldito Moinho.", track.getText(2));
+    assertEntries(track, SubtitleTrack.of(new ArrayList<>(track)));
+
+    // the mapped track shares the text
+    final SubtitleTrack shifted = track.mapTimes(millis -> millis + 1000);
+    assertEquals(246704, shifted.getStartMillis(0));
+    assertEquals(track.getText(1), shifted.getText(1));
+  }
+
+  @Test
+  public void testTrackChunkedText() {
+    final SubtitleTrack.Builder builder = new SubtitleTrack.Builder();
+    final StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      builder.add(i, i + 1, "entry " + i);
+      big.append(i);
+    }
+    builder.add(0, 1, big);
+    final SubtitleTrack track = builder.build();
+    assertEquals(5001, track.size());
+    assertEquals("entry 4321", track.getText(4321));
+    assertEquals(big.toString(), track.getText(5000));
+  }
+
+  @Test
+  public void testTextPool() {
+    final TextPool pool = new TextPool(64);
+    final SubtitleTrack.Builder first = new SubtitleTrack.Builder(pool);
+    final SubtitleTrack.Builder second = new SubtitleTrack.Builder(pool);
+    final SubtitleTrack.Builder merged = new SubtitleTrack.Builder(pool);
+    for (int i = 0; i < 100; i++) {
+      first.add(i, i + 1, "[MUSIC]");
+      first.add(i, i + 1, "unique " + i);
+      second.add(i, i + 1, CharBuffer.wrap("- What?"), 7);
+    }
+    merged.add(0, 1, "own");
+    merged.addAll(first);
+    merged.add(1, 2, "[MUSIC]");
+
+    // only the repeated texts are pooled, once each
+    assertEquals(7 + 7, pool.size());
+    final SubtitleTrack track = merged.build();
+    assertEquals(202, track.size());
+    assertEquals("own", track.getText(0));
+    assertEquals("[MUSIC]", track.getText(1));
+    assertEquals("unique 99", track.getText(200));
+    assertEquals("[MUSIC]", track.getText(201));
+    assertEquals("- What?", second.build().getText(99));
+
+    // the pool never grows past its size, even when texts are admitted concurrently
+    final TextPool bounded = new TextPool(64);
+    IntStream.range(0, 64).parallel().forEach(i -> {
+      final String text = "text " + (i % 16);
+      for (int sighting = 0; sighting < 4; sighting++) {
+        bounded.admit(text);
+      }
+    });
+    assertTrue(bounded.size() <= 64);
+    assertTrue(bounded.size() >= 64 - "text 10".length());
+  }
+
+  @Test
+  public void testCharsetDetection() throws IOException {
+    final String content = "1\n00:00:01,000 --> 00:00:02,000\nCoração\n\n";
+    final byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+    final byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    final byte[] utf8Bom = new byte[bom.length + utf8.length];
+    System.arraycopy(bom, 0, utf8Bom, 0, bom.length);
+    System.arraycopy(utf8, 0, utf8Bom, bom.length, utf8.length);
+
+    assertEquals(Charsets.LENIENT_UTF_8, Charsets.detect(ByteBuffer.wrap(utf8)));
+    assertEquals(Charsets.LENIENT_UTF_8, Charsets.detect(ByteBuffer.wrap(utf8Bom)));
+    assertEquals(3, Charsets.bomLength(ByteBuffer.wrap(utf8Bom)));
+    assertEquals(StandardCharsets.UTF_16LE, Charsets.detect(
+        ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_16LE))));
+    assertEquals(Charsets.WINDOWS_1252, Charsets.detect(
+        ByteBuffer.wrap(content.getBytes(Charsets.WINDOWS_1252))));
+    assertEquals(StandardCharsets.UTF_8, Charsets.encoding(Charsets.LENIENT_UTF_8));
+
+    // malformed bytes past the sniffed ones are decoded as windows-1252
+    final byte[] mixed = (content + "2\n00:00:03,000 --> 00:00:04,000\n").getBytes(
+        StandardCharsets.UTF_8);
+    final byte[] cp1252 = "Ação\n".getBytes(Charsets.WINDOWS_1252);
+    final byte[] mixedContent = new byte[mixed.length + cp1252.length];
+    System.arraycopy(mixed, 0, mixedContent, 0, mixed.length);
+    System.arraycopy(cp1252, 0, mixedContent, mixed.length, cp1252.length);
+    assertEquals("Ação", new String(mixedContent, Charsets.LENIENT_UTF_8).split("\n")[6]);
+
+    // the byte order mark is skipped without reading the content twice
+    final BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(utf8Bom),
+        Charsets.SNIFF_LENGTH);
+    assertEquals(Charsets.LENIENT_UTF_8, SubtitleLoader.detect(in));
+    assertEquals('1', in.read());
+
+    // a byte order mark is never part of the first entry index
+    final SubtitleTrack track = SubtitleLoader.loadTrack(new ByteArrayInputStream(utf8Bom));
+    assertEquals(1, track.size());
+    assertEquals("Coração", track.getText(0));
+  }
+
+  @Test
+  public void testStreamDetectedCharset() throws IOException {
+    final String content = "1" + System.lineSeparator() +
+        "00:00:01,000 --> 00:00:02,000" + System.lineSeparator() +
+        "Coração" + System.lineSeparator() + System.lineSeparator();
+    final byte[] cp1252 = content.getBytes(Charsets.WINDOWS_1252);
+    final Path file = Files.createTempFile("cp1252", ".srt");
+    try {
+      Files.write(file, cp1252);
+
+      // the streamed entries are printed back with the detected charset
+      final SubtitleReader reader = SubtitleLoader.open(file.toString(), true);
+      assertEquals(Charsets.WINDOWS_1252, reader.getCharset().orElse(null));
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertEquals(cp1252.length, reader.getSize());
+      assertEquals(1L, (long) new PrintSubtitleEntriesStreamCommand(out,
+          reader.getCharset().orElse(StandardCharsets.UTF_8))
+          .apply(SubtitleLoader.stream(reader, reader.getSize())));
+      assertArrayEquals(cp1252, out.toByteArray());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testLenientLoad() throws IOException {
+    final String content = "1\n00:00:01,000 --> 00:00:02,000\none\n\n" +
+        "3\n00:00:03,000 --> 00:00:04,000\n\nthree\n" +
+        "4\n00:00:05,000 --> 00:00:06,000\nfour\n\n" +
+        "garbage\nmore garbage\n00:00:07,000 --> 00:00:08,000\nseven\n\n" +
+        "6\ninvalid\nlost text\n\n" +
+        "7\n00:00:09,000 --> 00:00:10,000\n";
+    final List<Diagnostic> diagnostics = new ArrayList<>();
+    final SubtitleTrack track = SubtitleLoader.loadTrack(
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), diagnostics);
+
+    assertEquals(4, track.size());
+    assertEquals("one", track.getText(0));
+    assertEquals("three", track.getText(1));
+    assertEquals(5000, track.getStartMillis(2));
+    assertEquals("four", track.getText(2));
+    assertEquals("seven", track.getText(3));
+    final List<Diagnostic> expected = new ArrayList<>();
+    expected.add(new Diagnostic(5, Diagnostic.Issue.UNEXPECTED_INDEX));
+    expected.add(new Diagnostic(7, Diagnostic.Issue.STRAY_BLANK_LINE));
+    expected.add(new Diagnostic(10, Diagnostic.Issue.MISSING_BLANK_LINE));
+    expected.add(new Diagnostic(13, Diagnostic.Issue.UNEXPECTED_LINE));
+    expected.add(new Diagnostic(15, Diagnostic.Issue.MISSING_INDEX));
+    expected.add(new Diagnostic(18, Diagnostic.Issue.UNEXPECTED_INDEX));
+    expected.add(new Diagnostic(19, Diagnostic.Issue.INVALID_TIME_FRAME));
+    expected.add(new Diagnostic(22, Diagnostic.Issue.UNEXPECTED_INDEX));
+    expected.add(new Diagnostic(23, Diagnostic.Issue.MISSING_TEXT));
+    assertEquals(expected, diagnostics);
+
+    // the streamed and parsed entries report the very same issues
+    diagnostics.clear();
+    final SubtitleReader reader = new SubtitleReader(new StringReader(content), null,
+        content.length());
+    try (final Stream<SubtitleEntry> stream = SubtitleLoader.stream(reader, content.length(),
+        diagnostics)) {
+      assertEntries(track, stream.collect(Collectors.toList()));
+    }
+    assertEquals(expected, diagnostics);
+    diagnostics.clear();
+    final List<SubtitleEntry> parsed = new ArrayList<>();
+    final SubtitleLoader.LineParser parser = SubtitleLoader.parser(parsed::add, diagnostics);
+    Arrays.stream(content.split("\n")).forEach(parser::accept);
+    parser.finish();
+    assertEntries(track, parsed);
+    assertEquals(expected, diagnostics);
+
+    // well formed files have nothing to repair
+    diagnostics.clear();
+    assertEntries(SubtitleLoader.load(subtitleFile("3entry.srt")),
+        SubtitleLoader.loadTrack(subtitleFile("3entry.srt"), diagnostics));
+    assertEquals(0, diagnostics.size());
+
+    // while the strict loading fails right away
+    try {
+      SubtitleLoader.loadTrack(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+      fail("should have failed");
+    } catch (final IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCompressedLoad() throws IOException {
+    final Path directory = Files.createTempDirectory("compressed");
+    final byte[] content = Files.readAllBytes(Paths.get(subtitleFile("3entry.srt")));
+    final SubtitleTrack expected = SubtitleLoader.loadTrack(subtitleFile("3entry.srt"));
+    try {
+      final Path gzip = directory.resolve("3entry.srt.gz");
+      try (final OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+        out.write(content);
+      }
+      assertEquals(Compression.GZIP, Compression.of(gzip.toString()));
+      assertEntries(expected, SubtitleLoader.loadTrack(gzip.toString()));
+      try (final Stream<SubtitleEntry> entries = SubtitleLoader.stream(gzip.toString())) {
+        assertEntries(expected, entries.collect(Collectors.toList()));
+      }
+
+      // the archive entries are loaded in order, one at a time
+      final Path zip = directory.resolve("bundle.zip");
+      try (final ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+        for (final String name : new String[]{"en.srt", "pt.srt"}) {
+          out.putNextEntry(new ZipEntry(name));
+          out.write(content);
+          out.closeEntry();
+        }
+      }
+      assertEquals(Compression.ZIP, Compression.of(zip.toString()));
+      final List<String> names = new ArrayList<>();
+      assertEquals(2, SubtitleLoader.loadArchive(zip.toString(), (name, track) -> {
+        names.add(name);
+        assertEntries(expected, track);
+      }));
+      assertEquals(Arrays.asList("en.srt", "pt.srt"), names);
+    } finally {
+      try (final Stream<Path> files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  public void testAllocationBudget() throws IOException {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported() &&
+        threads.isThreadAllocatedMemoryEnabled());
+    final long thread = Thread.currentThread().getId();
+    final int entries = 20_000;
+    final StringBuilder content = new StringBuilder();
+    for (int i = 1; i <= entries; i++) {
+      content.append(i).append("\n00:00:01,000 --> 00:00:02,000\nentry number ").append(i)
+          .append("\nsecond line\n\n");
+    }
+    final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+    final String[] lines = content.toString().split("\n", -1);
+
+    // the best of a few runs, so that the warm up isn't accounted
+    long trackBytes = Long.MAX_VALUE;
+    long parseBytes = Long.MAX_VALUE;
+    final List<SubtitleEntry> parsed = new ArrayList<>(entries);
+    for (int run = 0; run < 3; run++) {
+      long start = threads.getThreadAllocatedBytes(thread);
+      assertEquals(entries, SubtitleLoader.loadTrack(new ByteArrayInputStream(bytes)).size());
+      trackBytes = Math.min(trackBytes, threads.getThreadAllocatedBytes(thread) - start);
+
+      parsed.clear();
+      start = threads.getThreadAllocatedBytes(thread);
+      final SubtitleLoader.LineParser parser = SubtitleLoader.parser(parsed::add);
+      for (final String line : lines) {
+        parser.accept(line);
+      }
+      parser.finish();
+      parseBytes = Math.min(parseBytes, threads.getThreadAllocatedBytes(thread) - start);
+    }
+
+    // loading a track allocates little more than the lines read and the track storage
+    assertTrue("track load allocated " + trackBytes / entries + " bytes per entry",
+        trackBytes / entries <= 640);
+    // parsing the lines allocates little more than the entries themselves
+    assertEquals(entries, parsed.size());
+    assertTrue("line parsing allocated " + parseBytes / entries + " bytes per entry",
+        parseBytes / entries <= 160);
+  }
+
+  @Test
+  public void testTimeFrameParser() {
+    final long timeFrame = TimeFrameParser.parse("00:04:05,704 --> 23:59:59,999");
+    assertEquals(245704, TimeFrameParser.startMillis(timeFrame));
+    assertEquals(86399999, TimeFrameParser.endMillis(timeFrame));
+
+    // irregular layouts
+    assertEquals(TimeFrameParser.INVALID, TimeFrameParser.parse("00:04:05,7 --> 00:04:07,039"));
+    assertEquals(TimeFrameParser.INVALID, TimeFrameParser.parse("24:04:05,704 --> 00:04:07,039"));
+    assertEquals(TimeFrameParser.INVALID, TimeFrameParser.parse("00:04:05,704 -> 00:04:07,0391"));
+    assertEquals(TimeFrameParser.INVALID, TimeFrameParser.parse("00:04:05.704 --> 00:04:07,039"));
+  }
+
+  @Test
+  public void testTimeTransform() throws IOException {
+    // a single delay wraps around midnight
+    assertEquals(1999, TimeTransform.identity().delay(2000).applyAsInt(86399999));
+
+    // the streamed entries are delayed by the same transformation as the buffered ones
+    final SubtitleTrack loaded = SubtitleLoader.loadTrack(subtitleFile("3entry.srt"));
+    for (final String delay : new String[]{"PT-245.5S", "PT23H59M", "-PT0.0005S"}) {
+      try (final Stream<SubtitleEntry> streamed = new DelaySubtitleStreamCommand(delay)
+          .apply(loaded.stream())) {
+        assertEntries(new DelaySubtitleCommand(delay).apply(loaded),
+            streamed.collect(Collectors.toList()));
+      }
+    }
+
+    // the operations are folded into one, applied in order
+    final TimeTransform fused = TimeTransform.identity()
+        .delay(1000)
+        .framerate(25, 23.976)
+        .clamp(0, 10000);
+    final TimeTransform chained = TimeTransform.identity().delay(1000)
+        .then(TimeTransform.identity().scale(25 / 23.976))
+        .then(TimeTransform.identity().clamp(0, 10000));
+    for (int millis = 0; millis < 20000; millis += 7) {
+      final long expected = Math.min(Math.round((millis + 1000) * 25 / 23.976), 10000);
+      assertEquals(expected, fused.applyAsLong(millis));
+      assertEquals(expected, chained.applyAsLong(millis));
+    }
+
+    // a negative delay is only wrapped around midnight after the clamping
+    final TimeTransform advanced = DelaySubtitleCommand.transform("-PT1S").clamp(0, 10000);
+    assertEquals(0, advanced.applyAsInt(500));
+    assertEquals(4000, advanced.applyAsInt(5000));
+    final SubtitleTrack.Builder builder = new SubtitleTrack.Builder();
+    builder.add(500, 800, "before");
+    builder.add(1500, 2000, "after");
+    final SubtitleTrack built = builder.build();
+    final SubtitleTrack early = built
+        .transform(DelaySubtitleCommand.transform("-PT1S").trim(0, 10000));
+    assertEquals(1, early.size());
+    assertEquals(500, early.getStartMillis(0));
+
+    // the built track is not affected by the entries added afterwards
+    builder.add(2500, 3000, "later");
+    assertEquals(2, built.size());
+    assertEquals(3, builder.build().size());
+    assertEquals("after", built.getText(1));
+
+    // trimming drops the entries out of the range and crops the remaining ones
+    final SubtitleTrack track = SubtitleLoader.loadTrack(subtitleFile("3entry.srt"));
+    final SubtitleTrack trimmed = track.transform(TimeTransform.identity()
+        .trim(track.getEndMillis(0), track.getStartMillis(2) + 1)
+        .delay(-1000));
+    assertEquals(2, trimmed.size());
+    assertEquals(track.getText(1), trimmed.getText(0));
+    assertEquals(track.getStartMillis(2) - 1000, trimmed.getStartMillis(1));
+    assertEquals(track.getStartMillis(2) + 1 - 1000, trimmed.getEndMillis(1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testStreamLoadError() throws IOException {
+    try (final Stream<SubtitleEntry> stream = SubtitleLoader.stream(
+        subtitleFile("1entry_noText.srt"))) {
+      stream.count();
+    }
+  }
+}
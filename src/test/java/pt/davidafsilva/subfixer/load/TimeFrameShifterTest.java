@@ -0,0 +1,100 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static pt.davidafsilva.subfixer.load.SubtitleLoaderTest.assertEntries;
+import static pt.davidafsilva.subfixer.load.SubtitleLoaderTest.subtitleFile;
+
+/**
+ * The time frame shifter unit tests.
+ *
+ * @author david
+ */
+public final class TimeFrameShifterTest {
+
+  @Test
+  public void testTimeFrameShifter() throws IOException {
+    final String file = subtitleFile("3entry.srt");
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(3, TimeFrameShifter.shift(file, millis -> millis, Channels.newChannel(out)));
+    assertArrayEquals(Files.readAllBytes(Paths.get(file)), out.toByteArray());
+
+    // only the time frames are shifted
+    final Path shifted = Files.createTempFile("shifted", ".srt");
+    try (final FileChannel channel = FileChannel.open(shifted, StandardOpenOption.WRITE)) {
+      TimeFrameShifter.shift(file, millis -> millis + 1000, channel);
+      assertEntries(SubtitleLoader.loadTrack(file).mapTimes(millis -> millis + 1000),
+          SubtitleLoader.load(shifted.toString()));
+    } finally {
+      Files.delete(shifted);
+    }
+
+    // many more entries than the ones written at once, to either kind of output
+    final Path many = Files.createTempFile("many", ".srt");
+    final Path manyShifted = Files.createTempFile("shifted", ".srt");
+    try {
+      final StringBuilder content = new StringBuilder();
+      for (int i = 1; i <= 2000; i++) {
+        content.append(i).append('\n')
+            .append(String.format("00:%02d:%02d,%03d --> 00:%02d:%02d,500\n",
+                i / 60 % 60, i % 60, i % 1000, i / 60 % 60, i % 60))
+            .append("entry ").append(i).append(i % 7 == 0 ? "\nmore text\n\n" : "\n\n");
+      }
+      Files.write(many, content.toString().getBytes(StandardCharsets.UTF_8));
+      final List<SubtitleEntry> expected = SubtitleLoader.loadTrack(many.toString())
+          .mapTimes(millis -> millis + 1000);
+      try (final FileChannel channel = FileChannel.open(manyShifted,
+          StandardOpenOption.WRITE)) {
+        assertEquals(2000, TimeFrameShifter.shift(many.toString(), millis -> millis + 1000,
+            channel));
+      }
+      assertEntries(expected, SubtitleLoader.load(manyShifted.toString()));
+      final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      TimeFrameShifter.shift(many.toString(), millis -> millis + 1000,
+          Channels.newChannel(stream));
+      assertArrayEquals(Files.readAllBytes(manyShifted), stream.toByteArray());
+    } finally {
+      Files.delete(many);
+      Files.delete(manyShifted);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package pt.davidafsilva.subfixer.load;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static pt.davidafsilva.subfixer.load.SubtitleLoaderTest.assertEntries;
+import static pt.davidafsilva.subfixer.load.SubtitleLoaderTest.subtitleFile;
+
+/**
+ * The track cache unit tests.
+ *
+ * @author david
+ */
+public final class TrackCacheTest {
+
+  @Test
+  public void testTrackCache() throws IOException {
+    final Path directory = Files.createTempDirectory("cache");
+    final Path file = directory.resolve("copy.srt");
+    Files.copy(Paths.get(subtitleFile("3entry.srt")), file);
+    final TrackCache cache = new TrackCache(directory.resolve("tracks"), 1024 * 1024,
+        StandardCharsets.UTF_8);
+    final AtomicInteger loads = new AtomicInteger();
+    final TrackCache.TrackLoader loader = path -> {
+      loads.incrementAndGet();
+      return SubtitleLoader.loadTrack(path);
+    };
+    try {
+      final SubtitleTrack track = cache.load(file.toString(), loader);
+      assertEntries(track, cache.load(file.toString(), loader));
+      assertEquals(1, loads.get());
+
+      // a corrupted entry count makes the cached track stale, with nothing allocated for it
+      final Path cacheFile;
+      try (final Stream<Path> files = Files.list(directory.resolve("tracks"))) {
+        cacheFile = files.findFirst().orElseThrow(AssertionError::new);
+      }
+      final long textChars = IntStream.range(0, track.size()).map(track::getTextLength).sum();
+      final long countPosition = Files.size(cacheFile) - Character.BYTES * textChars -
+          3L * Integer.BYTES * track.size() - Integer.BYTES;
+      for (final int count : new int[]{Integer.MAX_VALUE, -1, track.size() + 1}) {
+        try (final FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+          channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), countPosition);
+        }
+        assertEntries(track, cache.load(file.toString(), loader));
+      }
+      assertEquals(4, loads.get());
+
+      // a modified source invalidates the cached track
+      Files.write(file, Files.readAllLines(file, StandardCharsets.UTF_8).subList(0, 4),
+          StandardCharsets.UTF_8);
+      assertEquals(1, cache.load(file.toString(), loader).size());
+      assertEquals(5, loads.get());
+
+      // no room for any cached track
+      Files.copy(Paths.get(subtitleFile("3entry.srt")), file, StandardCopyOption.REPLACE_EXISTING);
+      final TrackCache tiny = new TrackCache(directory.resolve("tracks"), 0,
+          StandardCharsets.UTF_8);
+      tiny.load(file.toString(), loader);
+      try (final Stream<Path> files = Files.list(directory.resolve("tracks"))) {
+        assertEquals(0, files.count());
+      }
+    } finally {
+      try (final Stream<Path> files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package pt.davidafsilva.subfixer.metrics;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import pt.davidafsilva.subfixer.command.CommandExecutionException;
+import pt.davidafsilva.subfixer.command.CommandExecutor;
+import pt.davidafsilva.subfixer.command.FixSubtitleCommand;
+import pt.davidafsilva.subfixer.metrics.Metrics.Counter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The pipeline metrics unit tests.
+ *
+ * @author david
+ */
+public final class MetricsTest {
+
+  @Before
+  @After
+  public void resetMetrics() {
+    Metrics.getInstance().reset();
+  }
+
+  @Test
+  public void testFixMetrics() throws IOException {
+    final String file = MetricsTest.class.getResource("/3entry.srt").getPath();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(3L, (long) CommandExecutor.getInstance().execute(
+        new FixSubtitleCommand("PT1S", out), file));
+
+    // each stage of the buffered pipeline is timed once
+    final Metrics metrics = Metrics.getInstance();
+    assertEquals(1L, (long) metrics.getStageCounts().get("load"));
+    assertEquals(1L, (long) metrics.getStageCounts().get("delay"));
+    assertEquals(1L, (long) metrics.getStageCounts().get("print"));
+    assertEquals(0L, (long) metrics.getStageCounts().get("stream"));
+    assertTrue(metrics.getStageTimes().get("load") >= 0);
+
+    // and the entries are counted through all of them
+    assertEquals(3, metrics.get(Counter.ENTRIES_PARSED));
+    assertEquals(3, metrics.get(Counter.ENTRIES_SHIFTED));
+    assertEquals(3, metrics.get(Counter.ENTRIES_PRINTED));
+    assertEquals(Files.size(Paths.get(file)), metrics.get(Counter.BYTES_READ));
+    assertEquals(Files.readAllLines(Paths.get(file)).size(), metrics.get(Counter.LINES_READ));
+    assertEquals(metrics.get(Counter.ENTRIES_PRINTED), metrics.getEntriesPrinted());
+    assertTrue(metrics.report().contains("load"));
+  }
+
+  @Test
+  public void testErrorMetrics() {
+    final Metrics metrics = Metrics.getInstance();
+    try {
+      CommandExecutor.getInstance().execute(new FixSubtitleCommand("invalid",
+          new ByteArrayOutputStream()), MetricsTest.class.getResource("/3entry.srt").getPath());
+      fail("should have failed");
+    } catch (final CommandExecutionException e) {
+      metrics.error(e);
+    }
+
+    // the failed command prints nothing, and its error is counted by type
+    assertEquals(0, metrics.get(Counter.ENTRIES_PRINTED));
+    assertEquals(0L, (long) metrics.getStageCounts().get("print"));
+    assertEquals(1L, (long) metrics.getErrors().get("CommandExecutionException"));
+  }
+}
@@ -0,0 +1,201 @@
+package pt.davidafsilva.subfixer.server;
+
+/*
+ * #%L
+ * subtitle-fixer
+ * %%
+ * Copyright (C) 2015 David Silva
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import pt.davidafsilva.subfixer.command.CommandExecutor;
+import pt.davidafsilva.subfixer.command.FixSubtitleContentCommand;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The subtitle server unit tests, which run the server in process, on an
+ * ephemeral port.
+ *
+ * @author david
+ */
+public final class SubtitleServerTest {
+
+  // the server under test, with a single worker and a single pending request
+  private SubtitleServer server;
+
+  @Before
+  public void startServer() throws IOException {
+    server = new SubtitleServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 1);
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testFix() throws IOException {
+    final byte[] content = Files.readAllBytes(Paths.get(
+        SubtitleServerTest.class.getResource("/3entry.srt").getPath()));
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    CommandExecutor.getInstance().execute(new FixSubtitleContentCommand("PT1S", expected),
+        new ByteArrayInputStream(content));
+
+    final HttpURLConnection connection = post("PT1S", content);
+    assertEquals(200, connection.getResponseCode());
+    assertArrayEquals(expected.toByteArray(), read(connection.getInputStream()));
+
+    // invalid requests are answered right away
+    assertEquals(400, post("", content).getResponseCode());
+    assertEquals(422, post("invalid", content).getResponseCode());
+  }
+
+  @Test
+  public void testRejection() throws Exception {
+    // stall the requests whose body is never sent, until one is being handled,
+    // one is queued and the remaining ones are rejected
+    final List<Socket> stalled = new ArrayList<>();
+    try {
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while ((statistic("queued") < 1 || statistic("rejected") < 1) &&
+          System.nanoTime() < deadline) {
+        stalled.add(stall());
+        Thread.sleep(50);
+      }
+      assertEquals(1, statistic("queued"));
+      assertTrue(statistic("rejected") >= 1);
+
+      // and so is any other request, while the queue is full
+      final HttpURLConnection connection = post("PT1S", new byte[0]);
+      assertEquals(503, connection.getResponseCode());
+      assertEquals("1", connection.getHeaderField("Retry-After"));
+    } finally {
+      for (final Socket socket : stalled) {
+        socket.close();
+      }
+    }
+
+    // the requests are accepted again once the workers are free
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int status;
+    while ((status = post("PT1S", new byte[0]).getResponseCode()) == 503 &&
+        System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(200, status);
+  }
+
+  /**
+   * Posts the specified subtitle content to be fixed
+   *
+   * @param delay   the delay pattern
+   * @param content the subtitle content
+   * @return the connection of the request
+   * @throws IOException if an error occurs while sending the request
+   */
+  private HttpURLConnection post(final String delay, final byte[] content) throws IOException {
+    final InetSocketAddress address = server.getAddress();
+    final HttpURLConnection connection = (HttpURLConnection) new URL("http",
+        address.getHostString(), address.getPort(),
+        SubtitleServer.FIX_PATH + "?delay=" + delay).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setFixedLengthStreamingMode(content.length);
+    try (final OutputStream out = connection.getOutputStream()) {
+      out.write(content);
+    }
+    return connection;
+  }
+
+  /**
+   * Sends the headers of a fix request, but not its body, which stalls the
+   * worker handling it
+   *
+   * @return the socket of the stalled request
+   * @throws IOException if an error occurs while sending the request
+   */
+  private Socket stall() throws IOException {
+    final InetSocketAddress address = server.getAddress();
+    final Socket socket = new Socket(address.getAddress(), address.getPort());
+    socket.getOutputStream().write(("POST " + SubtitleServer.FIX_PATH + "?delay=PT1S HTTP/1.1\r\n" +
+        "Host: localhost\r\nContent-Length: 1024\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    socket.getOutputStream().flush();
+    return socket;
+  }
+
+  /**
+   * Returns the specified statistic of the requests, as reported by the server
+   *
+   * @param name the name of the statistic
+   * @return the value of the statistic
+   */
+  private int statistic(final String name) {
+    final Matcher matcher = Pattern.compile(name + "\\s+(\\d+)").matcher(server.report());
+    assertTrue(matcher.find());
+    return Integer.parseInt(matcher.group(1));
+  }
+
+  /**
+   * Reads the whole specified stream
+   *
+   * @param in the input stream
+   * @return the read bytes
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private static byte[] read(final InputStream in) throws IOException {
+    try (final InputStream source = in) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = source.read(buffer)) >= 0) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+}